@@ -0,0 +1,170 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU AFFERO GENERAL PUBLIC LICENSE
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU AFFERO GENERAL PUBLIC LICENSE for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.nextcloud.client.database
+
+import androidx.room.Room
+import androidx.sqlite.db.SupportSQLiteQueryBuilder
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.owncloud.android.db.ProviderMeta.ProviderTableMeta
+import com.owncloud.android.providers.FileContentProvider
+import org.junit.After
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Fails if a query on filelist issued by [com.nextcloud.client.database.dao.FileDao],
+ * [com.owncloud.android.datamodel.FileDataStorageManager] or
+ * [com.owncloud.android.providers.FileContentProvider] falls back to a full table scan.
+ *
+ * FileDao statements are captured from Room while running the DAO methods, statements of the content provider are
+ * built like [FileContentProvider] builds them from the selections of FileDataStorageManager.
+ */
+@RunWith(AndroidJUnit4::class)
+class FileQueryPlanTest {
+
+    private lateinit var database: NextcloudDatabase
+    private val statements = CopyOnWriteArrayList<String>()
+
+    @Before
+    fun setUp() {
+        database = Room
+            .inMemoryDatabaseBuilder(
+                InstrumentationRegistry.getInstrumentation().targetContext,
+                NextcloudDatabase::class.java
+            )
+            .setQueryCallback({ sql, _ -> statements.add(sql) }, { it.run() })
+            .build()
+        database.openHelper.writableDatabase
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    @Test
+    fun fileDaoQueriesUseIndices() {
+        val dao = database.fileDao()
+
+        assertIndexUsed("getFileById", daoStatement { dao.getFileById(1) })
+        assertIndexUsed("getFileByEncryptedRemotePath", daoStatement { dao.getFileByEncryptedRemotePath(PATH, OWNER) })
+        assertIndexUsed("getFileByDecryptedRemotePath", daoStatement { dao.getFileByDecryptedRemotePath(PATH, OWNER) })
+        assertIndexUsed("getFileByLocalPath", daoStatement { dao.getFileByLocalPath(PATH, OWNER) })
+        assertIndexUsed("getFileByRemoteId", daoStatement { dao.getFileByRemoteId("remoteId", OWNER) })
+        assertIndexUsed("getExistingFileIds", daoStatement { dao.getExistingFileIds(listOf(1, 2)) })
+        assertIndexUsed(
+            "getFilesByEncryptedRemotePaths",
+            daoStatement { dao.getFilesByEncryptedRemotePaths(listOf(PATH, PATH), OWNER) }
+        )
+        assertIndexUsed("getFolderContent", daoStatement { dao.getFolderContent(1) })
+        assertIndexUsed("getGalleryItems", daoStatement { dao.getGalleryItems(0, 1, OWNER) })
+        assertIndexUsed("getAllFiles", daoStatement { dao.getAllFiles(OWNER) })
+        assertIndexUsed("getFolderWithDescendants", daoStatement { dao.getFolderWithDescendants("$PATH%", OWNER) })
+        assertIndexUsed("getFilesWithSyncConflict", daoStatement { dao.getFilesWithSyncConflict(OWNER) })
+    }
+
+    @Test
+    fun contentProviderQueriesUseIndices() {
+        val owner = ProviderTableMeta.FILE_ACCOUNT_OWNER
+
+        assertIndexUsed("file by path", providerQuery("$owner = ? AND ${ProviderTableMeta.FILE_PATH} = ?"))
+        assertIndexUsed("folder content by owner", providerQuery("$owner = ? AND ${ProviderTableMeta.FILE_PARENT} = ?"))
+        assertIndexUsed("all files of owner", providerQuery("$owner=?"))
+        assertIndexUsed("single file", providerQuery("$owner=?", ProviderTableMeta._ID))
+        assertIndexUsed("directory content", providerQuery("$owner=?", ProviderTableMeta.FILE_PARENT))
+        assertIndexUsed(
+            "conflicts in folder",
+            providerQuery(
+                ProviderTableMeta.FILE_ETAG_IN_CONFLICT + " IS NOT NULL AND " +
+                    ProviderTableMeta.FILE_CONTENT_TYPE + " != 'DIR' AND " +
+                    "$owner = ? AND " +
+                    ProviderTableMeta.FILE_PATH + " LIKE ?"
+            )
+        )
+        assertIndexUsed("stored files", providerQuery(ProviderTableMeta.FILE_STORAGE_PATH + " IS NOT NULL"))
+        assertIndexUsed("update by id", providerUpdate(ProviderTableMeta._ID + "=?"))
+        assertIndexUsed("delete single file", providerDelete(ProviderTableMeta._ID + "=?"))
+        assertIndexUsed(
+            "delete directory",
+            providerDelete(ProviderTableMeta._ID + " IN (" + FileContentProvider.DESCENDANTS_QUERY + ")")
+        )
+    }
+
+    /**
+     * @return the statement on filelist Room issued for [block]
+     */
+    private fun daoStatement(block: () -> Unit): String {
+        statements.clear()
+        block()
+        return statements.last { FILE_TABLE.containsMatchIn(it) }
+    }
+
+    /**
+     * Selection as used by [FileContentProvider] for queries, [idColumn] is the column the id of the uri is matched
+     * against.
+     */
+    private fun providerQuery(selection: String, idColumn: String? = null): String {
+        val where = if (idColumn == null) selection else "$idColumn=? AND $selection"
+        return SupportSQLiteQueryBuilder
+            .builder(ProviderTableMeta.FILE_TABLE_NAME)
+            .selection(where, null)
+            .orderBy(ProviderTableMeta.FILE_DEFAULT_SORT_ORDER)
+            .create()
+            .sql
+    }
+
+    private fun providerUpdate(selection: String): String {
+        return "UPDATE ${ProviderTableMeta.FILE_TABLE_NAME} SET ${ProviderTableMeta.FILE_ETAG_IN_CONFLICT}=?" +
+            " WHERE $selection"
+    }
+
+    private fun providerDelete(selection: String): String {
+        return "DELETE FROM ${ProviderTableMeta.FILE_TABLE_NAME} WHERE $selection"
+    }
+
+    private fun assertIndexUsed(name: String, sql: String) {
+        val plan = explain(sql)
+        assertFalse("$name: full table scan\n$sql\n${plan.joinToString("\n")}", plan.any { SCAN.matches(it) })
+    }
+
+    private fun explain(sql: String): List<String> {
+        val args = arrayOfNulls<Any>(sql.count { it == '?' })
+        val plan = mutableListOf<String>()
+        database.openHelper.writableDatabase.query("EXPLAIN QUERY PLAN $sql", args).use { cursor ->
+            val detailIndex = cursor.getColumnIndexOrThrow("detail")
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detailIndex))
+            }
+        }
+        return plan
+    }
+
+    companion object {
+        private val SCAN = Regex("^SCAN (TABLE )?${ProviderTableMeta.FILE_TABLE_NAME}\\b.*")
+        private val FILE_TABLE = Regex("\\b${ProviderTableMeta.FILE_TABLE_NAME}\\b")
+        private const val OWNER = "owner"
+        private const val PATH = "/path/"
+    }
+}
@@ -21,12 +21,17 @@
  */
 package com.owncloud.android.datamodel
 
+import com.owncloud.android.lib.common.utils.Log_OC
 import org.junit.Assert
 import org.junit.Test
 
 class FileDataStorageManagerContentResolverIT : FileDataStorageManagerIT() {
     companion object {
         private const val MANY_FILES_AMOUNT = 5000
+        private const val DEEP_TREE_DEPTH = 500
+        private const val WIDE_TREE_FOLDERS = 50
+        private const val WIDE_TREE_FILES = 2000
+        private val TAG = FileDataStorageManagerContentResolverIT::class.java.simpleName
     }
 
     override fun before() {
@@ -67,4 +72,84 @@ class FileDataStorageManagerContentResolverIT : FileDataStorageManagerIT() {
         // check file count is correct
         Assert.assertEquals(MANY_FILES_AMOUNT, sut.getFolderContent(folderA, false).size)
     }
+
+    /**
+     * Benchmark of saveFolder for first sync (inserts) and refresh (updates) of big folders
+     */
+    @Test
+    fun testSaveFolderDuration() {
+        val root = sut.getFileByDecryptedRemotePath("/")!!
+
+        listOf(1_000, 10_000, 50_000).forEach { amount ->
+            val folder = OCFile("/folder$amount/")
+            folder.setFolder().parentId = root.fileId
+            sut.saveFile(folder)
+
+            val files = (1..amount).map { OCFile("/folder$amount/file$it") }
+
+            var start = System.currentTimeMillis()
+            sut.saveFolder(folder, files, ArrayList())
+            val insertDuration = System.currentTimeMillis() - start
+
+            val storedFiles = sut.getFolderContent(folder, false)
+            Assert.assertEquals(amount, storedFiles.size)
+
+            start = System.currentTimeMillis()
+            sut.saveFolder(folder, storedFiles, ArrayList())
+            val updateDuration = System.currentTimeMillis() - start
+
+            Assert.assertEquals(amount, sut.getFolderContent(folder, false).size)
+            Log_OC.d(TAG, "saveFolder with $amount children: insert $insertDuration ms, update $updateDuration ms")
+        }
+    }
+
+    /**
+     * Benchmark of recursive folder removal for a deep and a wide tree
+     */
+    @Test
+    fun testRemoveFolderDuration() {
+        val root = sut.getFileByDecryptedRemotePath("/")!!
+
+        // deep: chain of folders, each one containing a file
+        val deep = createFolder(root, "/deep/")
+        var parent = deep
+        (1..DEEP_TREE_DEPTH).forEach {
+            val folder = OCFile(parent.remotePath + "folder$it/").apply { setFolder() }
+            sut.saveFolder(parent, listOf(folder, OCFile(parent.remotePath + "file$it")), ArrayList())
+            parent = sut.getFileByDecryptedRemotePath(folder.remotePath)!!
+        }
+        assertRemoveFolder(deep, DEEP_TREE_DEPTH, parent.remotePath)
+
+        // wide: many folders, each one containing many files
+        val wide = createFolder(root, "/wide/")
+        val subfolders = (1..WIDE_TREE_FOLDERS).map { OCFile("/wide/folder$it/").apply { setFolder() } }
+        sut.saveFolder(wide, subfolders, ArrayList())
+        subfolders.forEach { subfolder ->
+            val folder = sut.getFileByDecryptedRemotePath(subfolder.remotePath)!!
+            val files = (1..WIDE_TREE_FILES).map { OCFile(folder.remotePath + "file$it") }
+            sut.saveFolder(folder, files, ArrayList())
+        }
+        assertRemoveFolder(wide, WIDE_TREE_FOLDERS * WIDE_TREE_FILES, "/wide/folder1/file1")
+    }
+
+    private fun createFolder(parent: OCFile, path: String): OCFile {
+        val folder = OCFile(path)
+        folder.setFolder().parentId = parent.fileId
+        sut.saveFile(folder)
+        return sut.getFileByDecryptedRemotePath(path)!!
+    }
+
+    private fun assertRemoveFolder(folder: OCFile, files: Int, descendantPath: String) {
+        Assert.assertEquals(files, sut.getAllFilesRecursivelyInsideFolder(folder).size)
+        Assert.assertTrue(sut.fileExists(descendantPath))
+
+        val start = System.currentTimeMillis()
+        Assert.assertTrue(sut.removeFolder(folder, true, false))
+        val duration = System.currentTimeMillis() - start
+
+        Assert.assertFalse(sut.fileExists(folder.remotePath))
+        Assert.assertFalse(sut.fileExists(descendantPath))
+        Assert.assertTrue(sut.getAllFilesRecursivelyInsideFolder(folder).isEmpty())
+        Log_OC.d(TAG, "removeFolder ${folder.remotePath} with $files files: $duration ms")
+    }
 }
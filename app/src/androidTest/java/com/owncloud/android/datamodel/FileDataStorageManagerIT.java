@@ -36,6 +36,7 @@ import com.owncloud.android.lib.resources.status.GetCapabilitiesRemoteOperation;
 import com.owncloud.android.lib.resources.status.OCCapability;
 import com.owncloud.android.operations.RefreshFolderOperation;
 import com.owncloud.android.utils.FileStorageUtils;
+import com.owncloud.android.utils.MimeType;
 
 import junit.framework.TestCase;
 
@@ -47,10 +48,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static com.owncloud.android.lib.resources.files.SearchRemoteOperation.SearchType.GALLERY_SEARCH;
 import static com.owncloud.android.lib.resources.files.SearchRemoteOperation.SearchType.PHOTO_SEARCH;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -358,6 +361,72 @@ abstract public class FileDataStorageManagerIT extends AbstractOnServerIT {
         sut.saveNewFile(newFile);
     }
 
+    @Test
+    public void testSaveDownloadedFiles() {
+        OCFile folder = new OCFile("/1/");
+        folder.setMimeType(MimeType.DIRECTORY);
+        folder.setParentId(sut.getFileByDecryptedRemotePath("/").getFileId());
+        folder.setEtagInConflict("conflict");
+        sut.saveFile(folder);
+
+        List<OCFile> files = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            OCFile file = new OCFile("/1/" + i + ".txt");
+            file.setParentId(folder.getFileId());
+            file.setEtagInConflict("conflict");
+            sut.saveFile(file);
+
+            file.setStoragePath(FileStorageUtils.getDefaultSavePathFor(user.getAccountName(), file));
+            files.add(file);
+        }
+
+        // one file is not downloaded yet, so the folder stays in conflict
+        sut.saveDownloadedFiles(files.subList(0, 2));
+        assertTrue(sut.getFileByDecryptedRemotePath("/1/").isInConflict());
+        assertFalse(sut.getFileByDecryptedRemotePath("/1/0.txt").isInConflict());
+        assertEquals(files.get(0).getStoragePath(), sut.getFileByDecryptedRemotePath("/1/0.txt").getStoragePath());
+
+        sut.saveDownloadedFiles(files.subList(2, 3));
+        assertFalse(sut.getFileByDecryptedRemotePath("/1/").isInConflict());
+        assertFalse(sut.getFileByDecryptedRemotePath("/1/2.txt").isInConflict());
+    }
+
+    @Test
+    public void testSaveVirtualFolderContent() {
+        sut.deleteVirtuals(VirtualFolderType.FAVORITE);
+
+        OCFile folder = new OCFile("/1/");
+        folder.setMimeType(MimeType.DIRECTORY);
+        folder.setParentId(sut.getFileByDecryptedRemotePath("/").getFileId());
+        sut.saveFile(folder);
+
+        OCFile storedFile = new OCFile("/1/stored.txt");
+        storedFile.setParentId(folder.getFileId());
+        sut.saveFile(storedFile);
+
+        // search results, without ids
+        List<OCFile> files = new ArrayList<>();
+        files.add(new OCFile("/1/stored.txt"));
+        files.add(new OCFile("/1/new.txt"));
+        files.add(new OCFile("/new.txt"));
+
+        Map<Long, OCFile> parentFolders = sut.saveParentFolders(files, targetContext);
+        assertEquals(2, parentFolders.size());
+        assertEquals(folder.getFileId(), files.get(0).getParentId());
+        assertEquals(folder.getFileId(), files.get(1).getParentId());
+        assertEquals(sut.getFileByDecryptedRemotePath("/").getFileId(), files.get(2).getParentId());
+
+        sut.saveVirtualFolderContent(files, VirtualFolderType.FAVORITE);
+
+        assertEquals(storedFile.getFileId(), files.get(0).getFileId());
+        assertEquals(files.get(1).getFileId(), sut.getFileByDecryptedRemotePath("/1/new.txt").getFileId());
+        assertEquals(files.get(2).getFileId(), sut.getFileByDecryptedRemotePath("/new.txt").getFileId());
+        assertEquals(2, sut.getFolderContent(folder, false).size());
+        assertEquals(3, sut.getVirtualFolderContent(VirtualFolderType.FAVORITE, false).size());
+
+        sut.deleteVirtuals(VirtualFolderType.FAVORITE);
+    }
+
     @Test
     public void testOCCapability() {
         OCCapability capability = new OCCapability();
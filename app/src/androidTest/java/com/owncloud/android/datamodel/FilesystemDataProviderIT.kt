@@ -0,0 +1,216 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel
+
+import com.nextcloud.client.preferences.SubFolderRule
+import com.owncloud.android.AbstractIT
+import com.owncloud.android.files.services.NameCollisionPolicy
+import com.owncloud.android.lib.common.utils.Log_OC
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+
+class FilesystemDataProviderIT : AbstractIT() {
+
+    companion object {
+        private val TAG = FilesystemDataProviderIT::class.java.simpleName
+        private const val FILES = 2000
+        private const val LARGE_FILES = 100
+        private const val LARGE_FILE_SIZE = 4 * 1024 * 1024
+        private const val MB = 1024.0 * 1024.0
+    }
+
+    private lateinit var folder: File
+    private lateinit var syncedFolder: SyncedFolder
+    private lateinit var provider: FilesystemDataProvider
+
+    @Before
+    fun setUp() {
+        folder = File(targetContext.cacheDir, TAG)
+        folder.mkdirs()
+
+        syncedFolder = SyncedFolder(
+            folder.absolutePath,
+            "/$TAG",
+            false,
+            false,
+            true,
+            false,
+            user.accountName,
+            0,
+            NameCollisionPolicy.ASK_USER.serialize(),
+            true,
+            System.currentTimeMillis(),
+            MediaFolderType.CUSTOM,
+            false,
+            SubFolderRule.YEAR_MONTH
+        )
+
+        provider = FilesystemDataProvider(targetContext.contentResolver)
+        provider.deleteAllEntriesForSyncedFolder(syncedFolder.id.toString())
+    }
+
+    @After
+    fun tearDown() {
+        provider.deleteAllEntriesForSyncedFolder(syncedFolder.id.toString())
+        folder.deleteRecursively()
+    }
+
+    @Test
+    fun batchOnlyReportsChangedFiles() {
+        val files = createFiles(FILES)
+
+        storeInBatch(files)
+        val paths = provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString())
+        assertEquals(FILES, paths.size)
+
+        provider.updateFilesystemFilesAsSentForUpload(paths, syncedFolder.id.toString())
+        assertEquals(0, provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString()).size)
+
+        storeInBatch(files)
+        assertEquals(0, provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString()).size)
+
+        val changed = files.first()
+        changed.writeText("changed")
+        changed.setLastModified(changed.lastModified() + 1000)
+        storeInBatch(files)
+        assertEquals(
+            setOf(changed.absolutePath),
+            provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString())
+        )
+    }
+
+    @Test
+    fun changedModificationTimeOnlyIsNotReportedAgain() {
+        val files = createFiles(LARGE_FILES)
+
+        storeInBatch(files)
+        var paths = provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString())
+        provider.updateFilesystemFilesAsSentForUpload(paths, syncedFolder.id.toString())
+
+        // new files are not hashed, so the first change cannot be told apart from a change of content
+        files.forEach { it.setLastModified(it.lastModified() + 1000) }
+        storeInBatch(files)
+        paths = provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString())
+        assertEquals(LARGE_FILES, paths.size)
+        provider.updateFilesystemFilesAsSentForUpload(paths, syncedFolder.id.toString())
+
+        files.forEach { it.setLastModified(it.lastModified() + 1000) }
+        storeInBatch(files)
+        assertEquals(0, provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString()).size)
+    }
+
+    @Test
+    fun changeBeforeUploadDropsChecksum() {
+        val files = createFiles(1)
+        val file = files.first()
+
+        storeInBatch(files)
+        provider.updateFilesystemFilesAsSentForUpload(
+            provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString()),
+            syncedFolder.id.toString()
+        )
+        file.setLastModified(file.lastModified() + 1000)
+        storeInBatch(files)
+        provider.updateFilesystemFilesAsSentForUpload(
+            provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString()),
+            syncedFolder.id.toString()
+        )
+
+        // changed twice before the upload of the first change
+        file.writeText("first change")
+        file.setLastModified(file.lastModified() + 1000)
+        storeInBatch(files)
+        file.writeText("second change")
+        file.setLastModified(file.lastModified() + 1000)
+        storeInBatch(files)
+
+        provider.updateFilesystemFilesAsSentForUpload(
+            provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString()),
+            syncedFolder.id.toString()
+        )
+
+        // the checksum of the first change must not hide that the second one was uploaded
+        file.writeText("first change")
+        file.setLastModified(file.lastModified() + 1000)
+        storeInBatch(files)
+        assertEquals(
+            setOf(file.absolutePath),
+            provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString())
+        )
+    }
+
+    /**
+     * Benchmark: scan of new files, which are not hashed, and hashing once their modification time changes
+     */
+    @Test
+    fun testScanThroughput() {
+        val content = ByteArray(LARGE_FILE_SIZE) { it.toByte() }
+        val files = (0 until LARGE_FILES).map { File(folder, "large_$it.bin").apply { writeBytes(content) } }
+        val totalMb = LARGE_FILES * LARGE_FILE_SIZE / MB
+
+        var start = System.nanoTime()
+        storeInBatch(files)
+        val scanSeconds = (System.nanoTime() - start) / 1e9
+
+        val paths = provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString())
+        provider.updateFilesystemFilesAsSentForUpload(paths, syncedFolder.id.toString())
+        files.forEach { it.setLastModified(it.lastModified() + 1000) }
+        start = System.nanoTime()
+        storeInBatch(files)
+        val hashSeconds = (System.nanoTime() - start) / 1e9
+
+        Log_OC.d(TAG, "scan: ${LARGE_FILES / scanSeconds} files/s, ${totalMb / scanSeconds} MB/s")
+        Log_OC.d(TAG, "hash: ${LARGE_FILES / hashSeconds} files/s, ${totalMb / hashSeconds} MB/s")
+        assertEquals(LARGE_FILES, paths.size)
+    }
+
+    /**
+     * Benchmark: one round trip per file against a single transaction per folder
+     */
+    @Test
+    fun testBatchWriteDuration() {
+        val files = createFiles(FILES)
+
+        var start = System.currentTimeMillis()
+        files.forEach { provider.storeOrUpdateFileValue(it.absolutePath, it.lastModified(), false, syncedFolder) }
+        val singleDuration = System.currentTimeMillis() - start
+
+        provider.deleteAllEntriesForSyncedFolder(syncedFolder.id.toString())
+
+        start = System.currentTimeMillis()
+        storeInBatch(files)
+        val batchDuration = System.currentTimeMillis() - start
+
+        Log_OC.d(TAG, "$FILES files, single: $singleDuration ms, batch: $batchDuration ms")
+        assertEquals(FILES, provider.getFilesForUpload(folder.absolutePath, syncedFolder.id.toString()).size)
+    }
+
+    private fun storeInBatch(files: List<File>) {
+        val batch = provider.startBatch(syncedFolder)
+        files.forEach { batch.storeOrUpdateFileValue(it.absolutePath, it.lastModified(), false) }
+        batch.apply()
+    }
+
+    private fun createFiles(count: Int): List<File> = (0 until count).map {
+        File(folder, "file_$it.txt").apply { writeText("content $it") }
+    }
+}
@@ -14,9 +14,11 @@ import com.nextcloud.test.RandomStringGenerator;
 import com.owncloud.android.AbstractIT;
 import com.owncloud.android.MainApp;
 import com.owncloud.android.db.OCUpload;
+import com.owncloud.android.db.OCUploadComparator;
 import com.owncloud.android.db.UploadResult;
 import com.owncloud.android.files.services.NameCollisionPolicy;
 import com.owncloud.android.lib.common.accounts.AccountUtils;
+import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.operations.UploadFileOperation;
 
 import org.junit.After;
@@ -26,6 +28,8 @@ import org.junit.runner.RunWith;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 
@@ -112,6 +116,67 @@ public class UploadStorageManagerTest extends AbstractIT {
         }
     }
 
+    @Test
+    public void pagedFinishedUploads() {
+        deleteAllUploads();
+        int size = 250;
+        insertFinishedUploads(size);
+
+        assertEquals(size, uploadsStorageManager.getFinishedUploadsForAccountCount(account.name));
+
+        List<OCUpload> firstPage = uploadsStorageManager.getFinishedUploadsForAccountPage(null, account.name);
+        assertEquals(100, firstPage.size());
+
+        OCUpload lastUpload = firstPage.get(firstPage.size() - 1);
+        List<OCUpload> secondPage = uploadsStorageManager.getFinishedUploadsForAccountPage(lastUpload, account.name);
+        assertEquals(100, secondPage.size());
+
+        // pages follow each other in the order of the upload list
+        List<OCUpload> pages = new ArrayList<>(firstPage);
+        pages.addAll(secondPage);
+        List<OCUpload> sorted = new ArrayList<>(pages);
+        for (OCUpload upload : sorted) {
+            upload.setDataFixed(null);
+        }
+        Collections.sort(sorted, new OCUploadComparator());
+        assertEquals(pages, sorted);
+
+        assertEquals(0, uploadsStorageManager.getFinishedUploadsForAccountCount(user2.getAccountName()));
+    }
+
+    /**
+     * Benchmark: refresh of the finished uploads of the upload list, reading all of them against count and first page
+     */
+    @Test
+    public void testUploadListRefreshDuration() {
+        deleteAllUploads();
+
+        for (int size = 1000; size <= 4000; size += 1000) {
+            insertFinishedUploads(1000);
+
+            long start = System.currentTimeMillis();
+            int allUploads = 0;
+            OCUpload after = null;
+            List<OCUpload> page;
+            while (!(page = uploadsStorageManager.getFinishedUploadsForAccountPage(after, account.name)).isEmpty()) {
+                allUploads += page.size();
+                after = page.get(page.size() - 1);
+            }
+            long fullDuration = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            int count = uploadsStorageManager.getFinishedUploadsForAccountCount(account.name);
+            int pageSize = uploadsStorageManager.getFinishedUploadsForAccountPage(null, account.name).size();
+            long pageDuration = System.currentTimeMillis() - start;
+
+            Log_OC.d("UploadStorageManagerTest",
+                     size + " uploads, full refresh: " + fullDuration + " ms, paged: " + pageDuration + " ms");
+            assertEquals(size, allUploads);
+            assertEquals(size, count);
+            assertEquals(100, pageSize);
+        }
+    }
+
     @Test
     public void testIsSame() {
         OCUpload upload1 = new OCUpload("/test", "/test", account.name);
@@ -169,6 +234,19 @@ public class UploadStorageManagerTest extends AbstractIT {
         assertNull(newUpload);
     }
 
+    private void insertFinishedUploads(int rowsToInsert) {
+        List<OCUpload> uploads = new ArrayList<>(rowsToInsert);
+        for (int i = 0; i < rowsToInsert; i++) {
+            OCUpload upload = createUpload(account);
+            upload.setUploadStatus(UploadsStorageManager.UploadStatus.UPLOAD_SUCCEEDED);
+            upload.setLastResult(UploadResult.UPLOADED);
+            // some uploads finish at the same time
+            upload.setUploadEndTimestamp(i / 3);
+            uploads.add(upload);
+        }
+        uploadsStorageManager.storeUploads(uploads);
+    }
+
     private void insertUploads(Account account, int rowsToInsert) {
         for (int i = 0; i < rowsToInsert; i++) {
             uploadsStorageManager.storeUpload(createUpload(account));
@@ -22,8 +22,16 @@
 
 package com.owncloud.android.files.services
 
+import com.nextcloud.client.jobs.FilesUploadWorker
+import com.nextcloud.client.preferences.AppPreferencesImpl
+import com.owncloud.android.lib.resources.files.ReadFileRemoteOperation
+import com.owncloud.android.lib.resources.files.model.RemoteFile
+import com.owncloud.android.operations.UploadFileOperation
+import junit.framework.Assert.assertEquals
+import junit.framework.Assert.assertTrue
 import org.junit.After
 import org.junit.Before
+import org.junit.Test
 
 class FileUploadWorkerIT : FileUploaderIT() {
     @Before
@@ -35,4 +43,34 @@ class FileUploadWorkerIT : FileUploaderIT() {
     fun resetForceUploadWorker() {
         FileUploader.setForceNewUploadWorker(false)
     }
+
+    /**
+     * uploads more files than the worker runs in parallel, check that all of them are on the server
+     */
+    @Test
+    fun testParallelUploads() {
+        val count = AppPreferencesImpl.fromContext(targetContext).maxConcurrentUploads * 2
+        val files = (0 until count).map { createFile("parallel$it.txt", it + 1) }
+
+        FileUploader.uploadNewFile(
+            user,
+            files.map { it.absolutePath }.toTypedArray(),
+            files.map { "/parallel/" + it.name }.toTypedArray(),
+            FileUploader.LOCAL_BEHAVIOUR_COPY,
+            true,
+            UploadFileOperation.CREATED_BY_USER,
+            false,
+            false,
+            NameCollisionPolicy.DEFAULT
+        )
+
+        longSleep()
+
+        assertTrue(FilesUploadWorker.activeUploadFileOperations.isEmpty())
+        files.forEach {
+            val result = ReadFileRemoteOperation("/parallel/" + it.name).execute(client)
+            assertTrue(result.isSuccess)
+            assertEquals(it.length(), (result.data[0] as RemoteFile).length)
+        }
+    }
 }
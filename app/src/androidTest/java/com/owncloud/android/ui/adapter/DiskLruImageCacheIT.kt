@@ -0,0 +1,128 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.ui.adapter
+
+import android.graphics.Bitmap
+import android.graphics.Color
+import androidx.test.platform.app.InstrumentationRegistry
+import com.owncloud.android.lib.common.utils.Log_OC
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class DiskLruImageCacheIT {
+
+    companion object {
+        private val TAG = DiskLruImageCacheIT::class.java.simpleName
+        private const val CACHE_SIZE = 1024 * 1024 * 100
+        private const val QUALITY = 70
+        private const val THUMBNAILS = 200
+        private const val THUMBNAIL_SIZE = 256
+        private const val ROUNDS = 3
+    }
+
+    private lateinit var cacheDir: File
+    private lateinit var cache: DiskLruImageCache
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        cacheDir = File(context.cacheDir, TAG)
+        cache = DiskLruImageCache(cacheDir, CACHE_SIZE, Bitmap.CompressFormat.JPEG, QUALITY)
+    }
+
+    @After
+    fun tearDown() {
+        cache.clearCache()
+        cacheDir.deleteRecursively()
+    }
+
+    @Test
+    fun concurrentPutAndGet() {
+        val executor = Executors.newFixedThreadPool(8)
+        try {
+            val tasks = (0 until THUMBNAILS).map { index ->
+                Callable {
+                    val key = "t$index"
+                    cache.put(key, createBitmap(index))
+                    cache.getBitmap(key)
+                }
+            }
+
+            executor.invokeAll(tasks).forEach { assertNotNull(it.get()) }
+        } finally {
+            executor.shutdown()
+        }
+    }
+
+    @Test
+    fun scaledBitmapUsesStoredDimensions() {
+        cache.put("r1", createBitmap(1))
+
+        val bitmap = cache.getScaledBitmap("r1", THUMBNAIL_SIZE / 4, THUMBNAIL_SIZE / 4)
+        assertNotNull(bitmap)
+        assertEquals(THUMBNAIL_SIZE / 2, bitmap.width)
+        assertEquals(THUMBNAIL_SIZE / 2, bitmap.height)
+    }
+
+    /**
+     * Benchmark: thumbnails per second with a growing number of concurrent loaders
+     */
+    @Test
+    fun thumbnailsPerSecond() {
+        (0 until THUMBNAILS).forEach { cache.put("t$it", createBitmap(it)) }
+        cache.flush()
+
+        for (loaders in listOf(1, 4, 8)) {
+            val executor = Executors.newFixedThreadPool(loaders)
+            try {
+                val tasks = (0 until THUMBNAILS * ROUNDS).map { index ->
+                    Callable { cache.getBitmap("t${index % THUMBNAILS}") }
+                }
+
+                val start = System.nanoTime()
+                val results = executor.invokeAll(tasks).map { it.get() }
+                val durationNanos = System.nanoTime() - start
+
+                assertEquals(tasks.size, results.count { it != null })
+                val perSecond = tasks.size * TimeUnit.SECONDS.toNanos(1) / durationNanos
+                Log_OC.d(TAG, "loaders: $loaders, thumbnails/s: $perSecond")
+            } finally {
+                executor.shutdown()
+            }
+        }
+    }
+
+    private fun createBitmap(index: Int): Bitmap {
+        val bitmap = Bitmap.createBitmap(THUMBNAIL_SIZE, THUMBNAIL_SIZE, Bitmap.Config.ARGB_8888)
+        for (x in 0 until THUMBNAIL_SIZE step 16) {
+            for (y in 0 until THUMBNAIL_SIZE step 16) {
+                bitmap.setPixel(x, y, Color.rgb(index % 256, x, y))
+            }
+        }
+        return bitmap
+    }
+}
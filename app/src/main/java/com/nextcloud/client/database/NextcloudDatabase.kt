@@ -70,7 +70,8 @@ import com.owncloud.android.db.ProviderMeta
         AutoMigration(from = 73, to = 74, spec = DatabaseMigrationUtil.ResetCapabilitiesPostMigration::class),
         AutoMigration(from = 74, to = 75),
         AutoMigration(from = 75, to = 76),
-        AutoMigration(from = 76, to = 77)
+        AutoMigration(from = 76, to = 77),
+        AutoMigration(from = 77, to = 78)
     ],
     exportSchema = true
 )
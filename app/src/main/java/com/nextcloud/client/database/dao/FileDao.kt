@@ -44,6 +44,12 @@ interface FileDao {
     @Query("SELECT * FROM filelist WHERE remote_id = :remoteId AND file_owner = :fileOwner LIMIT 1")
     fun getFileByRemoteId(remoteId: String, fileOwner: String): FileEntity?
 
+    @Query("SELECT _id FROM filelist WHERE _id IN (:ids)")
+    fun getExistingFileIds(ids: List<Long>): List<Long>
+
+    @Query("SELECT * FROM filelist WHERE path IN (:paths) AND file_owner = :fileOwner")
+    fun getFilesByEncryptedRemotePaths(paths: List<String>, fileOwner: String): List<FileEntity>
+
     @Query("SELECT * FROM filelist WHERE parent = :parentId ORDER BY ${ProviderTableMeta.FILE_DEFAULT_SORT_ORDER}")
     fun getFolderContent(parentId: Long): List<FileEntity>
 
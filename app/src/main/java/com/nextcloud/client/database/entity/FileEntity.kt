@@ -24,10 +24,21 @@ package com.nextcloud.client.database.entity
 
 import androidx.room.ColumnInfo
 import androidx.room.Entity
+import androidx.room.Index
 import androidx.room.PrimaryKey
 import com.owncloud.android.db.ProviderMeta.ProviderTableMeta
 
-@Entity(tableName = ProviderTableMeta.FILE_TABLE_NAME)
+@Entity(
+    tableName = ProviderTableMeta.FILE_TABLE_NAME,
+    indices = [
+        Index(ProviderTableMeta.FILE_PARENT),
+        Index(ProviderTableMeta.FILE_ACCOUNT_OWNER, ProviderTableMeta.FILE_PATH),
+        Index(ProviderTableMeta.FILE_ACCOUNT_OWNER, ProviderTableMeta.FILE_PATH_DECRYPTED),
+        Index(ProviderTableMeta.FILE_ACCOUNT_OWNER, ProviderTableMeta.FILE_REMOTE_ID),
+        Index(ProviderTableMeta.FILE_STORAGE_PATH),
+        Index(ProviderTableMeta.FILE_ETAG_IN_CONFLICT)
+    ]
+)
 data class FileEntity(
     @PrimaryKey(autoGenerate = true)
     @ColumnInfo(name = ProviderTableMeta._ID)
@@ -0,0 +1,100 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.etm.pages
+
+import android.os.Bundle
+import android.view.LayoutInflater
+import android.view.Menu
+import android.view.MenuInflater
+import android.view.MenuItem
+import android.view.View
+import android.view.ViewGroup
+import com.nextcloud.client.etm.EtmBaseFragment
+import com.owncloud.android.R
+import com.owncloud.android.databinding.FragmentEtmThumbnailCacheBinding
+import com.owncloud.android.datamodel.ThumbnailsCacheManager
+import java.util.Locale
+
+class EtmThumbnailCacheFragment : EtmBaseFragment() {
+
+    companion object {
+        private const val KB = 1024
+        private const val PERCENT = 100.0
+    }
+
+    private var _binding: FragmentEtmThumbnailCacheBinding? = null
+    private val binding get() = _binding!!
+
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+        setHasOptionsMenu(true)
+    }
+
+    override fun onCreateView(inflater: LayoutInflater, container: ViewGroup?, savedInstanceState: Bundle?): View? {
+        _binding = FragmentEtmThumbnailCacheBinding.inflate(inflater, container, false)
+        return binding.root
+    }
+
+    override fun onResume() {
+        super.onResume()
+        showStatistics()
+    }
+
+    private fun showStatistics() {
+        val memoryHits = ThumbnailsCacheManager.getMemoryCacheHitCount()
+        val diskHits = ThumbnailsCacheManager.getDiskCacheHitCount()
+        val misses = ThumbnailsCacheManager.getCacheMissCount()
+        val total = memoryHits + diskHits + misses
+
+        val builder = StringBuilder()
+        builder.append("Memory cache size: ${ThumbnailsCacheManager.getMemoryCacheSize() / KB} kB")
+        builder.append(" of ${ThumbnailsCacheManager.getMemoryCacheLimit() / KB} kB\n")
+        builder.append("Requests: $total\n")
+        builder.append("Memory cache hits: $memoryHits (${percentage(memoryHits, total)})\n")
+        builder.append("Disk cache hits: $diskHits (${percentage(diskHits, total)})\n")
+        builder.append("Misses: $misses (${percentage(misses, total)})\n")
+        binding.etmThumbnailCacheText.text = builder.toString()
+    }
+
+    private fun percentage(count: Long, total: Long): String {
+        val value = if (total > 0) count * PERCENT / total else 0.0
+        return String.format(Locale.US, "%.1f%%", value)
+    }
+
+    override fun onCreateOptionsMenu(menu: Menu, inflater: MenuInflater) {
+        super.onCreateOptionsMenu(menu, inflater)
+        inflater.inflate(R.menu.fragment_etm_thumbnail_cache, menu)
+    }
+
+    override fun onOptionsItemSelected(item: MenuItem): Boolean {
+        return when (item.itemId) {
+            R.id.etm_thumbnail_cache_reset -> {
+                ThumbnailsCacheManager.resetCacheStatistics()
+                showStatistics()
+                true
+            }
+            else -> super.onOptionsItemSelected(item)
+        }
+    }
+
+    override fun onDestroyView() {
+        super.onDestroyView()
+        _binding = null
+    }
+}
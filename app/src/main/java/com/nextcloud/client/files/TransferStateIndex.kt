@@ -0,0 +1,99 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.files
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * In-memory index of active transfers keyed by account and remote path, so that list adapters can show transfer
+ * state of a row without querying the database.
+ *
+ * Transfers are registered by an id of the caller's choice, e.g. an upload id, so that a transfer can be moved to
+ * another remote path or removed without knowing its previous path. Several transfers of the same path are counted.
+ *
+ * Lookups are lock-free, changes are serialized.
+ */
+class TransferStateIndex<K : Any> {
+
+    private class Transfer(val accountName: String, val remotePath: String)
+
+    private val transfers = ConcurrentHashMap<K, Transfer>()
+    private val transferCounts = ConcurrentHashMap<String, Int>()
+
+    val size: Int
+        get() = transfers.size
+
+    @Synchronized
+    fun put(id: K, accountName: String, remotePath: String) {
+        val previous = transfers[id]
+        if (previous != null && previous.accountName == accountName && previous.remotePath == remotePath) {
+            return
+        }
+        previous?.let { unregister(it) }
+
+        val transfer = Transfer(accountName, remotePath)
+        transfers[id] = transfer
+        register(transfer)
+    }
+
+    @Synchronized
+    fun remove(id: K) {
+        transfers.remove(id)?.let { unregister(it) }
+    }
+
+    @Synchronized
+    fun removeAll(accountName: String) {
+        transfers.filterValues { it.accountName == accountName }.keys.forEach { remove(it) }
+    }
+
+    /**
+     * Replaces all transfers
+     *
+     * @param entries account name and remote path by transfer id
+     */
+    @Synchronized
+    fun reset(entries: Map<K, Pair<String, String>>) {
+        clear()
+        entries.forEach { (id, transfer) -> put(id, transfer.first, transfer.second) }
+    }
+
+    @Synchronized
+    fun clear() {
+        transfers.clear()
+        transferCounts.clear()
+    }
+
+    /**
+     * @return true if a transfer of exactly this path is registered
+     */
+    fun contains(accountName: String, remotePath: String): Boolean =
+        transferCounts.containsKey(buildKey(accountName, remotePath))
+
+    private fun register(transfer: Transfer) {
+        transferCounts.merge(buildKey(transfer.accountName, transfer.remotePath), 1, Int::plus)
+    }
+
+    private fun unregister(transfer: Transfer) {
+        transferCounts.computeIfPresent(buildKey(transfer.accountName, transfer.remotePath)) { _, count ->
+            if (count > 1) count - 1 else null
+        }
+    }
+
+    private fun buildKey(accountName: String, remotePath: String): String = accountName + remotePath
+}
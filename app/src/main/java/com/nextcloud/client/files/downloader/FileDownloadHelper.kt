@@ -60,14 +60,15 @@ class FileDownloadHelper {
             return false
         }
 
-        val fileStorageManager = FileDataStorageManager(user, MainApp.getAppContext().contentResolver)
-        val topParentId = fileStorageManager.getTopParentId(file)
-
         return if (file.isFolder) {
+            // scheduled folder downloads are only known to WorkManager, also across process restarts
+            val fileStorageManager = FileDataStorageManager(user, MainApp.getAppContext().contentResolver)
+            val topParentId = fileStorageManager.getTopParentId(file)
+
             backgroundJobManager.isStartFileDownloadJobScheduled(user, file.fileId) ||
                 backgroundJobManager.isStartFileDownloadJobScheduled(user, topParentId)
         } else {
-            FileDownloadWorker.isDownloading(user.accountName, file.fileId)
+            FileDownloadWorker.isDownloading(user.accountName, file.remotePath)
         }
     }
 
@@ -100,6 +101,35 @@ class FileDownloadHelper {
         currentDownload: DownloadFileOperation?,
         storageManager: FileDataStorageManager?
     ) {
+        updateDownloadedFile(file, currentDownload)
+
+        storageManager?.saveFile(file)
+
+        if (MimeTypeUtil.isMedia(currentDownload?.mimeType)) {
+            FileDataStorageManager.triggerMediaScan(file.storagePath, file)
+        }
+
+        storageManager?.saveConflict(file, null)
+    }
+
+    /**
+     * Stores several downloaded files in one transaction, see [saveFile]
+     *
+     * @param downloads downloaded files, already stored with their id, and their download operation
+     */
+    fun saveFiles(downloads: List<Pair<OCFile, DownloadFileOperation>>, storageManager: FileDataStorageManager?) {
+        downloads.forEach { (file, download) -> updateDownloadedFile(file, download) }
+
+        storageManager?.saveDownloadedFiles(downloads.map { it.first })
+
+        downloads.forEach { (file, download) ->
+            if (MimeTypeUtil.isMedia(download.mimeType)) {
+                FileDataStorageManager.triggerMediaScan(file.storagePath, file)
+            }
+        }
+    }
+
+    private fun updateDownloadedFile(file: OCFile, currentDownload: DownloadFileOperation?) {
         val syncDate = System.currentTimeMillis()
 
         file.apply {
@@ -119,14 +149,6 @@ class FileDownloadHelper {
 
             remoteId = currentDownload?.file?.remoteId
         }
-
-        storageManager?.saveFile(file)
-
-        if (MimeTypeUtil.isMedia(currentDownload?.mimeType)) {
-            FileDataStorageManager.triggerMediaScan(file.storagePath, file)
-        }
-
-        storageManager?.saveConflict(file, null)
     }
 
     fun downloadFileIfNotStartedBefore(user: User, file: OCFile) {
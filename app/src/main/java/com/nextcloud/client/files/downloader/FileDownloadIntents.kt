@@ -39,10 +39,18 @@ class FileDownloadIntents(private val context: Context) {
     fun newDownloadIntent(
         download: DownloadFileOperation,
         linkedToRemotePath: String
+    ): Intent {
+        return newDownloadIntent(download.user.accountName, download.remotePath, linkedToRemotePath)
+    }
+
+    fun newDownloadIntent(
+        accountName: String,
+        remotePath: String,
+        linkedToRemotePath: String
     ): Intent {
         return Intent(FileDownloadWorker.getDownloadAddedMessage()).apply {
-            putExtra(FileDownloadWorker.EXTRA_ACCOUNT_NAME, download.user.accountName)
-            putExtra(FileDownloadWorker.EXTRA_REMOTE_PATH, download.remotePath)
+            putExtra(FileDownloadWorker.EXTRA_ACCOUNT_NAME, accountName)
+            putExtra(FileDownloadWorker.EXTRA_REMOTE_PATH, remotePath)
             putExtra(FileDownloadWorker.EXTRA_LINKED_TO_PATH, linkedToRemotePath)
             setPackage(context.packageName)
         }
@@ -33,6 +33,7 @@ import androidx.work.Worker
 import androidx.work.WorkerParameters
 import com.nextcloud.client.account.User
 import com.nextcloud.client.account.UserAccountManager
+import com.nextcloud.client.files.TransferStateIndex
 import com.nextcloud.java.util.Optional
 import com.nextcloud.model.WorkerState
 import com.nextcloud.model.WorkerStateLiveData
@@ -52,8 +53,10 @@ import com.owncloud.android.operations.DownloadFileOperation
 import com.owncloud.android.operations.DownloadType
 import com.owncloud.android.utils.theme.ViewThemeUtils
 import java.security.SecureRandom
-import java.util.AbstractList
-import java.util.Vector
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
 
 @Suppress("LongParameterList", "TooManyFunctions")
 class FileDownloadWorker(
@@ -62,21 +65,44 @@ class FileDownloadWorker(
     private var localBroadcastManager: LocalBroadcastManager,
     private val context: Context,
     params: WorkerParameters
-) : Worker(context, params), OnAccountsUpdateListener, OnDatatransferProgressListener {
+) : Worker(context, params), OnAccountsUpdateListener {
 
     companion object {
         private val TAG = FileDownloadWorker::class.java.simpleName
 
+        private const val MAX_PROGRESS = 100
+
+        /**
+         * Files of a folder are downloaded in parallel, while the folder is walked only as far as the running and
+         * queued downloads need it
+         */
+        private const val MAX_PARALLEL_DOWNLOADS = 4
+        private const val MAX_QUEUED_DOWNLOADS = 2 * MAX_PARALLEL_DOWNLOADS
+
+        /**
+         * Downloaded files of a folder are stored in batches, at the latest after the interval
+         */
+        private const val SAVE_BATCH_SIZE = 50
+        private const val SAVE_INTERVAL_MS = 2000L
+
         private val pendingDownloads = IndexedForest<DownloadFileOperation>()
 
+        /**
+         * Paths of [pendingDownloads] by download key
+         */
+        private val pendingDownloadPaths = TransferStateIndex<String>()
+
         fun cancelOperation(accountName: String, fileId: Long) {
             pendingDownloads.all.forEach {
                 it.value?.payload?.cancelMatchingOperation(accountName, fileId)
             }
         }
 
-        fun isDownloading(accountName: String, fileId: Long): Boolean {
-            return pendingDownloads.all.any { it.value?.payload?.isMatching(accountName, fileId) == true }
+        /**
+         * @return true if the file is pending for download in a running worker
+         */
+        fun isDownloading(accountName: String, remotePath: String): Boolean {
+            return pendingDownloadPaths.contains(accountName, remotePath)
         }
 
         const val WORKER_ID = "WORKER_ID"
@@ -102,7 +128,12 @@ class FileDownloadWorker(
         }
     }
 
+    /**
+     * Last started download, running downloads are the keys of [downloadProgress]
+     */
+    @Volatile
     private var currentDownload: DownloadFileOperation? = null
+    private val downloadProgress = ConcurrentHashMap<DownloadFileOperation, DownloadProgress>()
 
     private var conflictUploadId: Long? = null
     private var lastPercent = 0
@@ -114,16 +145,26 @@ class FileDownloadWorker(
     private var user: User? = null
     private var currentUser = Optional.empty<User>()
 
+    @Volatile
     private var currentUserFileStorageManager: FileDataStorageManager? = null
     private var fileDataStorageManager: FileDataStorageManager? = null
 
+    private var downloadType: DownloadType? = null
+    private var behaviour = ""
+    private var activityName = ""
+    private var packageName = ""
+    private var isFolderDownload = false
+
+    private val downloadedFiles = ArrayList<DownloadedFile>()
+    private var lastSaveTime = 0L
+
     private var workerId: Int? = null
     private var downloadError: FileDownloadError? = null
 
     @Suppress("TooGenericExceptionCaught")
     override fun doWork(): Result {
         return try {
-            val requestDownloads = getRequestDownloads()
+            val file = getRequestedFile()
 
             notificationManager =
                 DownloadNotificationManager(workerId ?: SecureRandom().nextInt(), context, viewThemeUtils)
@@ -136,8 +177,10 @@ class FileDownloadWorker(
             )
             setForegroundAsync(foregroundInfo)
 
-            requestDownloads.forEach {
-                downloadFile(it)
+            if (file?.isFolder == true) {
+                downloadFolder(file)
+            } else {
+                file?.let { addPendingDownload(it) }?.let { downloadFile(it) }
             }
 
             downloadError?.let {
@@ -161,6 +204,7 @@ class FileDownloadWorker(
     override fun onStopped() {
         Log_OC.e(TAG, "FilesDownloadWorker stopped")
 
+        downloadProgress.keys.forEach { it.cancel() }
         notificationManager.dismissNotification()
         setIdleWorkerState()
 
@@ -176,55 +220,62 @@ class FileDownloadWorker(
     }
 
     private fun removePendingDownload(accountName: String?) {
-        pendingDownloads.remove(accountName)
+        synchronized(pendingDownloads) {
+            pendingDownloads.remove(accountName)
+        }
+        accountName?.let { pendingDownloadPaths.removeAll(it) }
     }
 
-    private fun getRequestDownloads(): AbstractList<String> {
+    private fun getRequestedFile(): OCFile? {
         workerId = inputData.keyValueMap[WORKER_ID] as Int
         Log_OC.e(TAG, "FilesDownloadWorker started for $workerId")
 
         setUser()
-        val files = getFiles()
-        val downloadType = getDownloadType()
+        downloadType = getDownloadType()
 
         conflictUploadId = inputData.keyValueMap[CONFLICT_UPLOAD_ID] as Long?
 
-        val behaviour = inputData.keyValueMap[BEHAVIOUR] as String? ?: ""
-        val activityName = inputData.keyValueMap[ACTIVITY_NAME] as String? ?: ""
-        val packageName = inputData.keyValueMap[PACKAGE_NAME] as String? ?: ""
+        behaviour = inputData.keyValueMap[BEHAVIOUR] as String? ?: ""
+        activityName = inputData.keyValueMap[ACTIVITY_NAME] as String? ?: ""
+        packageName = inputData.keyValueMap[PACKAGE_NAME] as String? ?: ""
 
-        val requestedDownloads: AbstractList<String> = Vector()
+        val remotePath = inputData.keyValueMap[FILE_REMOTE_PATH] as String?
+        return fileDataStorageManager?.getFileByEncryptedRemotePath(remotePath)?.also {
+            isFolderDownload = it.isFolder
+        }
+    }
 
+    /**
+     * @return key of the download, or null if the file is already pending for download
+     */
+    private fun addPendingDownload(file: OCFile): String? {
         return try {
-            files.forEach { file ->
-                val operation = DownloadFileOperation(
-                    user,
-                    file,
-                    behaviour,
-                    activityName,
-                    packageName,
-                    context,
-                    downloadType
-                )
-
-                operation.addDownloadDataTransferProgressListener(this)
-                operation.addDownloadDataTransferProgressListener(downloadProgressListener)
-                val (downloadKey, linkedToRemotePath) = pendingDownloads.putIfAbsent(
-                    user?.accountName,
-                    file.remotePath,
-                    operation
-                )
-
-                if (downloadKey != null) {
-                    requestedDownloads.add(downloadKey)
+            val operation = DownloadFileOperation(
+                user,
+                file,
+                behaviour,
+                activityName,
+                packageName,
+                context,
+                downloadType
+            )
+
+            operation.addDownloadDataTransferProgressListener(DownloadProgressListener(operation))
+            val (downloadKey, linkedToRemotePath) = synchronized(pendingDownloads) {
+                pendingDownloads.putIfAbsent(user?.accountName, file.remotePath, operation)
+            }
+
+            if (downloadKey != null) {
+                user?.let { pendingDownloadPaths.put(downloadKey, it.accountName, file.remotePath) }
+                if (!isFolderDownload) {
                     localBroadcastManager.sendBroadcast(intents.newDownloadIntent(operation, linkedToRemotePath))
                 }
             }
 
-            requestedDownloads
+            downloadKey
         } catch (e: IllegalArgumentException) {
             Log_OC.e(TAG, "Not enough information provided in intent: " + e.message)
-            requestedDownloads
+            null
         }
     }
 
@@ -234,14 +285,59 @@ class FileDownloadWorker(
         fileDataStorageManager = FileDataStorageManager(user, context.contentResolver)
     }
 
-    private fun getFiles(): List<OCFile> {
-        val remotePath = inputData.keyValueMap[FILE_REMOTE_PATH] as String?
-        val file = fileDataStorageManager?.getFileByEncryptedRemotePath(remotePath) ?: return listOf()
+    /**
+     * Files below the folder are read one folder at a time while they are walked, so that the first downloads can
+     * start at once and only queued downloads are kept in memory. They are downloaded by [MAX_PARALLEL_DOWNLOADS]
+     * threads and stored in batches.
+     */
+    private fun downloadFolder(folder: OCFile) {
+        user?.let {
+            localBroadcastManager.sendBroadcast(
+                intents.newDownloadIntent(it.accountName, folder.remotePath, folder.remotePath)
+            )
+        }
 
-        return if (file.isFolder) {
-            fileDataStorageManager?.getAllFilesRecursivelyInsideFolder(file) ?: listOf()
-        } else {
-            listOf(file)
+        val executor = Executors.newFixedThreadPool(MAX_PARALLEL_DOWNLOADS)
+        val queuedDownloads = Semaphore(MAX_QUEUED_DOWNLOADS)
+        try {
+            for (file in getFilesRecursively(folder)) {
+                if (isStopped) {
+                    break
+                }
+
+                val downloadKey = addPendingDownload(file) ?: continue
+                queuedDownloads.acquire()
+                executor.execute {
+                    try {
+                        downloadFile(downloadKey)
+                    } finally {
+                        queuedDownloads.release()
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown()
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)
+            } catch (e: InterruptedException) {
+                Log_OC.w(TAG, "Interrupted while waiting for downloads of " + folder.remotePath)
+                executor.shutdownNow()
+                Thread.currentThread().interrupt()
+            }
+            saveDownloadedFiles(takeDownloadedFiles())
+        }
+    }
+
+    private fun getFilesRecursively(folder: OCFile): Sequence<OCFile> = sequence {
+        val folders = ArrayDeque<OCFile>().apply { add(folder) }
+        while (folders.isNotEmpty()) {
+            fileDataStorageManager?.getFolderContent(folders.removeFirst(), false)?.forEach {
+                if (it.isFolder) {
+                    folders.addLast(it)
+                } else {
+                    yield(it)
+                }
+            }
         }
     }
 
@@ -265,39 +361,74 @@ class FileDownloadWorker(
 
     @Suppress("TooGenericExceptionCaught")
     private fun downloadFile(downloadKey: String) {
-        currentDownload = pendingDownloads.get(downloadKey)
+        val download = pendingDownloads.get(downloadKey)
+
+        if (download == null) {
+            pendingDownloadPaths.remove(downloadKey)
+            return
+        }
 
-        if (currentDownload == null) {
+        if (isStopped) {
+            // queued downloads of a folder are still handed to the executor after the worker got stopped
+            synchronized(pendingDownloads) {
+                pendingDownloads.removePayload(download.user?.accountName, download.remotePath)
+            }
+            pendingDownloadPaths.remove(downloadKey)
             return
         }
 
+        currentDownload = download
         setWorkerState(user)
         Log_OC.e(TAG, "FilesDownloadWorker downloading: $downloadKey")
 
-        val isAccountExist = accountManager.exists(currentDownload?.user?.toPlatformAccount())
+        val isAccountExist = accountManager.exists(download.user?.toPlatformAccount())
         if (!isAccountExist) {
-            removePendingDownload(currentDownload?.user?.accountName)
+            removePendingDownload(download.user?.accountName)
             return
         }
 
-        notifyDownloadStart(currentDownload!!)
+        startDownloadProgress(download)
         var downloadResult: RemoteOperationResult<*>? = null
+        var downloadedFile: OCFile? = null
         try {
-            val ocAccount = getOCAccountForDownload()
+            val ocAccount = getOCAccountForDownload(download)
             val downloadClient =
                 OwnCloudClientManagerFactory.getDefaultSingleton().getClientFor(ocAccount, context)
 
-            downloadResult = currentDownload?.execute(downloadClient)
-            if (downloadResult?.isSuccess == true && currentDownload?.downloadType === DownloadType.DOWNLOAD) {
-                getCurrentFile()?.let {
-                    FileDownloadHelper.instance().saveFile(it, currentDownload, currentUserFileStorageManager)
+            downloadResult = download.execute(downloadClient)
+            if (downloadResult?.isSuccess == true && download.downloadType === DownloadType.DOWNLOAD) {
+                getDownloadedFile(download)?.let {
+                    if (isFolderDownload) {
+                        downloadedFile = it
+                    } else {
+                        FileDownloadHelper.instance().saveFile(it, download, currentUserFileStorageManager)
+                    }
                 }
             }
         } catch (e: Exception) {
             Log_OC.e(TAG, "Error downloading", e)
             downloadResult = RemoteOperationResult<Any?>(e)
         } finally {
-            cleanupDownloadProcess(downloadResult)
+            downloadProgress.remove(download)
+        }
+
+        val file = downloadedFile
+        if (file != null && downloadResult != null) {
+            addDownloadedFile(DownloadedFile(downloadKey, file, download, downloadResult))
+        } else {
+            cleanupDownloadProcess(downloadKey, download, downloadResult)
+        }
+    }
+
+    private fun startDownloadProgress(download: DownloadFileOperation) {
+        // parallel downloads of a folder share the notification of the first one
+        val isFirstRunningDownload = downloadProgress.isEmpty()
+        downloadProgress[download] = DownloadProgress()
+
+        if (isFirstRunningDownload) {
+            synchronized(notificationManager) {
+                notifyDownloadStart(download)
+            }
         }
     }
 
@@ -310,8 +441,9 @@ class FileDownloadWorker(
         }
     }
 
-    private fun getOCAccountForDownload(): OwnCloudAccount {
-        val currentDownloadAccount = currentDownload?.user?.toPlatformAccount()
+    @Synchronized
+    private fun getOCAccountForDownload(download: DownloadFileOperation): OwnCloudAccount {
+        val currentDownloadAccount = download.user?.toPlatformAccount()
         val currentDownloadUser = accountManager.getUser(currentDownloadAccount?.name)
         if (currentUser != currentDownloadUser) {
             currentUser = currentDownloadUser
@@ -320,46 +452,91 @@ class FileDownloadWorker(
         return currentDownloadUser.get().toOwnCloudAccount()
     }
 
-    private fun getCurrentFile(): OCFile? {
-        var file: OCFile? = currentDownload?.file?.fileId?.let { currentUserFileStorageManager?.getFileById(it) }
+    private fun getDownloadedFile(download: DownloadFileOperation): OCFile? {
+        var file: OCFile? = download.file?.fileId?.let { currentUserFileStorageManager?.getFileById(it) }
 
         if (file == null) {
-            file = currentUserFileStorageManager?.getFileByDecryptedRemotePath(currentDownload?.file?.remotePath)
+            file = currentUserFileStorageManager?.getFileByDecryptedRemotePath(download.file?.remotePath)
         }
 
         if (file == null) {
-            Log_OC.e(this, "Could not save " + currentDownload?.file?.remotePath)
+            Log_OC.e(this, "Could not save " + download.file?.remotePath)
             return null
         }
 
         return file
     }
 
-    private fun cleanupDownloadProcess(result: RemoteOperationResult<*>?) {
+    /**
+     * Keeps a downloaded file of a folder to be stored with others, the download is finished once it is stored
+     */
+    private fun addDownloadedFile(downloadedFile: DownloadedFile) {
+        val batch = synchronized(downloadedFiles) {
+            downloadedFiles.add(downloadedFile)
+            val now = System.currentTimeMillis()
+            if (downloadedFiles.size >= SAVE_BATCH_SIZE || now - lastSaveTime >= SAVE_INTERVAL_MS) {
+                lastSaveTime = now
+                takeDownloadedFiles()
+            } else {
+                emptyList()
+            }
+        }
+
+        saveDownloadedFiles(batch)
+    }
+
+    private fun takeDownloadedFiles(): List<DownloadedFile> = synchronized(downloadedFiles) {
+        downloadedFiles.toList().also { downloadedFiles.clear() }
+    }
+
+    @Suppress("TooGenericExceptionCaught")
+    private fun saveDownloadedFiles(batch: List<DownloadedFile>) {
+        if (batch.isEmpty()) {
+            return
+        }
+
+        var saveResult: RemoteOperationResult<*>? = null
+        try {
+            FileDownloadHelper.instance().saveFiles(
+                batch.map { Pair(it.file, it.download) },
+                currentUserFileStorageManager
+            )
+        } catch (e: Exception) {
+            Log_OC.e(TAG, "Error saving downloaded files", e)
+            saveResult = RemoteOperationResult<Any?>(e)
+        }
+
+        batch.forEach { cleanupDownloadProcess(it.downloadKey, it.download, saveResult ?: it.result) }
+    }
+
+    private fun cleanupDownloadProcess(
+        downloadKey: String,
+        download: DownloadFileOperation,
+        result: RemoteOperationResult<*>?
+    ) {
         result?.let {
             checkDownloadError(it)
         }
 
-        val removeResult = pendingDownloads.removePayload(
-            currentDownload?.user?.accountName,
-            currentDownload?.remotePath
-        )
+        val removeResult = synchronized(pendingDownloads) {
+            pendingDownloads.removePayload(download.user?.accountName, download.remotePath)
+        }
+        pendingDownloadPaths.remove(downloadKey)
 
         val downloadResult = result ?: RemoteOperationResult<Any?>(RuntimeException("Error downloading…"))
 
-        currentDownload?.run {
-            notifyDownloadResult(this, downloadResult)
+        notifyDownloadResult(download, downloadResult)
 
-            val downloadFinishedIntent = intents.downloadFinishedIntent(
-                this,
-                downloadResult,
-                removeResult.second
-            )
+        val downloadFinishedIntent = intents.downloadFinishedIntent(
+            download,
+            downloadResult,
+            removeResult.second
+        )
 
-            localBroadcastManager.sendBroadcast(downloadFinishedIntent)
-        }
+        localBroadcastManager.sendBroadcast(downloadFinishedIntent)
     }
 
+    @Synchronized
     private fun checkDownloadError(result: RemoteOperationResult<*>) {
         if (result.isSuccess || downloadError != null) {
             return
@@ -394,47 +571,105 @@ class FileDownloadWorker(
         }
 
         val needsToUpdateCredentials = (ResultCode.UNAUTHORIZED == downloadResult.code)
-        notificationManager.run {
-            prepareForResult()
-
-            if (needsToUpdateCredentials) {
-                showNewNotification(context.getString(R.string.downloader_download_failed_credentials_error))
-                setContentIntent(
-                    intents.credentialContentIntent(download.user),
-                    PendingIntent.FLAG_ONE_SHOT or PendingIntent.FLAG_IMMUTABLE
-                )
-            } else {
-                setContentIntent(intents.detailsIntent(null), PendingIntent.FLAG_IMMUTABLE)
+        synchronized(notificationManager) {
+            notificationManager.run {
+                // other downloads of the folder are still running
+                if (downloadProgress.isEmpty()) {
+                    prepareForResult()
+                }
+
+                if (needsToUpdateCredentials) {
+                    showNewNotification(context.getString(R.string.downloader_download_failed_credentials_error))
+                    setContentIntent(
+                        intents.credentialContentIntent(download.user),
+                        PendingIntent.FLAG_ONE_SHOT or PendingIntent.FLAG_IMMUTABLE
+                    )
+                } else {
+                    setContentIntent(intents.detailsIntent(null), PendingIntent.FLAG_IMMUTABLE)
+                }
             }
         }
     }
 
     override fun onAccountsUpdated(accounts: Array<out Account>?) {
-        if (!accountManager.exists(currentDownload?.user?.toPlatformAccount())) {
-            currentDownload?.cancel()
-        }
+        downloadProgress.keys
+            .filterNot { accountManager.exists(it.user?.toPlatformAccount()) }
+            .forEach { it.cancel() }
     }
 
-    @Suppress("MagicNumber")
-    override fun onTransferProgress(
+    /**
+     * Progress listeners of a single file get its own progress, the notification shows the aggregated progress of
+     * all running downloads.
+     */
+    private fun onDownloadProgress(
+        download: DownloadFileOperation,
         progressRate: Long,
         totalTransferredSoFar: Long,
         totalToTransfer: Long,
         filePath: String
     ) {
-        val percent: Int = (100.0 * totalTransferredSoFar.toDouble() / totalToTransfer.toDouble()).toInt()
+        val progress = downloadProgress[download] ?: return
+        progress.transferred = totalTransferredSoFar
+        progress.total = totalToTransfer
+
+        downloadProgressListener.onTransferProgress(
+            download.file.fileId,
+            progressRate,
+            totalTransferredSoFar,
+            totalToTransfer,
+            filePath
+        )
 
-        if (percent != lastPercent) {
-            notificationManager.run {
-                updateDownloadProgress(filePath, percent, totalToTransfer)
+        val running = downloadProgress.values
+        val runningTotal = if (running.any { it.total < 0 }) -1 else running.sumOf { it.total }
+        if (runningTotal <= 0) {
+            // the size of a running download is unknown or none has started yet
+            return
+        }
+
+        val percent = (MAX_PROGRESS * running.sumOf { it.transferred }.toDouble() / runningTotal).toInt()
+
+        synchronized(notificationManager) {
+            if (percent != lastPercent) {
+                notificationManager.run {
+                    updateDownloadProgress(filePath, percent, runningTotal)
+                }
             }
+
+            lastPercent = percent
         }
+    }
+
+    private class DownloadProgress {
+        @Volatile
+        var transferred = 0L
+
+        @Volatile
+        var total = 0L
+    }
+
+    private class DownloadedFile(
+        val downloadKey: String,
+        val file: OCFile,
+        val download: DownloadFileOperation,
+        val result: RemoteOperationResult<*>
+    )
 
-        lastPercent = percent
+    private inner class DownloadProgressListener(
+        private val download: DownloadFileOperation
+    ) : OnDatatransferProgressListener {
+        override fun onTransferProgress(
+            progressRate: Long,
+            totalTransferredSoFar: Long,
+            totalToTransfer: Long,
+            filePath: String
+        ) {
+            onDownloadProgress(download, progressRate, totalTransferredSoFar, totalToTransfer, filePath)
+        }
     }
 
-    inner class FileDownloadProgressListener : OnDatatransferProgressListener {
-        private val boundListeners: MutableMap<Long, OnDatatransferProgressListener> = HashMap()
+    inner class FileDownloadProgressListener {
+        private val boundListeners: MutableMap<Long, OnDatatransferProgressListener> = ConcurrentHashMap()
 
         fun isDownloading(user: User?, file: OCFile?): Boolean {
             return FileDownloadHelper.instance().isDownloading(user, file)
@@ -459,13 +694,14 @@ class FileDownloadWorker(
             }
         }
 
-        override fun onTransferProgress(
+        fun onTransferProgress(
+            fileId: Long,
             progressRate: Long,
             totalTransferredSoFar: Long,
             totalToTransfer: Long,
             fileName: String
         ) {
-            val listener = boundListeners[currentDownload?.file?.fileId]
+            val listener = boundListeners[fileId]
             listener?.onTransferProgress(
                 progressRate,
                 totalTransferredSoFar,
@@ -133,7 +133,16 @@ interface BackgroundJobManager {
     fun startImmediateFilesExportJob(files: Collection<OCFile>): LiveData<JobInfo?>
 
     fun schedulePeriodicFilesSyncJob()
-    fun startImmediateFilesSyncJob(skipCustomFolders: Boolean = false, overridePowerSaving: Boolean = false)
+
+    /**
+     * @param skipMediaScan true if MediaStore changes were already indexed, e.g. by [ContentObserverWork]
+     */
+    fun startImmediateFilesSyncJob(
+        skipCustomFolders: Boolean = false,
+        overridePowerSaving: Boolean = false,
+        skipMediaScan: Boolean = false
+    )
+
     fun scheduleOfflineSync()
 
     fun scheduleMediaFoldersDetectionJob()
@@ -424,10 +424,15 @@ internal class BackgroundJobManagerImpl(
         workManager.enqueueUniquePeriodicWork(JOB_PERIODIC_FILES_SYNC, ExistingPeriodicWorkPolicy.REPLACE, request)
     }
 
-    override fun startImmediateFilesSyncJob(skipCustomFolders: Boolean, overridePowerSaving: Boolean) {
+    override fun startImmediateFilesSyncJob(
+        skipCustomFolders: Boolean,
+        overridePowerSaving: Boolean,
+        skipMediaScan: Boolean
+    ) {
         val arguments = Data.Builder()
             .putBoolean(FilesSyncWork.SKIP_CUSTOM, skipCustomFolders)
             .putBoolean(FilesSyncWork.OVERRIDE_POWER_SAVING, overridePowerSaving)
+            .putBoolean(FilesSyncWork.SKIP_MEDIA_SCAN, skipMediaScan)
             .build()
 
         val request = oneTimeRequestBuilder(
@@ -24,11 +24,13 @@ import androidx.work.Worker
 import androidx.work.WorkerParameters
 import com.nextcloud.client.device.PowerManagementService
 import com.owncloud.android.datamodel.SyncedFolderProvider
+import com.owncloud.android.lib.common.utils.Log_OC
 
 /**
  * This work is triggered when OS detects change in media folders.
  *
- * It fires media detection job and sync job and finishes immediately.
+ * Changed MediaStore entries are indexed by [MediaStoreScanner], then media detection job and sync job are fired.
+ * The sync job skips the full MediaStore scan, as the changes are already indexed.
  *
  * This job must not be started on API < 24.
  */
@@ -37,13 +39,14 @@ class ContentObserverWork(
     private val params: WorkerParameters,
     private val syncerFolderProvider: SyncedFolderProvider,
     private val powerManagementService: PowerManagementService,
-    private val backgroundJobManager: BackgroundJobManager
+    private val backgroundJobManager: BackgroundJobManager,
+    private val mediaStoreScanner: MediaStoreScanner
 ) : Worker(appContext, params) {
 
     override fun doWork(): Result {
         backgroundJobManager.logStartOfWorker(BackgroundJobManagerImpl.formatClassTag(this::class))
 
-        if (params.triggeredContentUris.size > 0) {
+        if (params.triggeredContentUris.isNotEmpty() || params.triggeredContentAuthorities.isNotEmpty()) {
             checkAndStartFileSyncJob()
             backgroundJobManager.startMediaFoldersDetectionJob()
         }
@@ -61,7 +64,13 @@ class ContentObserverWork(
     private fun checkAndStartFileSyncJob() {
         val syncFolders = syncerFolderProvider.countEnabledSyncedFolders() > 0
         if (!powerManagementService.isPowerSavingEnabled && syncFolders) {
-            backgroundJobManager.startImmediateFilesSyncJob(true, false)
+            Log_OC.d(TAG, "Scanning ${params.triggeredContentUris.size} changed media entries")
+            mediaStoreScanner.scan(params.triggeredContentUris, syncerFolderProvider.syncedFolders)
+            backgroundJobManager.startImmediateFilesSyncJob(
+                skipCustomFolders = true,
+                overridePowerSaving = false,
+                skipMediaScan = true
+            )
         }
     }
 
@@ -77,6 +77,7 @@ class FilesSyncWork(
         const val TAG = "FilesSyncJob"
         const val SKIP_CUSTOM = "skipCustom"
         const val OVERRIDE_POWER_SAVING = "overridePowerSaving"
+        const val SKIP_MEDIA_SCAN = "skipMediaScan"
         const val FOREGROUND_SERVICE_ID = 414
     }
 
@@ -114,6 +115,7 @@ class FilesSyncWork(
         val resources = context.resources
         val lightVersion = resources.getBoolean(R.bool.syncedFolder_light)
         val skipCustom = inputData.getBoolean(SKIP_CUSTOM, false)
+        val skipMediaScan = inputData.getBoolean(SKIP_MEDIA_SCAN, false)
         FilesSyncHelper.restartJobsIfNeeded(
             uploadsStorageManager,
             userAccountManager,
@@ -121,7 +123,7 @@ class FilesSyncWork(
             powerManagementService
         )
         setForeground(createForegroundInfo(5))
-        FilesSyncHelper.insertAllDBEntries(skipCustom, syncedFolderProvider)
+        FilesSyncHelper.insertAllDBEntries(skipCustom, skipMediaScan, syncedFolderProvider)
         setForeground(createForegroundInfo(50))
         // Create all the providers we'll need
         val filesystemDataProvider = FilesystemDataProvider(contentResolver)
@@ -221,13 +223,7 @@ class FilesSyncWork(
             syncedFolder.nameCollisionPolicy
         )
 
-        for (path in paths) {
-            // TODO batch update
-            filesystemDataProvider.updateFilesystemFileAsSentForUpload(
-                path,
-                syncedFolder.id.toString()
-            )
-        }
+        filesystemDataProvider.updateFilesystemFilesAsSentForUpload(paths, syncedFolder.id.toString())
     }
 
     private fun getRemotePath(
@@ -36,10 +36,12 @@ import com.nextcloud.client.account.User
 import com.nextcloud.client.account.UserAccountManager
 import com.nextcloud.client.device.PowerManagementService
 import com.nextcloud.client.network.ConnectivityService
+import com.nextcloud.client.preferences.AppPreferences
 import com.nextcloud.client.utils.FileUploaderDelegate
 import com.owncloud.android.R
 import com.owncloud.android.authentication.AuthenticatorActivity
 import com.owncloud.android.datamodel.FileDataStorageManager
+import com.owncloud.android.datamodel.OCFile
 import com.owncloud.android.datamodel.ThumbnailsCacheManager
 import com.owncloud.android.datamodel.UploadsStorageManager
 import com.owncloud.android.db.OCUpload
@@ -56,10 +58,15 @@ import com.owncloud.android.ui.activity.ConflictsResolveActivity
 import com.owncloud.android.ui.activity.UploadListActivity
 import com.owncloud.android.ui.notifications.NotificationUtils
 import com.owncloud.android.utils.ErrorMessageAdapter
+import com.owncloud.android.utils.FileStorageUtils
 import com.owncloud.android.utils.FilesUploadHelper
 import com.owncloud.android.utils.theme.ViewThemeUtils
 import java.io.File
 import java.security.SecureRandom
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 
 @Suppress("LongParameterList")
 class FilesUploadWorker(
@@ -70,10 +77,12 @@ class FilesUploadWorker(
     val viewThemeUtils: ViewThemeUtils,
     val localBroadcastManager: LocalBroadcastManager,
     private val backgroundJobManager: BackgroundJobManager,
+    private val preferences: AppPreferences,
     val context: Context,
     params: WorkerParameters
-) : Worker(context, params), OnDatatransferProgressListener {
+) : Worker(context, params) {
     private var lastPercent = 0
+    private val uploadProgress = ConcurrentHashMap<UploadFileOperation, UploadProgress>()
     private val notificationBuilder: NotificationCompat.Builder =
         NotificationUtils.newNotificationBuilder(context, viewThemeUtils)
     private val notificationManager: NotificationManager =
@@ -96,13 +105,18 @@ class FilesUploadWorker(
          * As pages are retrieved by sorting uploads by ID, if new uploads are added while uploading the current ones,
          * they will be present in the pages that follow.
          */
-        var currentPage = uploadsStorageManager.getCurrentAndPendingUploadsForAccountPageAscById(-1, accountName)
-        while (currentPage.isNotEmpty() && !isStopped) {
-            Log_OC.d(TAG, "Handling ${currentPage.size} uploads for account $accountName")
-            val lastId = currentPage.last().uploadId
-            handlePendingUploads(currentPage, accountName)
-            currentPage =
-                uploadsStorageManager.getCurrentAndPendingUploadsForAccountPageAscById(lastId, accountName)
+        val executor = Executors.newFixedThreadPool(preferences.maxConcurrentUploads)
+        try {
+            var currentPage = uploadsStorageManager.getCurrentAndPendingUploadsForAccountPageAscById(-1, accountName)
+            while (currentPage.isNotEmpty() && !isStopped) {
+                Log_OC.d(TAG, "Handling ${currentPage.size} uploads for account $accountName")
+                val lastId = currentPage.last().uploadId
+                handlePendingUploads(currentPage, accountName, executor)
+                currentPage =
+                    uploadsStorageManager.getCurrentAndPendingUploadsForAccountPageAscById(lastId, accountName)
+            }
+        } finally {
+            executor.shutdownNow()
         }
 
         Log_OC.d(TAG, "No more pending uploads for account $accountName, stopping work")
@@ -111,33 +125,73 @@ class FilesUploadWorker(
         return result // user account is needed
     }
 
-    private fun handlePendingUploads(uploads: List<OCUpload>, accountName: String) {
+    /**
+     * Uploads of a page are run on [executor]. Uploads into encrypted folders or into folders which do not exist
+     * locally yet need folder locking or creation, so they share one sequential task.
+     */
+    private fun handlePendingUploads(uploads: List<OCUpload>, accountName: String, executor: ExecutorService) {
         val user = userAccountManager.getUser(accountName)
 
-        for (upload in uploads) {
-            if (isStopped) {
-                break
-            }
-            // create upload file operation
-            if (user.isPresent) {
-                val uploadFileOperation = createUploadFileOperation(upload, user.get())
-
-                currentUploadFileOperation = uploadFileOperation
-                val result = upload(uploadFileOperation, user.get())
-                currentUploadFileOperation = null
-
-                fileUploaderDelegate.sendBroadcastUploadFinished(
-                    uploadFileOperation,
-                    result,
-                    uploadFileOperation.oldFile?.storagePath,
-                    context,
-                    localBroadcastManager
-                )
-            } else {
-                // user not present anymore, remove upload
-                uploadsStorageManager.removeUpload(upload.uploadId)
-            }
+        if (!user.isPresent) {
+            // user not present anymore, remove uploads
+            uploads.forEach { uploadsStorageManager.removeUpload(it.uploadId) }
+            return
+        }
+
+        val storageManager = FileDataStorageManager(user.get(), context.contentResolver)
+        // uploads of a page mostly share a few parent folders, whose encryption status is looked up once
+        val sequentialParents = HashMap<String, Boolean>()
+        val (sequentialUploads, parallelUploads) = uploads.partition { upload ->
+            val parentPath = getParentPath(upload)
+            parentPath == null ||
+                sequentialParents.getOrPut(parentPath) { requiresSequentialUpload(parentPath, storageManager) }
         }
+
+        val tasks = parallelUploads.map { upload -> Callable { handlePendingUpload(upload, user.get()) } }
+            .toMutableList()
+        if (sequentialUploads.isNotEmpty()) {
+            tasks.add(Callable { sequentialUploads.forEach { handlePendingUpload(it, user.get()) } })
+        }
+
+        try {
+            executor.invokeAll(tasks)
+        } catch (e: InterruptedException) {
+            Log_OC.w(TAG, "Interrupted while waiting for uploads of account $accountName")
+            Thread.currentThread().interrupt()
+        }
+    }
+
+    private fun handlePendingUpload(upload: OCUpload, user: User) {
+        if (isStopped) {
+            return
+        }
+
+        val uploadFileOperation = createUploadFileOperation(upload, user)
+
+        activeUploadFileOperations.add(uploadFileOperation)
+        val result = try {
+            upload(uploadFileOperation, user)
+        } finally {
+            activeUploadFileOperations.remove(uploadFileOperation)
+        }
+
+        fileUploaderDelegate.sendBroadcastUploadFinished(
+            uploadFileOperation,
+            result,
+            uploadFileOperation.oldFile?.storagePath,
+            context,
+            localBroadcastManager
+        )
+    }
+
+    private fun getParentPath(upload: OCUpload): String? = File(upload.remotePath).parent?.let {
+        if (it.endsWith(OCFile.PATH_SEPARATOR)) it else it + OCFile.PATH_SEPARATOR
+    }
+
+    private fun requiresSequentialUpload(parentPath: String, storageManager: FileDataStorageManager): Boolean {
+        val parent = storageManager.getFileByPath(parentPath) ?: return true
+
+        return FileStorageUtils.checkEncryptionStatus(parent, storageManager)
     }
 
     /**
@@ -159,7 +213,7 @@ class FilesUploadWorker(
             true,
             FileDataStorageManager(user, context.contentResolver)
         ).apply {
-            addDataTransferProgressListener(this@FilesUploadWorker)
+            addDataTransferProgressListener(UploadProgressListener(this))
         }
     }
 
@@ -168,7 +222,10 @@ class FilesUploadWorker(
         lateinit var uploadResult: RemoteOperationResult<Any?>
 
         // start notification
-        createNotification(uploadFileOperation)
+        uploadProgress[uploadFileOperation] = UploadProgress()
+        synchronized(notificationBuilder) {
+            createNotification(uploadFileOperation)
+        }
 
         try {
             val storageManager = uploadFileOperation.storageManager
@@ -187,15 +244,21 @@ class FilesUploadWorker(
             Log_OC.e(TAG, "Error uploading", e)
             uploadResult = RemoteOperationResult<Any?>(e)
         } finally {
+            uploadProgress.remove(uploadFileOperation)
+
             // only update db if operation finished and worker didn't get canceled
             if (!(isStopped && uploadResult.isCancelled)) {
                 uploadsStorageManager.updateDatabaseUploadResult(uploadResult, uploadFileOperation)
 
                 // / notify result
-                notifyUploadResult(uploadFileOperation, uploadResult)
-
-                // cancel notification
-                notificationManager.cancel(FOREGROUND_SERVICE_ID)
+                synchronized(notificationBuilder) {
+                    notifyUploadResult(uploadFileOperation, uploadResult)
+                }
+
+                // cancel notification once no other upload is running
+                if (uploadProgress.isEmpty()) {
+                    notificationManager.cancel(FOREGROUND_SERVICE_ID)
+                }
             }
         }
 
@@ -222,11 +285,11 @@ class FilesUploadWorker(
             .setOngoing(true)
             .setSmallIcon(R.drawable.notification_icon)
             .setTicker(context.getString(R.string.uploader_upload_in_progress_ticker))
-            .setProgress(MAX_PROGRESS, 0, false)
+            .setProgress(MAX_PROGRESS, lastPercent, false)
             .setContentText(
                 String.format(
                     context.getString(R.string.uploader_upload_in_progress_content),
-                    0,
+                    lastPercent,
                     uploadFileOperation.fileName
                 )
             )
@@ -407,32 +470,55 @@ class FilesUploadWorker(
 
     /**
      * see [com.owncloud.android.files.services.FileUploader.onTransferProgress]
+     *
+     * Progress listeners of a single file get its own progress, the notification shows the aggregated progress of
+     * all running uploads.
      */
-    override fun onTransferProgress(
+    private fun onUploadProgress(
+        uploadFileOperation: UploadFileOperation,
         progressRate: Long,
         totalTransferredSoFar: Long,
         totalToTransfer: Long,
         fileAbsoluteName: String
     ) {
-        val percent = (MAX_PROGRESS * totalTransferredSoFar.toDouble() / totalToTransfer.toDouble()).toInt()
-        if (percent != lastPercent) {
-            notificationBuilder.setProgress(MAX_PROGRESS, percent, false)
-            val fileName: String =
-                fileAbsoluteName.substring(fileAbsoluteName.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1)
-            val text = String.format(context.getString(R.string.uploader_upload_in_progress_content), percent, fileName)
-            notificationBuilder.setContentText(text)
-            notificationManager.notify(FOREGROUND_SERVICE_ID, notificationBuilder.build())
+        val progress = uploadProgress[uploadFileOperation] ?: return
+        progress.transferred = totalTransferredSoFar
+        progress.total = totalToTransfer
+
+        val filePercent = (MAX_PROGRESS * totalTransferredSoFar.toDouble() / totalToTransfer.toDouble()).toInt()
+        if (filePercent != progress.percent) {
+            progress.percent = filePercent
             FilesUploadHelper.onTransferProgress(
-                currentUploadFileOperation?.user?.accountName,
-                currentUploadFileOperation?.remotePath,
+                uploadFileOperation.user.accountName,
+                uploadFileOperation.remotePath,
                 progressRate,
                 totalTransferredSoFar,
                 totalToTransfer,
                 fileAbsoluteName
             )
-            currentUploadFileOperation?.let { cancelOldErrorNotification(it) }
         }
-        lastPercent = percent
+
+        val running = uploadProgress.values
+        val runningTotal = running.sumOf { it.total }
+        if (runningTotal <= 0) {
+            // no upload knows its size yet
+            return
+        }
+
+        val percent = (MAX_PROGRESS * running.sumOf { it.transferred }.toDouble() / runningTotal).toInt()
+        synchronized(notificationBuilder) {
+            if (percent != lastPercent) {
+                notificationBuilder.setProgress(MAX_PROGRESS, percent, false)
+                val fileName: String =
+                    fileAbsoluteName.substring(fileAbsoluteName.lastIndexOf(FileUtils.PATH_SEPARATOR) + 1)
+                val text =
+                    String.format(context.getString(R.string.uploader_upload_in_progress_content), percent, fileName)
+                notificationBuilder.setContentText(text)
+                notificationManager.notify(FOREGROUND_SERVICE_ID, notificationBuilder.build())
+                cancelOldErrorNotification(uploadFileOperation)
+            }
+            lastPercent = percent
+        }
     }
 
     private fun cancelOldErrorNotification(uploadFileOperation: UploadFileOperation) {
@@ -451,16 +537,47 @@ class FilesUploadWorker(
 
     override fun onStopped() {
         super.onStopped()
-        currentUploadFileOperation?.cancel(null)
+        uploadProgress.keys.forEach { it.cancel(null) }
         notificationManager.cancel(FOREGROUND_SERVICE_ID)
     }
 
+    private class UploadProgress {
+        @Volatile
+        var transferred = 0L
+
+        @Volatile
+        var total = 0L
+
+        var percent = -1
+    }
+
+    private inner class UploadProgressListener(
+        private val uploadFileOperation: UploadFileOperation
+    ) : OnDatatransferProgressListener {
+        override fun onTransferProgress(
+            progressRate: Long,
+            totalTransferredSoFar: Long,
+            totalToTransfer: Long,
+            fileAbsoluteName: String
+        ) {
+            onUploadProgress(
+                uploadFileOperation,
+                progressRate,
+                totalTransferredSoFar,
+                totalToTransfer,
+                fileAbsoluteName
+            )
+        }
+    }
+
     companion object {
         val TAG: String = FilesUploadWorker::class.java.simpleName
         private const val FOREGROUND_SERVICE_ID: Int = 412
         const val NOTIFICATION_ERROR_ID: Int = 413
         private const val MAX_PROGRESS: Int = 100
         const val ACCOUNT = "data_account"
-        var currentUploadFileOperation: UploadFileOperation? = null
+
+        @JvmField
+        val activeUploadFileOperations: MutableSet<UploadFileOperation> = ConcurrentHashMap.newKeySet()
     }
 }
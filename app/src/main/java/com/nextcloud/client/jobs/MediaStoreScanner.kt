@@ -0,0 +1,200 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.jobs
+
+import android.content.ContentResolver
+import android.database.Cursor
+import android.net.Uri
+import android.provider.MediaStore
+import com.owncloud.android.datamodel.ArbitraryDataProvider
+import com.owncloud.android.datamodel.FilesystemDataProvider
+import com.owncloud.android.datamodel.MediaFolderType
+import com.owncloud.android.datamodel.SyncedFolder
+import com.owncloud.android.lib.common.utils.Log_OC
+import com.owncloud.android.utils.MimeTypeUtil
+
+/**
+ * Indexes changed MediaStore entries of image and video auto upload folders into the filesystem table, so that a new
+ * picture does not require a scan over the whole MediaStore.
+ *
+ * Changed entries reported by the system are read by their own content uri. If the system only reports a changed
+ * collection, e.g. because too many entries changed at once, entries added since the last scan of each folder are
+ * read. The last seen [MediaStore.MediaColumns.DATE_ADDED] of a folder is its watermark, see [getWatermarkKey].
+ */
+class MediaStoreScanner(
+    private val contentResolver: ContentResolver,
+    private val filesystemDataProvider: FilesystemDataProvider,
+    private val arbitraryDataProvider: ArbitraryDataProvider
+) {
+
+    companion object {
+        private val TAG = MediaStoreScanner::class.java.simpleName
+        private const val WATERMARK_KEY_PREFIX = "auto_upload_media_watermark_"
+        private const val NO_WATERMARK = -1L
+        private const val MILLIS_PER_SECOND = 1000.0
+
+        private val PROJECTION = arrayOf(
+            MediaStore.MediaColumns.DATA,
+            MediaStore.MediaColumns.DATE_MODIFIED,
+            MediaStore.MediaColumns.DATE_ADDED,
+            MediaStore.MediaColumns.MIME_TYPE
+        )
+
+        @JvmStatic
+        fun getWatermarkKey(syncedFolder: SyncedFolder): String = WATERMARK_KEY_PREFIX + syncedFolder.id
+
+        /**
+         * @return true if folder content is taken from MediaStore instead of walking the file system
+         */
+        @JvmStatic
+        fun isMediaFolder(syncedFolder: SyncedFolder): Boolean =
+            syncedFolder.type == MediaFolderType.IMAGE || syncedFolder.type == MediaFolderType.VIDEO
+
+        @JvmStatic
+        fun isScanNeeded(syncedFolder: SyncedFolder): Boolean =
+            syncedFolder.isEnabled && (syncedFolder.isExisting || syncedFolder.enabledTimestampMs >= 0)
+    }
+
+    /**
+     * @param triggeredUris changed content uris, empty if the system only reported changed authorities
+     * @param syncedFolders all synced folders, only enabled image and video folders are handled
+     */
+    fun scan(triggeredUris: Collection<Uri>, syncedFolders: List<SyncedFolder>) {
+        val folders = syncedFolders.filter { isMediaFolder(it) && isScanNeeded(it) }
+        if (folders.isEmpty()) {
+            return
+        }
+
+        val itemUris = triggeredUris.filter { it.lastPathSegment?.toLongOrNull() != null }
+        if (itemUris.isEmpty() || itemUris.size != triggeredUris.size) {
+            folders.forEach { scanSinceWatermark(it) }
+        } else {
+            scanItems(itemUris, folders)
+        }
+    }
+
+    private fun scanItems(itemUris: List<Uri>, folders: List<SyncedFolder>) {
+        val watermarks = HashMap<SyncedFolder, Long>()
+
+        itemUris.forEach { uri ->
+            contentResolver.query(uri, PROJECTION, null, null, null)?.use { cursor ->
+                readEntries(cursor) { entry ->
+                    folders.filter { entry.belongsTo(it) }.forEach { folder ->
+                        store(entry, folder)
+                        watermarks[folder] = maxOf(watermarks[folder] ?: NO_WATERMARK, entry.dateAdded)
+                    }
+                }
+            }
+        }
+
+        // without a watermark, older entries were never scanned, a full scan has to set it first
+        watermarks.forEach { (folder, dateAdded) ->
+            val watermark = getWatermark(folder)
+            if (watermark != NO_WATERMARK && dateAdded > watermark) {
+                setWatermark(folder, dateAdded)
+            }
+        }
+    }
+
+    /**
+     * Reads entries of the folder added since its watermark, or all of them if the folder was never scanned
+     */
+    fun scanSinceWatermark(folder: SyncedFolder) {
+        val watermark = getWatermark(folder)
+        var newWatermark = watermark
+
+        val path = folder.localPath.removeSuffix("/") + "/%"
+        val selection: String
+        val selectionArgs: Array<String>
+        if (watermark == NO_WATERMARK) {
+            selection = "${MediaStore.MediaColumns.DATA} LIKE ?"
+            selectionArgs = arrayOf(path)
+        } else {
+            selection = "${MediaStore.MediaColumns.DATA} LIKE ? AND ${MediaStore.MediaColumns.DATE_ADDED} >= ?"
+            selectionArgs = arrayOf(path, watermark.toString())
+        }
+
+        getCollections(folder).forEach { collection ->
+            contentResolver.query(collection, PROJECTION, selection, selectionArgs, null)?.use { cursor ->
+                readEntries(cursor) { entry ->
+                    if (entry.belongsTo(folder)) {
+                        store(entry, folder)
+                        newWatermark = maxOf(newWatermark, entry.dateAdded)
+                    }
+                }
+            }
+        }
+
+        if (newWatermark != watermark) {
+            setWatermark(folder, newWatermark)
+        }
+    }
+
+    private fun getCollections(folder: SyncedFolder): List<Uri> = if (folder.type == MediaFolderType.IMAGE) {
+        listOf(MediaStore.Images.Media.INTERNAL_CONTENT_URI, MediaStore.Images.Media.EXTERNAL_CONTENT_URI)
+    } else {
+        listOf(MediaStore.Video.Media.INTERNAL_CONTENT_URI, MediaStore.Video.Media.EXTERNAL_CONTENT_URI)
+    }
+
+    private fun readEntries(cursor: Cursor, onEntry: (MediaEntry) -> Unit) {
+        val dataIndex = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATA)
+        val dateModifiedIndex = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_MODIFIED)
+        val dateAddedIndex = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_ADDED)
+        val mimeTypeIndex = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.MIME_TYPE)
+
+        while (cursor.moveToNext()) {
+            val path = cursor.getString(dataIndex) ?: continue
+            onEntry(
+                MediaEntry(
+                    path,
+                    cursor.getLong(dateModifiedIndex),
+                    cursor.getLong(dateAddedIndex),
+                    cursor.getString(mimeTypeIndex)
+                )
+            )
+        }
+    }
+
+    private fun store(entry: MediaEntry, folder: SyncedFolder) {
+        if (folder.isExisting || entry.dateModified >= folder.enabledTimestampMs / MILLIS_PER_SECOND) {
+            // MediaStore images and videos are never folders
+            filesystemDataProvider.storeOrUpdateFileValue(entry.path, entry.dateModified, false, folder)
+        }
+    }
+
+    private fun getWatermark(folder: SyncedFolder): Long {
+        return arbitraryDataProvider.getLongValue(folder.account, getWatermarkKey(folder))
+    }
+
+    private fun setWatermark(folder: SyncedFolder, watermark: Long) {
+        Log_OC.d(TAG, "Auto upload folder ${folder.localPath} scanned up to $watermark")
+        arbitraryDataProvider.storeOrUpdateKeyValue(folder.account, getWatermarkKey(folder), watermark)
+    }
+
+    private class MediaEntry(val path: String, val dateModified: Long, val dateAdded: Long, val mimeType: String?) {
+        fun belongsTo(folder: SyncedFolder): Boolean {
+            val typeMatches = if (folder.type == MediaFolderType.IMAGE) {
+                MimeTypeUtil.isImage(mimeType)
+            } else {
+                MimeTypeUtil.isVideo(mimeType)
+            }
+            return typeMatches && path.startsWith(folder.localPath.removeSuffix("/") + "/")
+        }
+    }
+}
@@ -23,6 +23,7 @@ package com.nextcloud.client.jobs
 
 import android.content.ContentResolver
 import android.content.Context
+import android.text.TextUtils
 import androidx.work.Worker
 import androidx.work.WorkerParameters
 import com.nextcloud.client.account.User
@@ -34,9 +35,14 @@ import com.owncloud.android.datamodel.OCFile
 import com.owncloud.android.lib.common.operations.RemoteOperationResult.ResultCode
 import com.owncloud.android.lib.common.utils.Log_OC
 import com.owncloud.android.lib.resources.files.CheckEtagRemoteOperation
+import com.owncloud.android.lib.resources.files.ReadFolderRemoteOperation
+import com.owncloud.android.lib.resources.files.model.RemoteFile
 import com.owncloud.android.operations.SynchronizeFileOperation
 import com.owncloud.android.utils.FileStorageUtils
 import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 
 @Suppress("LongParameterList") // Legacy code
 class OfflineSyncWork constructor(
@@ -50,60 +56,102 @@ class OfflineSyncWork constructor(
 
     companion object {
         const val TAG = "OfflineSyncJob"
+        private const val MAX_PARALLEL_SYNCS = 4
     }
 
     override fun doWork(): Result {
         if (!powerManagementService.isPowerSavingEnabled) {
-            val users = userAccountManager.allUsers
-            for (user in users) {
-                val storageManager = FileDataStorageManager(user, contentResolver)
-                val ocRoot = storageManager.getFileByPath(OCFile.ROOT_PATH)
-                if (ocRoot.storagePath == null) {
-                    break
+            val executor = Executors.newFixedThreadPool(MAX_PARALLEL_SYNCS)
+            try {
+                val users = userAccountManager.allUsers
+                for (user in users) {
+                    val storageManager = FileDataStorageManager(user, contentResolver)
+                    val ocRoot = storageManager.getFileByPath(OCFile.ROOT_PATH)
+                    if (ocRoot.storagePath == null) {
+                        break
+                    }
+                    val rootFolder = File(ocRoot.storagePath)
+                    val updatedEtag = checkEtagChanged(getFolderName(rootFolder, user), storageManager, user)
+                    if (updatedEtag != null) {
+                        recursive(rootFolder, updatedEtag, storageManager, user, executor)
+                    }
                 }
-                recursive(File(ocRoot.storagePath), storageManager, user)
+            } finally {
+                executor.shutdownNow()
             }
         }
         return Result.success()
     }
 
-    private fun recursive(folder: File, storageManager: FileDataStorageManager, user: User) {
-        val downloadFolder = FileStorageUtils.getSavePath(user.accountName)
-        val folderName = folder.absolutePath.replaceFirst(downloadFolder.toRegex(), "") + OCFile.PATH_SEPARATOR
+    /**
+     * Synchronizes the downloaded content of a folder whose eTag changed to [updatedEtag].
+     *
+     * One depth-1 PROPFIND of the folder yields the eTags of all children: files whose eTag matches the local one
+     * and subfolders whose eTag did not change are skipped, the remaining files are synchronized on [executor].
+     */
+    private fun recursive(
+        folder: File,
+        updatedEtag: String,
+        storageManager: FileDataStorageManager,
+        user: User,
+        executor: ExecutorService
+    ) {
+        val folderName = getFolderName(folder, user)
         Log_OC.d(TAG, "$folderName: enter")
         // exit
-        if (folder.listFiles() == null) {
+        if (folder.listFiles() == null || isStopped) {
             return
         }
 
-        val updatedEtag = checkEtagChanged(folderName, storageManager, user) ?: return
+        val ocFolder = storageManager.getFileByPath(folderName) ?: return
+        val remoteFiles = readFolder(ocFolder, user)
 
         // iterate over downloaded files
         val files = folder.listFiles { obj: File -> obj.isFile }
         if (files != null) {
-            for (file in files) {
-                val ocFile = storageManager.getFileByLocalPath(file.path)
-                val synchronizeFileOperation = SynchronizeFileOperation(
-                    ocFile?.remotePath,
-                    user,
-                    true,
-                    context,
-                    storageManager
-                )
-                synchronizeFileOperation.execute(context)
+            val tasks = files.mapNotNull { file ->
+                val ocFile = storageManager.getFileByLocalPath(file.path) ?: return@mapNotNull null
+                val serverFile = remoteFiles[ocFile.remotePath]?.let { FileStorageUtils.fillOCFile(it) }
+                if (serverFile != null && isSynchronized(ocFile, serverFile)) {
+                    null
+                } else {
+                    Callable { synchronizeFile(ocFile, serverFile, storageManager, user) }
+                }
+            }
+            Log_OC.d(TAG, "$folderName: ${tasks.size} of ${files.size} files to synchronize")
+
+            try {
+                executor.invokeAll(tasks)
+            } catch (e: InterruptedException) {
+                Log_OC.w(TAG, "Interrupted while synchronizing $folderName")
+                Thread.currentThread().interrupt()
+                return
             }
         }
         // recursive into folder
         val subfolders = folder.listFiles { obj: File -> obj.isDirectory }
         if (subfolders != null) {
             for (subfolder in subfolders) {
-                recursive(subfolder, storageManager, user)
+                val subfolderName = getFolderName(subfolder, user)
+                val remoteSubfolder = remoteFiles[subfolderName]
+                val updatedSubfolderEtag = if (remoteSubfolder != null) {
+                    getChangedEtag(storageManager.getFileByPath(subfolderName), remoteSubfolder)
+                } else {
+                    // not part of the listing, e.g. because of an encrypted name
+                    checkEtagChanged(subfolderName, storageManager, user)
+                }
+
+                if (updatedSubfolderEtag != null) {
+                    recursive(subfolder, updatedSubfolderEtag, storageManager, user, executor)
+                }
             }
         }
-        // update eTag
+        // update eTag, unless files were skipped
+        if (isStopped) {
+            return
+        }
         @Suppress("TooGenericExceptionCaught") // legacy code
         try {
-            val ocFolder = storageManager.getFileByPath(folderName)
             ocFolder.etagOnServer = updatedEtag
             storageManager.saveFile(ocFolder)
         } catch (e: Exception) {
@@ -111,6 +159,71 @@ class OfflineSyncWork constructor(
         }
     }
 
+    private fun getFolderName(folder: File, user: User): String {
+        val downloadFolder = FileStorageUtils.getSavePath(user.accountName)
+        return folder.absolutePath.replaceFirst(downloadFolder.toRegex(), "") + OCFile.PATH_SEPARATOR
+    }
+
+    /**
+     * @return children of the folder on the server by remote path, empty if the folder could not be read
+     */
+    private fun readFolder(ocFolder: OCFile, user: User): Map<String, RemoteFile> {
+        val result = ReadFolderRemoteOperation(ocFolder.remotePath).execute(user, context)
+        if (!result.isSuccess) {
+            Log_OC.d(TAG, ocFolder.remotePath + ": listing failed, checking children one by one")
+            return emptyMap()
+        }
+
+        // first entry is the folder itself
+        return result.data.drop(1)
+            .map { it as RemoteFile }
+            .associateBy { it.remotePath }
+    }
+
+    /**
+     * @return new etag of the subfolder if changed, `null` otherwise
+     */
+    private fun getChangedEtag(ocFolder: OCFile?, remoteFolder: RemoteFile): String? =
+        if (ocFolder != null && ocFolder.etagOnServer == remoteFolder.etag) {
+            Log_OC.d(TAG, remoteFolder.remotePath + ": eTag unchanged")
+            null
+        } else {
+            remoteFolder.etag
+        }
+
+    /**
+     * Same conditions [SynchronizeFileOperation] uses to decide that there is nothing to do
+     */
+    private fun isSynchronized(localFile: OCFile, serverFile: OCFile): Boolean =
+        localFile.isDown &&
+            !localFile.isInConflict &&
+            !TextUtils.isEmpty(localFile.etag) &&
+            localFile.etag == serverFile.etag &&
+            localFile.localModificationTimestamp <= localFile.lastSyncDateForData
+
+    private fun synchronizeFile(
+        localFile: OCFile,
+        serverFile: OCFile?,
+        storageManager: FileDataStorageManager,
+        user: User
+    ) {
+        if (isStopped) {
+            return
+        }
+
+        // without a server file the operation reads it on its own, and removes the local copy if it is gone
+        serverFile?.lastSyncDateForProperties = System.currentTimeMillis()
+        val synchronizeFileOperation = SynchronizeFileOperation(
+            localFile,
+            serverFile,
+            user,
+            true,
+            context,
+            storageManager
+        )
+        synchronizeFileOperation.execute(context)
+    }
+
     /**
      * @return new etag if changed, `null` otherwise
      */
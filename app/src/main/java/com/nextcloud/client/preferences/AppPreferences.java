@@ -373,6 +373,15 @@ public interface AppPreferences {
 
     void setPowerCheckDisabled(boolean value);
 
+    /**
+     * Number of files uploaded in parallel per account by the upload worker.
+     *
+     * @return concurrency, at least 1
+     */
+    int getMaxConcurrentUploads();
+
+    void setMaxConcurrentUploads(int value);
+
     void increasePinWrongAttempts();
 
     void resetPinWrongAttempts();
@@ -71,6 +71,7 @@ public final class AppPreferencesImpl implements AppPreferences {
     public static final String STORAGE_PATH_VALID = "storage_path_valid";
     public static final String PREF__DARK_THEME = "dark_theme_mode";
     public static final float DEFAULT_GRID_COLUMN = 3f;
+    public static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 4;
 
     private static final String AUTO_PREF__LAST_UPLOAD_PATH = "last_upload_path";
     private static final String AUTO_PREF__UPLOAD_FROM_LOCAL_LAST_PATH = "upload_from_local_last_path";
@@ -101,6 +102,7 @@ public final class AppPreferencesImpl implements AppPreferences {
     private static final String PREF__MIGRATED_USER_ID = "migrated_user_id";
     private static final String PREF__PHOTO_SEARCH_TIMESTAMP = "photo_search_timestamp";
     private static final String PREF__POWER_CHECK_DISABLED = "power_check_disabled";
+    private static final String PREF__MAX_CONCURRENT_UPLOADS = "max_concurrent_uploads";
     private static final String PREF__PIN_BRUTE_FORCE_COUNT = "pin_brute_force_count";
     private static final String PREF__UID_PID = "uid_pid";
 
@@ -705,6 +707,16 @@ public final class AppPreferencesImpl implements AppPreferences {
         preferences.edit().putBoolean(PREF__POWER_CHECK_DISABLED, value).apply();
     }
 
+    @Override
+    public int getMaxConcurrentUploads() {
+        return Math.max(1, preferences.getInt(PREF__MAX_CONCURRENT_UPLOADS, DEFAULT_MAX_CONCURRENT_UPLOADS));
+    }
+
+    @Override
+    public void setMaxConcurrentUploads(int value) {
+        preferences.edit().putInt(PREF__MAX_CONCURRENT_UPLOADS, value).apply();
+    }
+
     public void increasePinWrongAttempts() {
         int count = preferences.getInt(PREF__PIN_BRUTE_FORCE_COUNT, 0);
         preferences.edit().putInt(PREF__PIN_BRUTE_FORCE_COUNT, count + 1).apply();
@@ -555,7 +555,7 @@ public class MainApp extends MultiDexApplication implements HasAndroidInjector {
         }
 
         if (!preferences.isAutoUploadInitialized()) {
-            backgroundJobManager.startImmediateFilesSyncJob(false, false);
+            backgroundJobManager.startImmediateFilesSyncJob(false, false, false);
             preferences.setAutoUploadInit(true);
         }
 
@@ -884,6 +884,12 @@ public class MainApp extends MultiDexApplication implements HasAndroidInjector {
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ThumbnailsCacheManager.onTrimMemory(level);
+    }
+
     @Override
     public AndroidInjector<Object> androidInjector() {
         return dispatchingAndroidInjector;
@@ -70,10 +70,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import androidx.annotation.NonNull;
@@ -89,6 +91,10 @@ public class FileDataStorageManager {
     private static final String FAILED_TO_INSERT_MSG = "Fail to insert insert file to database ";
     private static final String SENDING_TO_FILECONTENTPROVIDER_MSG = "Sending %d operations to FileContentProvider";
     private static final String EXCEPTION_MSG = "Exception in batch of operations ";
+    /**
+     * SQLite before 3.32 limits a statement to 999 host parameters
+     */
+    private static final int MAX_QUERY_ARGUMENTS = 500;
 
     public static final int ROOT_PARENT_ID = 0;
     private static final String JSON_NULL_STRING = "null";
@@ -181,6 +187,43 @@ public class FileDataStorageManager {
         return fileDao.getFileByEncryptedRemotePath(path, user.getAccountName()) != null;
     }
 
+    private Set<Long> getExistingFileIds(List<Long> ids) {
+        Set<Long> existingIds = new HashSet<>(ids.size());
+        for (int start = 0; start < ids.size(); start += MAX_QUERY_ARGUMENTS) {
+            List<Long> chunk = ids.subList(start, Math.min(start + MAX_QUERY_ARGUMENTS, ids.size()));
+            existingIds.addAll(fileDao.getExistingFileIds(chunk));
+        }
+        return existingIds;
+    }
+
+    private Map<String, Long> getFileIdsByEncryptedRemotePaths(List<String> paths) {
+        Map<String, Long> idsByPath = new HashMap<>(paths.size());
+        for (int start = 0; start < paths.size(); start += MAX_QUERY_ARGUMENTS) {
+            List<String> chunk = paths.subList(start, Math.min(start + MAX_QUERY_ARGUMENTS, paths.size()));
+            for (FileEntity fileEntity : fileDao.getFilesByEncryptedRemotePaths(chunk, user.getAccountName())) {
+                idsByPath.put(fileEntity.getPath(), fileEntity.getId());
+            }
+        }
+        return idsByPath;
+    }
+
+    /**
+     * Bulk variant of {@link #getFileByEncryptedRemotePath(String)}
+     *
+     * @param paths encrypted remote paths
+     * @return stored files by encrypted remote path, paths without a stored file are missing
+     */
+    public Map<String, OCFile> getFilesByEncryptedRemotePaths(List<String> paths) {
+        Map<String, OCFile> filesByPath = new HashMap<>(paths.size());
+        for (int start = 0; start < paths.size(); start += MAX_QUERY_ARGUMENTS) {
+            List<String> chunk = paths.subList(start, Math.min(start + MAX_QUERY_ARGUMENTS, paths.size()));
+            for (FileEntity fileEntity : fileDao.getFilesByEncryptedRemotePaths(chunk, user.getAccountName())) {
+                filesByPath.put(fileEntity.getPath(), createFileInstance(fileEntity));
+            }
+        }
+        return filesByPath;
+    }
+
     public long getTopParentId(OCFile file) {
         if (file.getParentId() == 1) {
             return file.getFileId();
@@ -318,25 +361,7 @@ public class FileDataStorageManager {
             OCFile returnFile;
 
             if (parentFile == null) {
-                // remote request
-                ReadFileRemoteOperation operation = new ReadFileRemoteOperation(parentPath);
-                // TODO Deprecated
-                RemoteOperationResult result = operation.execute(getUser(), context);
-                if (result.isSuccess()) {
-                    OCFile remoteFolder = FileStorageUtils.fillOCFile((RemoteFile) result.getData().get(0));
-
-                    returnFile = saveFileWithParent(remoteFolder, context);
-                } else {
-                    Exception exception = result.getException();
-                    String message = "Error during saving file with parents: " + ocFile.getRemotePath() + " / "
-                        + result.getLogMessage();
-
-                    if (exception != null) {
-                        throw new RemoteOperationFailedException(message, exception);
-                    } else {
-                        throw new RemoteOperationFailedException(message);
-                    }
-                }
+                returnFile = saveRemoteParentFolder(ocFile.getRemotePath(), parentPath, context);
             } else {
                 returnFile = saveFileWithParent(parentFile, context);
             }
@@ -348,6 +373,171 @@ public class FileDataStorageManager {
         return ocFile;
     }
 
+    /**
+     * Retrieves a parent folder which is not stored yet from the server and stores it with its parents.
+     */
+    private OCFile saveRemoteParentFolder(String remotePath, String parentPath, Context context) {
+        // remote request
+        ReadFileRemoteOperation operation = new ReadFileRemoteOperation(parentPath);
+        // TODO Deprecated
+        RemoteOperationResult result = operation.execute(getUser(), context);
+        if (result.isSuccess()) {
+            OCFile remoteFolder = FileStorageUtils.fillOCFile((RemoteFile) result.getData().get(0));
+
+            return saveFileWithParent(remoteFolder, context);
+        } else {
+            Exception exception = result.getException();
+            String message = "Error during saving file with parents: " + remotePath + " / "
+                + result.getLogMessage();
+
+            if (exception != null) {
+                throw new RemoteOperationFailedException(message, exception);
+            } else {
+                throw new RemoteOperationFailedException(message);
+            }
+        }
+    }
+
+    /**
+     * Bulk variant of the parent handling of {@link #saveFileWithParent(OCFile, Context)}. Stored parent folders are
+     * read with one query, missing ones are retrieved from the server once per folder. Sets the parent id of the
+     * given files; files whose parent can't be retrieved keep a parent id of 0.
+     *
+     * @param files   files without parent id, e.g. search results
+     * @param context the app context
+     * @return parent folders of the files by id
+     */
+    public Map<Long, OCFile> saveParentFolders(List<OCFile> files, Context context) {
+        List<String> parentPaths = new ArrayList<>();
+        Set<String> distinctParentPaths = new HashSet<>();
+        for (OCFile ocFile : files) {
+            String parentPath = getParentPath(ocFile);
+            if (parentPath != null && distinctParentPaths.add(parentPath)) {
+                parentPaths.add(parentPath);
+            }
+        }
+
+        Map<String, OCFile> parentsByPath = getFilesByEncryptedRemotePaths(parentPaths);
+        Map<Long, OCFile> parentsById = new HashMap<>(parentPaths.size());
+        for (OCFile ocFile : files) {
+            String parentPath = getParentPath(ocFile);
+            if (parentPath == null) {
+                continue;
+            }
+
+            OCFile parentFile = parentsByPath.get(parentPath);
+            if (parentFile == null && !parentsByPath.containsKey(parentPath)) {
+                try {
+                    parentFile = OCFile.ROOT_PATH.equals(parentPath) ? getFileByEncryptedRemotePath(parentPath) :
+                        saveRemoteParentFolder(ocFile.getRemotePath(), parentPath, context);
+                } catch (RemoteOperationFailedException e) {
+                    Log_OC.e(TAG, "Error saving parent folder " + parentPath + ": " + e.getMessage(), e);
+                }
+                // also remember failures, so that the folder is only requested once
+                parentsByPath.put(parentPath, parentFile);
+            }
+
+            if (parentFile != null) {
+                ocFile.setParentId(parentFile.getFileId());
+                parentsById.put(parentFile.getFileId(), parentFile);
+            }
+        }
+
+        return parentsById;
+    }
+
+    /**
+     * @return remote path of the parent folder, null if the file has a parent id already or is the root folder
+     */
+    private static @Nullable String getParentPath(OCFile ocFile) {
+        if (ocFile.getParentId() != 0 || OCFile.ROOT_PATH.equals(ocFile.getRemotePath())) {
+            return null;
+        }
+        String remotePath = ocFile.getRemotePath();
+        return remotePath.substring(0, remotePath.lastIndexOf(ocFile.getFileName()));
+    }
+
+    /**
+     * Inserts or updates files together with their entries in a virtual folder, like {@link #saveFile(OCFile)} and
+     * {@link #saveVirtuals(List)} do for single files, but in one batch. The parent ids of the files must be set,
+     * e.g. by {@link #saveParentFolders(List, Context)}.
+     *
+     * @param files files to store, sets the id of inserted files
+     * @param type  virtual folder the files are listed in
+     */
+    public void saveVirtualFolderContent(List<OCFile> files, VirtualFolderType type) {
+        List<Long> fileIds = new ArrayList<>(files.size());
+        List<String> remotePaths = new ArrayList<>(files.size());
+        for (OCFile ocFile : files) {
+            if (ocFile.getFileId() != -1) {
+                fileIds.add(ocFile.getFileId());
+            }
+            remotePaths.add(ocFile.getRemotePath());
+        }
+        Set<Long> existingFileIds = getExistingFileIds(fileIds);
+        Map<String, Long> existingFileIdsByPath = getFileIdsByEncryptedRemotePaths(remotePaths);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(files.size() * 2);
+        int[] insertPositions = new int[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            OCFile ocFile = files.get(i);
+            ContentValues contentValues = createContentValuesForFile(ocFile);
+            if (ocFile.isFolder()) {
+                contentValues.remove(ProviderTableMeta.FILE_STORAGE_PATH);
+            }
+
+            // same precedence as saveFile: a file at the same path is replaced, otherwise a renamed one
+            Long fileId = existingFileIdsByPath.get(ocFile.getRemotePath());
+            if (fileId == null && existingFileIds.contains(ocFile.getFileId())) {
+                fileId = ocFile.getFileId();
+            }
+
+            ContentProviderOperation.Builder virtual = ContentProviderOperation
+                .newInsert(ProviderTableMeta.CONTENT_URI_VIRTUAL)
+                .withValue(ProviderTableMeta.VIRTUAL_TYPE, type.toString());
+
+            if (fileId != null) {
+                insertPositions[i] = -1;
+                ocFile.setFileId(fileId);
+                operations.add(ContentProviderOperation.newUpdate(ProviderTableMeta.CONTENT_URI)
+                                   .withValues(contentValues)
+                                   .withSelection(ProviderTableMeta._ID + " = ?", new String[]{String.valueOf(fileId)})
+                                   .build());
+                virtual.withValue(ProviderTableMeta.VIRTUAL_OCFILE_ID, fileId);
+            } else {
+                // the id of the inserted file is only known when the batch is applied
+                insertPositions[i] = operations.size();
+                operations.add(ContentProviderOperation.newInsert(ProviderTableMeta.CONTENT_URI_FILE)
+                                   .withValues(contentValues)
+                                   .build());
+                virtual.withValueBackReference(ProviderTableMeta.VIRTUAL_OCFILE_ID, insertPositions[i]);
+            }
+            operations.add(virtual.build());
+        }
+
+        ContentProviderResult[] results = null;
+        Log_OC.d(TAG, String.format(Locale.ENGLISH, SENDING_TO_FILECONTENTPROVIDER_MSG, operations.size()));
+
+        try {
+            if (getContentResolver() != null) {
+                results = getContentResolver().applyBatch(MainApp.getAuthority(), operations);
+            } else {
+                results = getContentProviderClient().applyBatch(operations);
+            }
+        } catch (OperationApplicationException | RemoteException e) {
+            Log_OC.e(TAG, EXCEPTION_MSG + e.getMessage(), e);
+        }
+
+        if (results != null) {
+            for (int i = 0; i < files.size(); i++) {
+                int position = insertPositions[i];
+                if (position >= 0 && results[position].uri != null) {
+                    files.get(i).setFileId(ContentUris.parseId(results[position].uri));
+                }
+            }
+        }
+    }
+
     public void saveNewFile(OCFile newFile) {
         String remoteParentPath = new File(newFile.getRemotePath()).getParent();
         remoteParentPath = remoteParentPath.endsWith(OCFile.PATH_SEPARATOR) ?
@@ -378,17 +568,30 @@ public class FileDataStorageManager {
 
         ArrayList<ContentProviderOperation> operations = new ArrayList<>(updatedFiles.size());
 
+        // resolve existing files in bulk instead of querying per file
+        List<Long> fileIds = new ArrayList<>(updatedFiles.size());
+        List<String> remotePaths = new ArrayList<>(updatedFiles.size());
+        for (OCFile ocFile : updatedFiles) {
+            if (ocFile.getFileId() != -1) {
+                fileIds.add(ocFile.getFileId());
+            }
+            remotePaths.add(ocFile.getRemotePath());
+        }
+        Set<Long> existingFileIds = getExistingFileIds(fileIds);
+        Map<String, Long> existingFileIdsByPath = getFileIdsByEncryptedRemotePaths(remotePaths);
+
         // prepare operations to insert or update files to save in the given folder
         for (OCFile ocFile : updatedFiles) {
             ContentValues contentValues = createContentValuesForFile(ocFile);
             contentValues.put(ProviderTableMeta.FILE_PARENT, folder.getFileId());
 
-            if (fileExists(ocFile.getFileId()) || fileExists(ocFile.getRemotePath())) {
+            if (existingFileIds.contains(ocFile.getFileId()) ||
+                existingFileIdsByPath.containsKey(ocFile.getRemotePath())) {
                 long fileId;
                 if (ocFile.getFileId() != -1) {
                     fileId = ocFile.getFileId();
                 } else {
-                    fileId = getFileByPath(ocFile.getRemotePath()).getFileId();
+                    fileId = existingFileIdsByPath.get(ocFile.getRemotePath());
                 }
                 // updating an existing file
                 operations.add(ContentProviderOperation.newUpdate(ProviderTableMeta.CONTENT_URI)
@@ -1714,6 +1917,50 @@ public class FileDataStorageManager {
         }
     }
 
+    /**
+     * Updates existing files after their download in one batch, like {@link #saveFile(OCFile)} followed by
+     * {@link #saveConflict(OCFile, String)} without conflict does for a single file.
+     *
+     * @param files downloaded files, already stored with their id
+     */
+    public void saveDownloadedFiles(List<OCFile> files) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(files.size());
+        List<String> remotePathsInConflict = new ArrayList<>();
+
+        for (OCFile ocFile : files) {
+            if (ocFile.isInConflict()) {
+                remotePathsInConflict.add(ocFile.getRemotePath());
+            }
+            ocFile.setEtagInConflict(null);
+
+            operations.add(ContentProviderOperation.newUpdate(ProviderTableMeta.CONTENT_URI)
+                               .withValues(createContentValuesForFile(ocFile))
+                               .withSelection(ProviderTableMeta._ID + " = ?",
+                                              new String[]{String.valueOf(ocFile.getFileId())})
+                               .build());
+        }
+
+        if (operations.isEmpty()) {
+            return;
+        }
+
+        Log_OC.d(TAG, String.format(Locale.ENGLISH, SENDING_TO_FILECONTENTPROVIDER_MSG, operations.size()));
+        try {
+            if (getContentResolver() != null) {
+                getContentResolver().applyBatch(MainApp.getAuthority(), operations);
+            } else {
+                getContentProviderClient().applyBatch(operations);
+            }
+        } catch (OperationApplicationException | RemoteException e) {
+            Log_OC.e(TAG, EXCEPTION_MSG + e.getMessage(), e);
+        }
+
+        // ancestors can only be in conflict because of files below them which were in conflict
+        if (!remotePathsInConflict.isEmpty()) {
+            updateConflictInAncestors(remotePathsInConflict);
+        }
+    }
+
     public void saveConflict(OCFile ocFile, String etagInConflict) {
         ContentValues cv = new ContentValues();
         if (!ocFile.isDown()) {
@@ -1789,79 +2036,94 @@ public class FileDataStorageManager {
             } else {
                 /// update conflict in ancestor folders
                 // (not directly unset; maybe there are more conflicts below them)
-                String parentPath = ocFile.getRemotePath();
-                if (parentPath.endsWith(OCFile.PATH_SEPARATOR)) {
-                    parentPath = parentPath.substring(0, parentPath.length() - 1);
-                }
-                parentPath = parentPath.substring(0, parentPath.lastIndexOf(OCFile.PATH_SEPARATOR) + 1);
+                updateConflictInAncestors(Collections.singletonList(ocFile.getRemotePath()));
+            }
+        }
+    }
 
-                Log_OC.d(TAG, "checking parents to remove conflict; STARTING with " + parentPath);
-                while (parentPath.length() > 0) {
-                    String[] projection = {ProviderTableMeta._ID};
-                    String whereForDescencentsInConflict =
-                        ProviderTableMeta.FILE_ETAG_IN_CONFLICT + " IS NOT NULL AND " +
-                            ProviderTableMeta.FILE_CONTENT_TYPE + " != 'DIR' AND " +
-                            ProviderTableMeta.FILE_ACCOUNT_OWNER + AND +
-                            ProviderTableMeta.FILE_PATH + " LIKE ?";
-                    Cursor descendentsInConflict = null;
-                    if (getContentResolver() != null) {
-                        descendentsInConflict = getContentResolver().query(
+    /**
+     * Unsets the conflict of the ancestor folders of the given files, unless other files below a folder are still in
+     * conflict. Ancestors shared by several files are only checked once.
+     */
+    private void updateConflictInAncestors(Collection<String> remotePaths) {
+        ContentValues cv = new ContentValues();
+        cv.put(ProviderTableMeta.FILE_ETAG_IN_CONFLICT, (String) null);
+
+        Set<String> checkedPaths = new HashSet<>();
+        for (String remotePath : remotePaths) {
+            String parentPath = remotePath;
+            if (parentPath.endsWith(OCFile.PATH_SEPARATOR)) {
+                parentPath = parentPath.substring(0, parentPath.length() - 1);
+            }
+            parentPath = parentPath.substring(0, parentPath.lastIndexOf(OCFile.PATH_SEPARATOR) + 1);
+
+            Log_OC.d(TAG, "checking parents to remove conflict; STARTING with " + parentPath);
+            // ancestors of a checked folder were checked along with it
+            while (parentPath.length() > 0 && checkedPaths.add(parentPath)) {
+                String[] projection = {ProviderTableMeta._ID};
+                String whereForDescencentsInConflict =
+                    ProviderTableMeta.FILE_ETAG_IN_CONFLICT + " IS NOT NULL AND " +
+                        ProviderTableMeta.FILE_CONTENT_TYPE + " != 'DIR' AND " +
+                        ProviderTableMeta.FILE_ACCOUNT_OWNER + AND +
+                        ProviderTableMeta.FILE_PATH + " LIKE ?";
+                Cursor descendentsInConflict = null;
+                if (getContentResolver() != null) {
+                    descendentsInConflict = getContentResolver().query(
+                        ProviderTableMeta.CONTENT_URI_FILE,
+                        projection,
+                        whereForDescencentsInConflict,
+                        new String[]{user.getAccountName(), parentPath + '%'},
+                        null
+                    );
+                } else {
+                    try {
+                        descendentsInConflict = getContentProviderClient().query(
                             ProviderTableMeta.CONTENT_URI_FILE,
                             projection,
                             whereForDescencentsInConflict,
-                            new String[]{user.getAccountName(), parentPath + '%'},
+                            new String[]{user.getAccountName(), parentPath + "%"},
                             null
                         );
-                    } else {
-                        try {
-                            descendentsInConflict = getContentProviderClient().query(
-                                ProviderTableMeta.CONTENT_URI_FILE,
-                                projection,
-                                whereForDescencentsInConflict,
-                                new String[]{user.getAccountName(), parentPath + "%"},
-                                null
-                            );
-                        } catch (RemoteException e) {
-                            Log_OC.e(TAG, "Failed querying for descendents in conflict " + e.getMessage(), e);
-                        }
+                    } catch (RemoteException e) {
+                        Log_OC.e(TAG, "Failed querying for descendents in conflict " + e.getMessage(), e);
                     }
+                }
 
-                    if (descendentsInConflict == null || descendentsInConflict.getCount() == 0) {
-                        Log_OC.d(TAG, "NO MORE conflicts in " + parentPath);
-                        if (getContentResolver() != null) {
-                            updated = getContentResolver().update(
+                if (descendentsInConflict == null || descendentsInConflict.getCount() == 0) {
+                    Log_OC.d(TAG, "NO MORE conflicts in " + parentPath);
+                    if (getContentResolver() != null) {
+                        getContentResolver().update(
+                            ProviderTableMeta.CONTENT_URI_FILE,
+                            cv,
+                            ProviderTableMeta.FILE_ACCOUNT_OWNER + AND +
+                                ProviderTableMeta.FILE_PATH + "=?",
+                            new String[]{user.getAccountName(), parentPath}
+                        );
+                    } else {
+                        try {
+                            getContentProviderClient().update(
                                 ProviderTableMeta.CONTENT_URI_FILE,
                                 cv,
                                 ProviderTableMeta.FILE_ACCOUNT_OWNER + AND +
-                                    ProviderTableMeta.FILE_PATH + "=?",
-                                new String[]{user.getAccountName(), parentPath}
+                                    ProviderTableMeta.FILE_PATH + "=?"
+                                , new String[]{user.getAccountName(), parentPath}
                             );
-                        } else {
-                            try {
-                                updated = getContentProviderClient().update(
-                                    ProviderTableMeta.CONTENT_URI_FILE,
-                                    cv,
-                                    ProviderTableMeta.FILE_ACCOUNT_OWNER + AND +
-                                        ProviderTableMeta.FILE_PATH + "=?"
-                                    , new String[]{user.getAccountName(), parentPath}
-                                );
-                            } catch (RemoteException e) {
-                                Log_OC.e(TAG, "Failed saving conflict in database " + e.getMessage(), e);
-                            }
+                        } catch (RemoteException e) {
+                            Log_OC.e(TAG, "Failed saving conflict in database " + e.getMessage(), e);
                         }
-
-                    } else {
-                        Log_OC.d(TAG, "STILL " + descendentsInConflict.getCount() + " in " + parentPath);
                     }
 
-                    if (descendentsInConflict != null) {
-                        descendentsInConflict.close();
-                    }
+                } else {
+                    Log_OC.d(TAG, "STILL " + descendentsInConflict.getCount() + " in " + parentPath);
+                }
 
-                    parentPath = parentPath.substring(0, parentPath.length() - 1);  // trim last /
-                    parentPath = parentPath.substring(0, parentPath.lastIndexOf(OCFile.PATH_SEPARATOR) + 1);
-                    Log_OC.d(TAG, "checking parents to remove conflict; NEXT " + parentPath);
+                if (descendentsInConflict != null) {
+                    descendentsInConflict.close();
                 }
+
+                parentPath = parentPath.substring(0, parentPath.length() - 1);  // trim last /
+                parentPath = parentPath.substring(0, parentPath.lastIndexOf(OCFile.PATH_SEPARATOR) + 1);
+                Log_OC.d(TAG, "checking parents to remove conflict; NEXT " + parentPath);
             }
         }
     }
@@ -19,22 +19,37 @@
  */
 package com.owncloud.android.datamodel;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.RemoteException;
 
+import com.owncloud.android.MainApp;
 import com.owncloud.android.db.ProviderMeta;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.utils.SyncedFolderUtils;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.CRC32;
 
 /**
@@ -44,6 +59,15 @@ public class FilesystemDataProvider {
 
     static private final String TAG = FilesystemDataProvider.class.getSimpleName();
 
+    private static final int CHECKSUM_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int CHECKSUM_BUFFER_SIZE = 256 * 1024;
+    private static final ThreadLocal<ByteBuffer> CHECKSUM_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+        }
+    };
+
     private ContentResolver contentResolver;
 
     public FilesystemDataProvider(ContentResolver contentResolver) {
@@ -61,17 +85,49 @@ public class FilesystemDataProvider {
                                      );
     }
 
-    public void updateFilesystemFileAsSentForUpload(String path, String syncedFolderId) {
-        ContentValues cv = new ContentValues();
-        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, 1);
+    /**
+     * Marks all given paths as sent for upload within a single transaction.
+     */
+    public void updateFilesystemFilesAsSentForUpload(Collection<String> paths, String syncedFolderId) {
+        if (paths.isEmpty()) {
+            return;
+        }
 
-        contentResolver.update(
+        List<Integer> ids = new ArrayList<>();
+
+        Cursor cursor = contentResolver.query(
             ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
-            cv,
-            ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH + " = ? and " +
-                ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " = ?",
-            new String[]{path, syncedFolderId}
-                              );
+            new String[]{
+                ProviderMeta.ProviderTableMeta._ID,
+                ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH
+            },
+            ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " = ? and " +
+                ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD + " = ?",
+            new String[]{syncedFolderId, "0"},
+            null);
+
+        if (cursor != null) {
+            int idIndex = cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta._ID);
+            int pathIndex = cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH);
+            while (cursor.moveToNext()) {
+                if (paths.contains(cursor.getString(pathIndex))) {
+                    ids.add(cursor.getInt(idIndex));
+                }
+            }
+            cursor.close();
+        }
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            operations.add(ContentProviderOperation
+                               .newUpdate(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM)
+                               .withValue(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, 1)
+                               .withSelection(ProviderMeta.ProviderTableMeta._ID + "=?",
+                                              new String[]{String.valueOf(id)})
+                               .build());
+        }
+
+        applyBatch(operations);
     }
 
     public Set<String> getFilesForUpload(String localPath, String syncedFolderId) {
@@ -121,54 +177,183 @@ public class FilesystemDataProvider {
 
         FileSystemDataSet data = getFilesystemDataSet(localPath, syncedFolder);
 
-        int isFolderValue = 0;
-        if (isFolder) {
-            isFolderValue = 1;
+        if (data == null) {
+            Uri result = contentResolver.insert(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
+                                                getInsertValues(localPath, modifiedAt, isFolder, syncedFolder));
+
+            if (result == null) {
+                Log_OC.v(TAG, "Failed to insert filesystem data with local path: " + localPath);
+            }
+        } else {
+            long newCrc32 = isChecksumNeeded(data, modifiedAt) ? getFileChecksum(localPath) : -1;
+            int result = contentResolver.update(
+                ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
+                getUpdateValues(data, modifiedAt, newCrc32),
+                ProviderMeta.ProviderTableMeta._ID + "=?",
+                new String[]{String.valueOf(data.getId())}
+                                               );
+
+            if (result == 0) {
+                Log_OC.v(TAG, "Failed to update filesystem data with local path: " + localPath);
+            }
+        }
+    }
+
+    /**
+     * Starts a batch for a full walk over a synced folder. All stored entries of the folder are read at once and
+     * compared in memory, changes are written by {@link Batch#apply()} in a single transaction.
+     */
+    public Batch startBatch(SyncedFolder syncedFolder) {
+        return new Batch(syncedFolder, getFilesystemDataSets(syncedFolder));
+    }
+
+    public class Batch {
+        private final SyncedFolder syncedFolder;
+        private final Map<String, FileSystemDataSet> storedData;
+        private final Set<String> handledPaths = new HashSet<>();
+        private final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        private final Map<FileSystemDataSet, Long> checksumUpdates = new HashMap<>();
+
+        private Batch(SyncedFolder syncedFolder, Map<String, FileSystemDataSet> storedData) {
+            this.syncedFolder = syncedFolder;
+            this.storedData = storedData;
+        }
+
+        /**
+         * Same as {@link FilesystemDataProvider#storeOrUpdateFileValue(String, long, boolean, SyncedFolder)}, but
+         * unchanged entries are not written at all.
+         */
+        public void storeOrUpdateFileValue(String localPath, long modifiedAt, boolean isFolder) {
+            if (!handledPaths.add(localPath)) {
+                return;
+            }
+
+            FileSystemDataSet data = storedData.get(localPath);
+
+            if (data == null) {
+                operations.add(ContentProviderOperation
+                                   .newInsert(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM)
+                                   .withValues(getInsertValues(localPath, modifiedAt, isFolder, syncedFolder))
+                                   .build());
+            } else if (isChecksumNeeded(data, modifiedAt)) {
+                checksumUpdates.put(data, modifiedAt);
+            } else if (data.getModifiedAt() != modifiedAt) {
+                operations.add(getUpdateOperation(data, modifiedAt, -1));
+            }
+        }
+
+        public void apply() {
+            List<String> paths = new ArrayList<>(checksumUpdates.size());
+            for (FileSystemDataSet data : checksumUpdates.keySet()) {
+                paths.add(data.getLocalPath());
+            }
+            Map<String, Long> checksums = getFileChecksums(paths);
+
+            for (Map.Entry<FileSystemDataSet, Long> entry : checksumUpdates.entrySet()) {
+                FileSystemDataSet data = entry.getKey();
+                Long crc32 = checksums.get(data.getLocalPath());
+                operations.add(getUpdateOperation(data, entry.getValue(), crc32 == null ? -1 : crc32));
+            }
+
+            Log_OC.d(TAG, "Writing " + operations.size() + " changes of " + handledPaths.size() + " files in " +
+                syncedFolder.getLocalPath() + ", " + checksums.size() + " checksums computed");
+            applyBatch(operations);
+            operations.clear();
+            checksumUpdates.clear();
+        }
+
+        private ContentProviderOperation getUpdateOperation(FileSystemDataSet data, long modifiedAt, long newCrc32) {
+            return ContentProviderOperation
+                .newUpdate(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM)
+                .withValues(getUpdateValues(data, modifiedAt, newCrc32))
+                .withSelection(ProviderMeta.ProviderTableMeta._ID + "=?", new String[]{String.valueOf(data.getId())})
+                .build();
         }
+    }
 
+    private ContentValues getInsertValues(String localPath, long modifiedAt, boolean isFolder,
+                                          SyncedFolder syncedFolder) {
         ContentValues cv = new ContentValues();
         cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY, System.currentTimeMillis());
         cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED, modifiedAt);
+        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH, localPath);
+        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER, isFolder ? 1 : 0);
+        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, Boolean.FALSE);
+        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID, syncedFolder.getId());
+        // new files are uploaded anyway, the checksum is only computed once the modification time changes
 
-        if (data == null) {
+        return cv;
+    }
+
+    /**
+     * A changed modification time only needs the checksum to tell if an already uploaded file has to be uploaded
+     * again. Files not sent for upload yet are uploaded anyway. The checksum is stored then, so that later changes of
+     * only the modification time can be told apart from changes of content.
+     */
+    private boolean isChecksumNeeded(FileSystemDataSet data, long modifiedAt) {
+        return data.getModifiedAt() != modifiedAt && data.isSentForUpload();
+    }
 
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH, localPath);
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER, isFolderValue);
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, Boolean.FALSE);
-            cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID, syncedFolder.getId());
+    /**
+     * @param newCrc32 checksum of the file if {@link #isChecksumNeeded(FileSystemDataSet, long)}, else ignored
+     */
+    private ContentValues getUpdateValues(FileSystemDataSet data, long modifiedAt, long newCrc32) {
+        ContentValues cv = new ContentValues();
+        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY, System.currentTimeMillis());
+        cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED, modifiedAt);
 
-            long newCrc32 = getFileChecksum(localPath);
+        if (isChecksumNeeded(data, modifiedAt)) {
+            // without a stored checksum a change of content cannot be ruled out, so the file is uploaded again
+            if (data.getCrc32() == null || (newCrc32 != -1 && !data.getCrc32().equals(Long.toString(newCrc32)))) {
+                cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, 0);
+            }
             if (newCrc32 != -1) {
                 cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32, Long.toString(newCrc32));
             }
+        } else if (!data.isSentForUpload() && data.getModifiedAt() != modifiedAt) {
+            // changed again before the upload, the stored checksum does not match the uploaded content anymore
+            cv.putNull(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32);
+        }
 
-            Uri result = contentResolver.insert(ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM, cv);
+        return cv;
+    }
 
-            if (result == null) {
-                Log_OC.v(TAG, "Failed to insert filesystem data with local path: " + localPath);
-            }
-        } else {
+    private void applyBatch(ArrayList<ContentProviderOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
 
-            if (data.getModifiedAt() != modifiedAt) {
-                long newCrc32 = getFileChecksum(localPath);
-                if (data.getCrc32() == null || (newCrc32 != -1 && !data.getCrc32().equals(Long.toString(newCrc32)))) {
-                    cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32, Long.toString(newCrc32));
-                    cv.put(ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD, 0);
-                }
-            }
+        try {
+            contentResolver.applyBatch(MainApp.getAuthority(), operations);
+        } catch (OperationApplicationException | RemoteException e) {
+            Log_OC.e(TAG, "Failed to write filesystem data", e);
+        }
+    }
 
+    private Map<String, FileSystemDataSet> getFilesystemDataSets(SyncedFolder syncedFolder) {
+        Map<String, FileSystemDataSet> dataSets = new HashMap<>();
 
-            int result = contentResolver.update(
-                ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
-                cv,
-                ProviderMeta.ProviderTableMeta._ID + "=?",
-                new String[]{String.valueOf(data.getId())}
-                                               );
+        Cursor cursor = contentResolver.query(
+            ProviderMeta.ProviderTableMeta.CONTENT_URI_FILESYSTEM,
+            null,
+            ProviderMeta.ProviderTableMeta.FILESYSTEM_SYNCED_FOLDER_ID + " = ?",
+            new String[]{Long.toString(syncedFolder.getId())},
+            null
+                                             );
 
-            if (result == 0) {
-                Log_OC.v(TAG, "Failed to update filesystem data with local path: " + localPath);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                FileSystemDataSet dataSet = createDataSet(cursor, syncedFolder);
+                if (dataSet != null) {
+                    dataSets.put(dataSet.getLocalPath(), dataSet);
+                }
             }
+            cursor.close();
+        } else {
+            Log_OC.e(TAG, "DB error restoring arbitrary values.");
         }
+
+        return dataSets;
     }
 
     private FileSystemDataSet getFilesystemDataSet(String localPathParam, SyncedFolder syncedFolder) {
@@ -185,33 +370,7 @@ public class FilesystemDataProvider {
         FileSystemDataSet dataSet = null;
         if (cursor != null) {
             if (cursor.moveToFirst()) {
-                int id = cursor.getInt(cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta._ID));
-                String localPath = cursor.getString(cursor.getColumnIndexOrThrow(
-                    ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH));
-                long modifiedAt = cursor.getLong(cursor.getColumnIndexOrThrow(
-                    ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED));
-                boolean isFolder = false;
-                if (cursor.getInt(cursor.getColumnIndexOrThrow(
-                    ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER)) != 0) {
-                    isFolder = true;
-                }
-                long foundAt = cursor.getLong(cursor.getColumnIndexOrThrow(ProviderMeta.
-                                                                               ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY));
-
-                boolean isSentForUpload = false;
-                if (cursor.getInt(cursor.getColumnIndexOrThrow(
-                    ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD)) != 0) {
-                    isSentForUpload = true;
-                }
-
-                String crc32 = cursor.getString(cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32));
-
-                if (id == -1) {
-                    Log_OC.e(TAG, "Arbitrary value could not be created from cursor");
-                } else {
-                    dataSet = new FileSystemDataSet(id, localPath, modifiedAt, isFolder, isSentForUpload, foundAt,
-                                                    syncedFolder.getId(), crc32);
-                }
+                dataSet = createDataSet(cursor, syncedFolder);
             }
             cursor.close();
         } else {
@@ -221,14 +380,96 @@ public class FilesystemDataProvider {
         return dataSet;
     }
 
-    private long getFileChecksum(String filepath) {
+    private FileSystemDataSet createDataSet(Cursor cursor, SyncedFolder syncedFolder) {
+        int id = cursor.getInt(cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta._ID));
+        String localPath = cursor.getString(cursor.getColumnIndexOrThrow(
+            ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_LOCAL_PATH));
+        long modifiedAt = cursor.getLong(cursor.getColumnIndexOrThrow(
+            ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_MODIFIED));
+        boolean isFolder = false;
+        if (cursor.getInt(cursor.getColumnIndexOrThrow(
+            ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_IS_FOLDER)) != 0) {
+            isFolder = true;
+        }
+        long foundAt = cursor.getLong(cursor.getColumnIndexOrThrow(ProviderMeta.
+                                                                       ProviderTableMeta.FILESYSTEM_FILE_FOUND_RECENTLY));
+
+        boolean isSentForUpload = false;
+        if (cursor.getInt(cursor.getColumnIndexOrThrow(
+            ProviderMeta.ProviderTableMeta.FILESYSTEM_FILE_SENT_FOR_UPLOAD)) != 0) {
+            isSentForUpload = true;
+        }
+
+        String crc32 = cursor.getString(cursor.getColumnIndexOrThrow(ProviderMeta.ProviderTableMeta.FILESYSTEM_CRC32));
+
+        if (id == -1) {
+            Log_OC.e(TAG, "Arbitrary value could not be created from cursor");
+            return null;
+        }
+
+        return new FileSystemDataSet(id, localPath, modifiedAt, isFolder, isSentForUpload, foundAt,
+                                     syncedFolder.getId(), crc32);
+    }
+
+    /**
+     * Computes checksums on {@link #CHECKSUM_THREADS} threads, reading several files at once keeps flash storage busy.
+     *
+     * @return checksum by path, -1 if the file could not be read
+     */
+    private Map<String, Long> getFileChecksums(List<String> paths) {
+        Map<String, Long> checksums = new HashMap<>(paths.size());
+        if (paths.isEmpty()) {
+            return checksums;
+        }
+
+        if (paths.size() == 1) {
+            checksums.put(paths.get(0), getFileChecksum(paths.get(0)));
+            return checksums;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(CHECKSUM_THREADS, paths.size()));
+        try {
+            List<Callable<Long>> tasks = new ArrayList<>(paths.size());
+            for (String path : paths) {
+                tasks.add(() -> getFileChecksum(path));
+            }
 
-        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(filepath))) {
+            List<Future<Long>> results = executor.invokeAll(tasks);
+            for (int i = 0; i < paths.size(); i++) {
+                checksums.put(paths.get(i), results.get(i).get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log_OC.e(TAG, "Interrupted while computing checksums", e);
+        } catch (ExecutionException e) {
+            Log_OC.e(TAG, "Failed to compute checksums", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return checksums;
+    }
+
+    private static long getFileChecksum(String filepath) {
+
+        try (FileInputStream inputStream = new FileInputStream(filepath)) {
             CRC32 crc = new CRC32();
-            byte[] buf = new byte[1024 * 64];
-            int size;
-            while ((size = inputStream.read(buf)) > 0) {
-                crc.update(buf, 0, size);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                FileChannel channel = inputStream.getChannel();
+                ByteBuffer buffer = CHECKSUM_BUFFER.get();
+                buffer.clear();
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    crc.update(buffer);
+                    buffer.clear();
+                }
+            } else {
+                byte[] buf = new byte[CHECKSUM_BUFFER_SIZE];
+                int size;
+                while ((size = inputStream.read(buf)) > 0) {
+                    crc.update(buf, 0, size);
+                }
             }
 
             return crc.getValue();
@@ -23,6 +23,8 @@
 
 package com.owncloud.android.datamodel;
 
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
@@ -40,6 +42,7 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.provider.MediaStore;
 import android.text.TextUtils;
+import android.util.LruCache;
 import android.view.Display;
 import android.view.View;
 import android.view.WindowManager;
@@ -79,6 +82,7 @@ import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.net.URLEncoder;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -104,11 +108,22 @@ public final class ThumbnailsCacheManager {
     private static final String AVATAR_TIMESTAMP = "avatarTimestamp";
     private static final String ETAG = "ETag";
 
+    // only guards the initialization, DiskLruImageCache itself is thread safe
     private static final Object mThumbnailsDiskCacheLock = new Object();
-    private static DiskLruImageCache mThumbnailCache;
-    private static boolean mThumbnailCacheStarting = true;
+    private static volatile DiskLruImageCache mThumbnailCache;
+    private static volatile boolean mThumbnailCacheStarting = true;
 
     private static final int DISK_CACHE_SIZE = 1024 * 1024 * 200; // 200MB
+    private static final int MEMORY_CACHE_DIVIDER = 8; // 1/8 of the per app memory class
+    private static final LruCache<String, Bitmap> mMemoryCache = new LruCache<>(getMemoryCacheMaxSize()) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+    private static final AtomicLong mMemoryCacheHits = new AtomicLong();
+    private static final AtomicLong mDiskCacheHits = new AtomicLong();
+    private static final AtomicLong mCacheMisses = new AtomicLong();
     private static final CompressFormat mCompressFormat = CompressFormat.JPEG;
     private static final int mCompressQuality = 70;
     private static OwnCloudClient mClient;
@@ -214,49 +229,136 @@ public final class ThumbnailsCacheManager {
     }
 
     public static void addBitmapToCache(String key, Bitmap bitmap) {
-        synchronized (mThumbnailsDiskCacheLock) {
-            if (mThumbnailCache != null) {
-                mThumbnailCache.put(key, bitmap);
-            }
+        if (bitmap != null) {
+            mMemoryCache.put(key, bitmap);
+        }
+
+        DiskLruImageCache diskCache = getDiskCache();
+        if (diskCache != null) {
+            diskCache.put(key, bitmap);
         }
     }
 
     public static boolean containsBitmap(String key) {
-        return mThumbnailCache.containsKey(key);
+        return mMemoryCache.get(key) != null || mThumbnailCache.containsKey(key);
     }
 
     public static Bitmap getScaledBitmapFromDiskCache(String key, int width, int height) {
-        synchronized (mThumbnailsDiskCacheLock) {
-            // Wait while disk cache is started from background thread
-            while (mThumbnailCacheStarting) {
-                try {
-                    mThumbnailsDiskCacheLock.wait();
-                } catch (InterruptedException e) {
-                    Log_OC.e(TAG, "Wait in mThumbnailsDiskCacheLock was interrupted", e);
-                }
-            }
-            if (mThumbnailCache != null) {
-                return mThumbnailCache.getScaledBitmap(key, width, height);
-            }
+        DiskLruImageCache diskCache = getDiskCache();
+        if (diskCache != null) {
+            return diskCache.getScaledBitmap(key, width, height);
         }
         return null;
     }
 
-    public static Bitmap getBitmapFromDiskCache(String key) {
-        synchronized (mThumbnailsDiskCacheLock) {
-            // Wait while disk cache is started from background thread
-            while (mThumbnailCacheStarting) {
-                try {
-                    mThumbnailsDiskCacheLock.wait();
-                } catch (InterruptedException e) {
-                    Log_OC.e(TAG, "Wait in mThumbnailsDiskCacheLock was interrupted", e);
+    /**
+     * Waits for the disk cache initialization, reads and writes themselves are not serialized
+     *
+     * @return disk cache or null if it could not be opened
+     */
+    private static DiskLruImageCache getDiskCache() {
+        if (mThumbnailCacheStarting) {
+            synchronized (mThumbnailsDiskCacheLock) {
+                // Wait while disk cache is started from background thread
+                while (mThumbnailCacheStarting) {
+                    try {
+                        mThumbnailsDiskCacheLock.wait();
+                    } catch (InterruptedException e) {
+                        Log_OC.e(TAG, "Wait in mThumbnailsDiskCacheLock was interrupted", e);
+                        Thread.currentThread().interrupt();
+                        return mThumbnailCache;
+                    }
                 }
             }
-            if (mThumbnailCache != null) {
-                return mThumbnailCache.getBitmap(key);
-            }
         }
-        return null;
+        return mThumbnailCache;
+    }
+
+    /**
+     * Returns the cached bitmap, looking it up in the memory cache first and in the disk cache afterwards
+     */
+    public static Bitmap getBitmapFromDiskCache(String key) {
+        Bitmap bitmap = getBitmapFromMemoryCache(key);
+        if (bitmap != null) {
+            mMemoryCacheHits.incrementAndGet();
+            return bitmap;
+        }
+
+        DiskLruImageCache diskCache = getDiskCache();
+        if (diskCache != null) {
+            bitmap = diskCache.getBitmap(key);
+        }
+
+        if (bitmap == null) {
+            mCacheMisses.incrementAndGet();
+        } else {
+            mDiskCacheHits.incrementAndGet();
+            mMemoryCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private static Bitmap getBitmapFromMemoryCache(String key) {
+        Bitmap bitmap = mMemoryCache.get(key);
+
+        // some callers recycle bitmaps they got from the cache, those must not be handed out again
+        if (bitmap != null && bitmap.isRecycled()) {
+            mMemoryCache.remove(key);
+            return null;
+        }
+        return bitmap;
+    }
+
+    private static int getMemoryCacheMaxSize() {
+        ActivityManager activityManager =
+            (ActivityManager) MainApp.getAppContext().getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_DIVIDER;
+    }
+
+    /**
+     * Releases memory cached bitmaps, to be called from {@link ComponentCallbacks2#onTrimMemory(int)}
+     *
+     * @param level trim memory level as reported by the system
+     */
+    public static void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND ||
+            level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mMemoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+        }
+    }
+
+    public static long getMemoryCacheHitCount() {
+        return mMemoryCacheHits.get();
+    }
+
+    public static long getDiskCacheHitCount() {
+        return mDiskCacheHits.get();
+    }
+
+    public static long getCacheMissCount() {
+        return mCacheMisses.get();
+    }
+
+    /**
+     * @return size of the memory cache in bytes
+     */
+    public static int getMemoryCacheSize() {
+        return mMemoryCache.size();
+    }
+
+    /**
+     * @return maximum size of the memory cache in bytes
+     */
+    public static int getMemoryCacheLimit() {
+        return mMemoryCache.maxSize();
+    }
+
+    public static void resetCacheStatistics() {
+        mMemoryCacheHits.set(0);
+        mDiskCacheHits.set(0);
+        mCacheMisses.set(0);
     }
 
     public static class GalleryImageGenerationTask extends AsyncTask<Object, Void, Bitmap> {
@@ -1363,6 +1465,7 @@ public final class ThumbnailsCacheManager {
 
     @VisibleForTesting
     public static void clearCache() {
+        mMemoryCache.evictAll();
         mThumbnailCache.clearCache();
         mThumbnailCache = null;
     }
@@ -34,6 +34,7 @@ import android.os.RemoteException;
 
 import com.nextcloud.client.account.CurrentAccountProvider;
 import com.nextcloud.client.account.User;
+import com.nextcloud.client.files.TransferStateIndex;
 import com.owncloud.android.MainApp;
 import com.owncloud.android.db.OCUpload;
 import com.owncloud.android.db.ProviderMeta.ProviderTableMeta;
@@ -47,13 +48,16 @@ import com.owncloud.android.operations.UploadFileOperation;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Observable;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import kotlin.Pair;
 
 /**
  * Database helper for storing list of files to be uploaded, including status information for each file.
@@ -66,6 +70,54 @@ public class UploadsStorageManager extends Observable {
 
     private static final long QUERY_PAGE_SIZE = 100;
 
+    private static final String CURRENT_AND_PENDING_UPLOADS_FOR_ACCOUNT_SELECTION =
+        "(" + ProviderTableMeta.UPLOADS_STATUS + "==" + UploadStatus.UPLOAD_IN_PROGRESS.value +
+            " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
+            "==" + UploadResult.DELAYED_FOR_WIFI.getValue() +
+            " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
+            "==" + UploadResult.LOCK_FAILED.getValue() +
+            " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
+            "==" + UploadResult.DELAYED_FOR_CHARGING.getValue() +
+            " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
+            "==" + UploadResult.DELAYED_IN_POWER_SAVE_MODE.getValue() +
+            ")" + AND + ProviderTableMeta.UPLOADS_ACCOUNT_NAME + "== ?";
+
+    private static final String FAILED_BUT_NOT_DELAYED_UPLOADS_FOR_ACCOUNT_SELECTION =
+        ProviderTableMeta.UPLOADS_STATUS + "==" + UploadStatus.UPLOAD_FAILED.value +
+            AND + ProviderTableMeta.UPLOADS_LAST_RESULT +
+            "<>" + UploadResult.DELAYED_FOR_WIFI.getValue() +
+            AND + ProviderTableMeta.UPLOADS_LAST_RESULT +
+            "<>" + UploadResult.LOCK_FAILED.getValue() +
+            AND + ProviderTableMeta.UPLOADS_LAST_RESULT +
+            "<>" + UploadResult.DELAYED_FOR_CHARGING.getValue() +
+            AND + ProviderTableMeta.UPLOADS_LAST_RESULT +
+            "<>" + UploadResult.DELAYED_IN_POWER_SAVE_MODE.getValue() +
+            AND + ProviderTableMeta.UPLOADS_ACCOUNT_NAME + "== ?";
+
+    /**
+     * Order of the upload list, see {@link com.owncloud.android.db.OCUploadComparator}. Whether an upload is running
+     * right now is only known at runtime, so it is not part of the order of a page.
+     */
+    private static final String UPLOAD_LIST_ORDER =
+        ProviderTableMeta.UPLOADS_STATUS + " ASC, " + ProviderTableMeta.UPLOADS_UPLOAD_END_TIMESTAMP + " DESC, " +
+            ProviderTableMeta._ID + " ASC";
+
+    private static final String UPLOAD_LIST_AFTER_SELECTION =
+        ProviderTableMeta.UPLOADS_STATUS + " > ? OR " + ProviderTableMeta.UPLOADS_STATUS + " = ?" + AND + "(" +
+            ProviderTableMeta.UPLOADS_UPLOAD_END_TIMESTAMP + " < ? OR " +
+            ProviderTableMeta.UPLOADS_UPLOAD_END_TIMESTAMP + " = ?" + AND + ProviderTableMeta._ID + " > ?)";
+
+    private static final String FINISHED_UPLOADS_FOR_ACCOUNT_SELECTION =
+        ProviderTableMeta.UPLOADS_STATUS + "==" + UploadStatus.UPLOAD_SUCCEEDED.value + AND +
+            ProviderTableMeta.UPLOADS_ACCOUNT_NAME + "== ?";
+
+    /**
+     * Uploads in progress of all accounts, shared by all instances. Loaded on first lookup, afterwards kept up to date
+     * by the methods writing upload status.
+     */
+    private static final TransferStateIndex<Long> inProgressUploads = new TransferStateIndex<>();
+    private static boolean inProgressUploadsLoaded;
+
     private final ContentResolver contentResolver;
     private final CurrentAccountProvider currentAccountProvider;
 
@@ -110,6 +162,7 @@ public class UploadsStorageManager extends Observable {
         } else {
             long new_id = Long.parseLong(result.getPathSegments().get(1));
             ocUpload.setUploadId(new_id);
+            indexUpload(ocUpload);
             notifyObserversNow();
 
             return new_id;
@@ -120,6 +173,7 @@ public class UploadsStorageManager extends Observable {
     public long[] storeUploads(final List<OCUpload> ocUploads) {
         Log_OC.v(TAG, "Inserting " + ocUploads.size() + " uploads");
         ArrayList<ContentProviderOperation> operations = new ArrayList<>(ocUploads.size());
+        List<OCUpload> insertedUploads = new ArrayList<>(ocUploads.size());
         for (OCUpload ocUpload : ocUploads) {
 
             OCUpload existingUpload = getPendingCurrentOrFailedUpload(ocUpload);
@@ -136,6 +190,7 @@ public class UploadsStorageManager extends Observable {
                 .withValues(getContentValues(ocUpload))
                 .build();
             operations.add(operation);
+            insertedUploads.add(ocUpload);
         }
 
         try {
@@ -144,7 +199,8 @@ public class UploadsStorageManager extends Observable {
             for (int i = 0; i < contentProviderResults.length; i++) {
                 final ContentProviderResult result = contentProviderResults[i];
                 final long new_id = Long.parseLong(result.uri.getPathSegments().get(1));
-                ocUploads.get(i).setUploadId(new_id);
+                insertedUploads.get(i).setUploadId(new_id);
+                indexUpload(insertedUploads.get(i));
                 newIds[i] = new_id;
             }
             notifyObserversNow();
@@ -205,6 +261,7 @@ public class UploadsStorageManager extends Observable {
         if (result != SINGLE_RESULT) {
             Log_OC.e(TAG, "Failed to update item " + ocUpload.getLocalPath() + " into upload db.");
         } else {
+            indexUpload(ocUpload);
             notifyObserversNow();
         }
 
@@ -319,6 +376,9 @@ public class UploadsStorageManager extends Observable {
                                    );
         Log_OC.d(TAG, "delete returns " + result + " for upload with id " + id);
         if (result > 0) {
+            synchronized (inProgressUploads) {
+                inProgressUploads.remove(id);
+            }
             notifyObserversNow();
         }
         return result;
@@ -339,6 +399,7 @@ public class UploadsStorageManager extends Observable {
                                    );
         Log_OC.d(TAG, "delete returns " + result + " for file " + remotePath + " in " + accountName);
         if (result > 0) {
+            invalidateInProgressUploads();
             notifyObserversNow();
         }
         return result;
@@ -358,6 +419,9 @@ public class UploadsStorageManager extends Observable {
                                    );
         Log_OC.d(TAG, "delete returns " + result + " for uploads in " + accountName);
         if (result > 0) {
+            synchronized (inProgressUploads) {
+                inProgressUploads.removeAll(accountName);
+            }
             notifyObserversNow();
         }
         return result;
@@ -476,7 +540,6 @@ public class UploadsStorageManager extends Observable {
 
     @NonNull
     private List<OCUpload> getUploadPage(final long afterId, final boolean descending, @Nullable String selection, @Nullable String... selectionArgs) {
-        List<OCUpload> uploads = new ArrayList<>();
         String pageSelection = selection;
         String[] pageSelectionArgs = selectionArgs;
 
@@ -514,6 +577,49 @@ public class UploadsStorageManager extends Observable {
             String.format(Locale.ENGLISH, "_id " + sortDirection + " LIMIT %d", QUERY_PAGE_SIZE)
                                 );
 
+        return readUploads(c);
+    }
+
+    /**
+     * Gets a page of uploads in the order of the upload list, following <code>after</code>, the last upload of the
+     * previous page. Unlike paging by id, uploads of a page do not move to other pages when the list is sorted.
+     * <p>
+     * If <code>after</code> is null, returns the first page
+     */
+    @NonNull
+    private List<OCUpload> getUploadListPage(@Nullable OCUpload after,
+                                             @NonNull String selection,
+                                             @NonNull String... selectionArgs) {
+        String pageSelection = selection;
+        String[] pageSelectionArgs = selectionArgs;
+
+        if (after != null) {
+            String status = String.valueOf(after.getUploadStatus().value);
+            String endTimestamp = String.valueOf(after.getUploadEndTimestamp());
+
+            pageSelection = "(" + selection + ")" + AND + "(" + UPLOAD_LIST_AFTER_SELECTION + ")";
+            pageSelectionArgs = Arrays.copyOf(selectionArgs, selectionArgs.length + 5);
+            pageSelectionArgs[selectionArgs.length] = status;
+            pageSelectionArgs[selectionArgs.length + 1] = status;
+            pageSelectionArgs[selectionArgs.length + 2] = endTimestamp;
+            pageSelectionArgs[selectionArgs.length + 3] = endTimestamp;
+            pageSelectionArgs[selectionArgs.length + 4] = String.valueOf(after.getUploadId());
+        }
+
+        Cursor c = getDB().query(
+            ProviderTableMeta.CONTENT_URI_UPLOADS,
+            null,
+            pageSelection,
+            pageSelectionArgs,
+            String.format(Locale.ENGLISH, UPLOAD_LIST_ORDER + " LIMIT %d", QUERY_PAGE_SIZE)
+                                );
+
+        return readUploads(c);
+    }
+
+    @NonNull
+    private List<OCUpload> readUploads(@Nullable Cursor c) {
+        List<OCUpload> uploads = new ArrayList<>();
         if (c != null) {
             if (c.moveToFirst()) {
                 do {
@@ -530,6 +636,22 @@ public class UploadsStorageManager extends Observable {
         return uploads;
     }
 
+    private int getUploadCount(@Nullable String selection, @Nullable String... selectionArgs) {
+        int count = 0;
+        try (Cursor c = getDB().query(
+            ProviderTableMeta.CONTENT_URI_UPLOADS,
+            new String[]{"count(" + ProviderTableMeta._ID + ")"},
+            selection,
+            selectionArgs,
+            null)) {
+
+            if (c != null && c.moveToFirst()) {
+                count = c.getInt(0);
+            }
+        }
+        return count;
+    }
+
     private OCUpload createOCUploadFromCursor(Cursor c) {
         OCUpload upload = null;
         if (c != null) {
@@ -567,17 +689,7 @@ public class UploadsStorageManager extends Observable {
     }
 
     public OCUpload[] getCurrentAndPendingUploadsForAccount(final @NonNull String accountName) {
-        return getUploads(ProviderTableMeta.UPLOADS_STATUS + "==" + UploadStatus.UPLOAD_IN_PROGRESS.value +
-                              " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
-                              "==" + UploadResult.DELAYED_FOR_WIFI.getValue() +
-                              " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
-                              "==" + UploadResult.LOCK_FAILED.getValue() +
-                              " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
-                              "==" + UploadResult.DELAYED_FOR_CHARGING.getValue() +
-                              " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
-                              "==" + UploadResult.DELAYED_IN_POWER_SAVE_MODE.getValue() +
-                              " AND " + ProviderTableMeta.UPLOADS_ACCOUNT_NAME + "== ?",
-                          accountName);
+        return getUploads(CURRENT_AND_PENDING_UPLOADS_FOR_ACCOUNT_SELECTION, accountName);
     }
 
     /**
@@ -586,17 +698,21 @@ public class UploadsStorageManager extends Observable {
      * If <code>afterId</code> is -1, returns the first page
      */
     public List<OCUpload> getCurrentAndPendingUploadsForAccountPageAscById(final long afterId, final @NonNull String accountName) {
-        final String selection = ProviderTableMeta.UPLOADS_STATUS + "==" + UploadStatus.UPLOAD_IN_PROGRESS.value +
-            " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
-            "==" + UploadResult.DELAYED_FOR_WIFI.getValue() +
-            " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
-            "==" + UploadResult.LOCK_FAILED.getValue() +
-            " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
-            "==" + UploadResult.DELAYED_FOR_CHARGING.getValue() +
-            " OR " + ProviderTableMeta.UPLOADS_LAST_RESULT +
-            "==" + UploadResult.DELAYED_IN_POWER_SAVE_MODE.getValue() +
-            " AND " + ProviderTableMeta.UPLOADS_ACCOUNT_NAME + "== ?";
-        return getUploadPage(afterId, false, selection, accountName);
+        return getUploadPage(afterId, false, CURRENT_AND_PENDING_UPLOADS_FOR_ACCOUNT_SELECTION, accountName);
+    }
+
+    /**
+     * Gets a page of current and pending uploads following <code>after</code>, in the order of the upload list.
+     * <p>
+     * If <code>after</code> is null, returns the first page
+     */
+    public List<OCUpload> getCurrentAndPendingUploadsForAccountPage(final @Nullable OCUpload after,
+                                                                    final @NonNull String accountName) {
+        return getUploadListPage(after, CURRENT_AND_PENDING_UPLOADS_FOR_ACCOUNT_SELECTION, accountName);
+    }
+
+    public int getCurrentAndPendingUploadsForAccountCount(final @NonNull String accountName) {
+        return getUploadCount(CURRENT_AND_PENDING_UPLOADS_FOR_ACCOUNT_SELECTION, accountName);
     }
 
     /**
@@ -624,8 +740,21 @@ public class UploadsStorageManager extends Observable {
     public OCUpload[] getFinishedUploadsForCurrentAccount() {
         User user = currentAccountProvider.getUser();
 
-        return getUploads(ProviderTableMeta.UPLOADS_STATUS + "==" + UploadStatus.UPLOAD_SUCCEEDED.value + AND +
-                              ProviderTableMeta.UPLOADS_ACCOUNT_NAME + "== ?", user.getAccountName());
+        return getUploads(FINISHED_UPLOADS_FOR_ACCOUNT_SELECTION, user.getAccountName());
+    }
+
+    /**
+     * Gets a page of finished uploads following <code>after</code>, in the order of the upload list.
+     * <p>
+     * If <code>after</code> is null, returns the first page
+     */
+    public List<OCUpload> getFinishedUploadsForAccountPage(final @Nullable OCUpload after,
+                                                           final @NonNull String accountName) {
+        return getUploadListPage(after, FINISHED_UPLOADS_FOR_ACCOUNT_SELECTION, accountName);
+    }
+
+    public int getFinishedUploadsForAccountCount(final @NonNull String accountName) {
+        return getUploadCount(FINISHED_UPLOADS_FOR_ACCOUNT_SELECTION, accountName);
     }
 
     /**
@@ -639,17 +768,22 @@ public class UploadsStorageManager extends Observable {
     public OCUpload[] getFailedButNotDelayedUploadsForCurrentAccount() {
         User user = currentAccountProvider.getUser();
 
-        return getUploads(ProviderTableMeta.UPLOADS_STATUS + "==" + UploadStatus.UPLOAD_FAILED.value +
-                              AND + ProviderTableMeta.UPLOADS_LAST_RESULT +
-                              "<>" + UploadResult.DELAYED_FOR_WIFI.getValue() +
-                              AND + ProviderTableMeta.UPLOADS_LAST_RESULT +
-                              "<>" + UploadResult.LOCK_FAILED.getValue() +
-                              AND + ProviderTableMeta.UPLOADS_LAST_RESULT +
-                              "<>" + UploadResult.DELAYED_FOR_CHARGING.getValue() +
-                              AND + ProviderTableMeta.UPLOADS_LAST_RESULT +
-                              "<>" + UploadResult.DELAYED_IN_POWER_SAVE_MODE.getValue() +
-                              AND + ProviderTableMeta.UPLOADS_ACCOUNT_NAME + "== ?",
-                          user.getAccountName());
+        return getUploads(FAILED_BUT_NOT_DELAYED_UPLOADS_FOR_ACCOUNT_SELECTION, user.getAccountName());
+    }
+
+    /**
+     * Gets a page of failed uploads following <code>after</code>, except for those that were delayed, in the order of
+     * the upload list.
+     * <p>
+     * If <code>after</code> is null, returns the first page
+     */
+    public List<OCUpload> getFailedButNotDelayedUploadsForAccountPage(final @Nullable OCUpload after,
+                                                                      final @NonNull String accountName) {
+        return getUploadListPage(after, FAILED_BUT_NOT_DELAYED_UPLOADS_FOR_ACCOUNT_SELECTION, accountName);
+    }
+
+    public int getFailedButNotDelayedUploadsForAccountCount(final @NonNull String accountName) {
+        return getUploadCount(FAILED_BUT_NOT_DELAYED_UPLOADS_FOR_ACCOUNT_SELECTION, accountName);
     }
 
     /**
@@ -791,6 +925,9 @@ public class UploadsStorageManager extends Observable {
         if (result == 0) {
             Log_OC.v(TAG, "No upload was killed");
         } else {
+            synchronized (inProgressUploads) {
+                inProgressUploads.clear();
+            }
             Log_OC.w(TAG, Integer.toString(result) + " uploads where abruptly interrupted");
             notifyObserversNow();
         }
@@ -801,18 +938,95 @@ public class UploadsStorageManager extends Observable {
     @VisibleForTesting
     public int removeAllUploads() {
         Log_OC.v(TAG, "Delete all uploads!");
-        return getDB().delete(
+        int result = getDB().delete(
             ProviderTableMeta.CONTENT_URI_UPLOADS,
             "",
             new String[]{});
+        synchronized (inProgressUploads) {
+            inProgressUploads.clear();
+        }
+        return result;
     }
 
     public int removeUserUploads(User user) {
         Log_OC.v(TAG, "Delete all uploads for account " + user.getAccountName());
-        return getDB().delete(
+        int result = getDB().delete(
             ProviderTableMeta.CONTENT_URI_UPLOADS,
             ProviderTableMeta.UPLOADS_ACCOUNT_NAME + "=?",
             new String[]{user.getAccountName()});
+        synchronized (inProgressUploads) {
+            inProgressUploads.removeAll(user.getAccountName());
+        }
+        return result;
+    }
+
+    /**
+     * Checks for an upload in progress without a database query, e.g. for every row of a file list.
+     *
+     * @param accountName Name of the OC account target of the upload.
+     * @param remotePath  Absolute path in the OC account target of the upload.
+     * @return true if an upload to exactly this path is in progress
+     */
+    public boolean isUploadInProgress(String accountName, String remotePath) {
+        synchronized (inProgressUploads) {
+            if (!inProgressUploadsLoaded) {
+                loadInProgressUploads();
+            }
+        }
+        return inProgressUploads.contains(accountName, remotePath);
+    }
+
+    private void loadInProgressUploads() {
+        Map<Long, Pair<String, String>> uploads = new HashMap<>();
+        try (Cursor cursor = getDB().query(
+            ProviderTableMeta.CONTENT_URI_UPLOADS,
+            new String[]{
+                ProviderTableMeta._ID,
+                ProviderTableMeta.UPLOADS_ACCOUNT_NAME,
+                ProviderTableMeta.UPLOADS_REMOTE_PATH
+            },
+            ProviderTableMeta.UPLOADS_STATUS + "=?",
+            new String[]{String.valueOf(UploadStatus.UPLOAD_IN_PROGRESS.getValue())},
+            null)) {
+
+            if (cursor == null) {
+                Log_OC.e(TAG, "Cursor is null");
+                return;
+            }
+            while (cursor.moveToNext()) {
+                uploads.put(cursor.getLong(0), new Pair<>(cursor.getString(1), cursor.getString(2)));
+            }
+        }
+
+        inProgressUploads.reset(uploads);
+        inProgressUploadsLoaded = true;
+        Log_OC.d(TAG, "Loaded " + uploads.size() + " uploads in progress");
+    }
+
+    /**
+     * Updates the in progress index with the stored status of the upload
+     */
+    private void indexUpload(OCUpload upload) {
+        synchronized (inProgressUploads) {
+            if (!inProgressUploadsLoaded) {
+                return;
+            }
+            if (upload.getUploadStatus() == UploadStatus.UPLOAD_IN_PROGRESS) {
+                inProgressUploads.put(upload.getUploadId(), upload.getAccountName(), upload.getRemotePath());
+            } else {
+                inProgressUploads.remove(upload.getUploadId());
+            }
+        }
+    }
+
+    /**
+     * Reloads the in progress index on next lookup, for changes which cannot be applied to it by id
+     */
+    private void invalidateInProgressUploads() {
+        synchronized (inProgressUploads) {
+            inProgressUploadsLoaded = false;
+            inProgressUploads.clear();
+        }
     }
 
     public enum UploadStatus {
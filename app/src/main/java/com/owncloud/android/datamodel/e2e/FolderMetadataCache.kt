@@ -0,0 +1,108 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel.e2e
+
+import com.owncloud.android.datamodel.OCFile
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Keeps the decrypted metadata (v1 or v2) of recently used encrypted folders, so that downloading many files of one
+ * folder does not fetch and decrypt the same metadata for every file.
+ *
+ * An entry belongs to one account and is only used as long as ETag and e2e counter of the folder are unchanged.
+ * Folders are invalidated when they are locked or their metadata is uploaded. Cached metadata is shared and must not
+ * be changed by callers.
+ */
+object FolderMetadataCache {
+    private const val MAX_ENTRIES = 32
+    private const val LOAD_FACTOR = 0.75f
+
+    private data class Key(val accountName: String, val folderLocalId: Long)
+
+    private class Entry(val etag: String?, val counter: Long, val metadata: Any)
+
+    private val entries = object : LinkedHashMap<Key, Entry>(MAX_ENTRIES, LOAD_FACTOR, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, Entry>?): Boolean = size > MAX_ENTRIES
+    }
+
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
+    @JvmStatic
+    val hitCount: Long
+        get() = hits.get()
+
+    @JvmStatic
+    val missCount: Long
+        get() = misses.get()
+
+    /**
+     * @return metadata decrypted for the current state of the folder, null if not cached
+     */
+    @JvmStatic
+    fun get(accountName: String, folder: OCFile): Any? {
+        val metadata = synchronized(entries) {
+            val key = Key(accountName, folder.localId)
+            val entry = entries[key]
+            if (entry != null && (entry.etag != folder.etag || entry.counter != folder.e2eCounter)) {
+                entries.remove(key)
+                null
+            } else {
+                entry?.metadata
+            }
+        }
+
+        if (metadata != null) {
+            hits.incrementAndGet()
+        } else {
+            misses.incrementAndGet()
+        }
+        return metadata
+    }
+
+    @JvmStatic
+    fun put(accountName: String, folder: OCFile, metadata: Any) {
+        synchronized(entries) {
+            entries[Key(accountName, folder.localId)] = Entry(folder.etag, folder.e2eCounter, metadata)
+        }
+    }
+
+    /**
+     * Drops the folder for all accounts, as the callers changing metadata do not always know the account
+     */
+    @JvmStatic
+    fun invalidate(folderLocalId: Long) {
+        synchronized(entries) {
+            entries.keys.removeAll { it.folderLocalId == folderLocalId }
+        }
+    }
+
+    @JvmStatic
+    fun clear() {
+        synchronized(entries) {
+            entries.clear()
+        }
+        hits.set(0)
+        misses.set(0)
+    }
+
+    @JvmStatic
+    val size: Int
+        get() = synchronized(entries) { entries.size }
+}
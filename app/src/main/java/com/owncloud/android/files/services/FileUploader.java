@@ -1173,20 +1173,21 @@ public class FileUploader extends Service
                 return false;
             }
 
-            OCUpload upload = mUploadsStorageManager.getUploadByRemotePath(file.getRemotePath());
+            return mUploadsStorageManager.isUploadInProgress(user.getAccountName(), file.getRemotePath());
+        }
 
-            if (upload == null){
-                return false;
+        public boolean isUploadingNow(OCUpload upload) {
+            if (upload == null) return false;
+            for (UploadFileOperation uploadFileOperation : FilesUploadWorker.activeUploadFileOperations) {
+                if (isUploadingNow(upload, uploadFileOperation)) return true;
             }
-
-            return upload.getUploadStatus() == UploadStatus.UPLOAD_IN_PROGRESS;
+            return false;
         }
 
         @SuppressFBWarnings("NP")
-        public boolean isUploadingNow(OCUpload upload) {
-            UploadFileOperation currentUploadFileOperation = FilesUploadWorker.Companion.getCurrentUploadFileOperation();
-            if (currentUploadFileOperation == null || currentUploadFileOperation.getUser() == null) return false;
-            if (upload == null || (!upload.getAccountName().equals(currentUploadFileOperation.getUser().getAccountName()))) return false;
+        private boolean isUploadingNow(OCUpload upload, UploadFileOperation currentUploadFileOperation) {
+            if (currentUploadFileOperation.getUser() == null) return false;
+            if (!upload.getAccountName().equals(currentUploadFileOperation.getUser().getAccountName())) return false;
             if (currentUploadFileOperation.getOldFile() != null){
                 // For file conflicts check old file remote path
                 return upload.getRemotePath().equals(currentUploadFileOperation.getRemotePath()) ||
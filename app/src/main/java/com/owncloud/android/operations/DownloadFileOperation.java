@@ -30,6 +30,7 @@ import com.nextcloud.client.account.User;
 import com.owncloud.android.datamodel.ArbitraryDataProviderImpl;
 import com.owncloud.android.datamodel.FileDataStorageManager;
 import com.owncloud.android.datamodel.OCFile;
+import com.owncloud.android.datamodel.e2e.FolderMetadataCache;
 import com.owncloud.android.datamodel.e2e.v1.decrypted.DecryptedFolderMetadataFileV1;
 import com.owncloud.android.datamodel.e2e.v2.decrypted.DecryptedFile;
 import com.owncloud.android.datamodel.e2e.v2.decrypted.DecryptedFolderMetadataFile;
@@ -39,19 +40,20 @@ import com.owncloud.android.lib.common.operations.OperationCancelledException;
 import com.owncloud.android.lib.common.operations.RemoteOperation;
 import com.owncloud.android.lib.common.operations.RemoteOperationResult;
 import com.owncloud.android.lib.common.utils.Log_OC;
-import com.owncloud.android.lib.resources.files.DownloadFileRemoteOperation;
 import com.owncloud.android.utils.EncryptionUtils;
 import com.owncloud.android.utils.FileExportUtils;
 import com.owncloud.android.utils.FileStorageUtils;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import androidx.annotation.Nullable;
+
 import static com.owncloud.android.utils.EncryptionUtils.decodeStringToBase64Bytes;
 
 /**
@@ -71,7 +73,7 @@ public class DownloadFileOperation extends RemoteOperation {
     private final WeakReference<Context> context;
     private Set<OnDatatransferProgressListener> dataTransferListeners = new HashSet<>();
     private long modificationTimestamp;
-    private DownloadFileRemoteOperation downloadOperation;
+    private ResumableDownloadFileRemoteOperation downloadOperation;
 
     private final AtomicBoolean cancellationRequested = new AtomicBoolean(false);
 
@@ -167,6 +169,20 @@ public class DownloadFileOperation extends RemoteOperation {
         return modificationTimestamp > 0 ? modificationTimestamp : file.getModificationTimestamp();
     }
 
+    /**
+     * @return bytes of an earlier interrupted download which were not downloaded again
+     */
+    public long getResumedBytes() {
+        return downloadOperation != null ? downloadOperation.getResumedBytes() : 0;
+    }
+
+    /**
+     * @return bytes of an earlier interrupted download which had to be downloaded again
+     */
+    public long getDiscardedBytes() {
+        return downloadOperation != null ? downloadOperation.getDiscardedBytes() : 0;
+    }
+
     @Override
     protected RemoteOperationResult run(OwnCloudClient client) {
         /// perform the download
@@ -188,9 +204,8 @@ public class DownloadFileOperation extends RemoteOperation {
         /// download will be performed to a temporal file, then moved to the final location
         File tmpFile = new File(getTmpPath());
 
-        String tmpFolder = getTmpFolder();
-
-        downloadOperation = new DownloadFileRemoteOperation(file.getRemotePath(), tmpFolder);
+        // an interrupted download of the file is resumed from its temporal file
+        downloadOperation = new ResumableDownloadFileRemoteOperation(file.getRemotePath(), tmpFile);
 
         if (downloadType == DownloadType.DOWNLOAD) {
             Iterator<OnDatatransferProgressListener> listener = dataTransferListeners.iterator();
@@ -201,7 +216,10 @@ public class DownloadFileOperation extends RemoteOperation {
 
         result = downloadOperation.execute(client);
 
-
+        if (downloadOperation.getResumedBytes() > 0 || downloadOperation.getDiscardedBytes() > 0) {
+            Log_OC.d(TAG, "Download of " + file.getRemotePath() + " resumed " + downloadOperation.getResumedBytes() +
+                " bytes, discarded " + downloadOperation.getDiscardedBytes() + " bytes");
+        }
 
         if (result.isSuccess()) {
             modificationTimestamp = downloadOperation.getModificationTimestamp();
@@ -221,64 +239,45 @@ public class DownloadFileOperation extends RemoteOperation {
 
                 OCFile parent = fileDataStorageManager.getFileByEncryptedRemotePath(file.getParentRemotePath());
 
-                Object object = EncryptionUtils.downloadFolderMetadata(parent,
-                                                                       client,
-                                                                       operationContext,
-                                                                       user);
-
-                if (object == null) {
-                    return new RemoteOperationResult(RemoteOperationResult.ResultCode.METADATA_NOT_FOUND);
-                }
-
-                String keyString;
-                String nonceString;
-                String authenticationTagString;
-                if (object instanceof DecryptedFolderMetadataFile) {
-                    DecryptedFile decryptedFile = ((DecryptedFolderMetadataFile) object)
-                        .getMetadata()
-                        .getFiles()
-                        .get(file.getEncryptedFileName());
-
-                    if (decryptedFile == null) {
-                        return new RemoteOperationResult(RemoteOperationResult.ResultCode.METADATA_NOT_FOUND);
-                    }
+                DecryptedFile decryptedFile = findDecryptedFile(parent, client);
 
-                    keyString = decryptedFile.getKey();
-                    nonceString = decryptedFile.getNonce();
-                    authenticationTagString = decryptedFile.getAuthenticationTag();
-                } else {
-                    com.owncloud.android.datamodel.e2e.v1.decrypted.DecryptedFile decryptedFile =
-                        ((DecryptedFolderMetadataFileV1) object)
-                            .getFiles()
-                            .get(file.getEncryptedFileName());
-
-                    if (decryptedFile == null) {
-                        return new RemoteOperationResult(RemoteOperationResult.ResultCode.METADATA_NOT_FOUND);
+                try {
+                    if (decryptedFile != null && !EncryptionUtils.hasAuthenticationTag(
+                        tmpFile, decodeStringToBase64Bytes(decryptedFile.getAuthenticationTag()))) {
+                        // an update of the file in place does not change the ETag of the parent folder known to the
+                        // app, so cached metadata may still hold the key of the former content
+                        Log_OC.d(TAG, "Metadata of " + file.getRemotePath() + " is outdated, fetching it again");
+                        FolderMetadataCache.invalidate(parent.getLocalId());
+                        decryptedFile = findDecryptedFile(parent, client);
                     }
+                } catch (IOException e) {
+                    return new RemoteOperationResult(e);
+                }
 
-                    keyString = decryptedFile.getEncrypted().getKey();
-                    nonceString = decryptedFile.getInitializationVector();
-                    authenticationTagString = decryptedFile.getAuthenticationTag();
+                if (decryptedFile == null) {
+                    return new RemoteOperationResult(RemoteOperationResult.ResultCode.METADATA_NOT_FOUND);
                 }
 
-                byte[] key = decodeStringToBase64Bytes(keyString);
-                byte[] iv = decodeStringToBase64Bytes(nonceString);
-                byte[] authenticationTag = decodeStringToBase64Bytes(authenticationTagString);
+                byte[] key = decodeStringToBase64Bytes(decryptedFile.getKey());
+                byte[] iv = decodeStringToBase64Bytes(decryptedFile.getNonce());
+                byte[] authenticationTag = decodeStringToBase64Bytes(decryptedFile.getAuthenticationTag());
 
+                File decryptedTmpFile = new File(tmpFile.getAbsolutePath() + ".dec");
                 try {
-                    byte[] decryptedBytes = EncryptionUtils.decryptFile(tmpFile,
-                                                                        key,
-                                                                        iv,
-                                                                        authenticationTag,
-                                                                        new ArbitraryDataProviderImpl(operationContext),
-                                                                        user);
-
-                    try (FileOutputStream fileOutputStream = new FileOutputStream(tmpFile)) {
-                        fileOutputStream.write(decryptedBytes);
-                    }
+                    EncryptionUtils.decryptFile(tmpFile,
+                                                decryptedTmpFile,
+                                                key,
+                                                iv,
+                                                authenticationTag,
+                                                new ArbitraryDataProviderImpl(operationContext),
+                                                user);
                 } catch (Exception e) {
                     return new RemoteOperationResult(e);
                 }
+
+                if (!decryptedTmpFile.renameTo(tmpFile)) {
+                    return new RemoteOperationResult(RemoteOperationResult.ResultCode.LOCAL_STORAGE_NOT_MOVED);
+                }
             }
 
             if (downloadType == DownloadType.DOWNLOAD) {
@@ -305,6 +304,35 @@ public class DownloadFileOperation extends RemoteOperation {
         return result;
     }
 
+    /**
+     * @return key, nonce and authentication tag of the file in v2 form, also for v1 metadata, null if unknown
+     */
+    private @Nullable DecryptedFile findDecryptedFile(OCFile parent, OwnCloudClient client) {
+        Object object = EncryptionUtils.getFolderMetadata(parent,
+                                                          client,
+                                                          operationContext,
+                                                          user,
+                                                          file.getEncryptedFileName());
+
+        if (object instanceof DecryptedFolderMetadataFile) {
+            return ((DecryptedFolderMetadataFile) object).getMetadata().getFiles().get(file.getEncryptedFileName());
+        } else if (object instanceof DecryptedFolderMetadataFileV1) {
+            com.owncloud.android.datamodel.e2e.v1.decrypted.DecryptedFile decryptedFile =
+                ((DecryptedFolderMetadataFileV1) object).getFiles().get(file.getEncryptedFileName());
+
+            if (decryptedFile == null) {
+                return null;
+            }
+
+            return new DecryptedFile(decryptedFile.getEncrypted().getFilename(),
+                                     decryptedFile.getEncrypted().getMimetype(),
+                                     decryptedFile.getInitializationVector(),
+                                     decryptedFile.getAuthenticationTag(),
+                                     decryptedFile.getEncrypted().getKey());
+        }
+        return null;
+    }
+
     public void cancel() {
         cancellationRequested.set(true);   // atomic set; there is no need of synchronizing it
         if (downloadOperation != null) {
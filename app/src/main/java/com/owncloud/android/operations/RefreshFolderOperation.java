@@ -60,10 +60,12 @@ import com.owncloud.android.utils.MimeType;
 import com.owncloud.android.utils.MimeTypeUtil;
 import com.owncloud.android.utils.theme.CapabilityUtils;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import androidx.annotation.NonNull;
@@ -509,6 +511,13 @@ public class RefreshFolderOperation extends RemoteOperation {
             }
         }
 
+        // children unknown inside this folder might be stored elsewhere, fetch all of them at once
+        Map<String, OCFile> otherLocalFiles = getOtherLocalFiles(folderAndFiles, localFilesMap);
+
+        // list the local folder once instead of checking every child on its own
+        File localFolderPath = new File(FileStorageUtils.getDefaultSavePathFor(user.getAccountName(), mLocalFolder));
+        Set<String> localFolderContent = FileStorageUtils.getFileNames(localFolderPath);
+
         // loop to update every child
         OCFile remoteFile;
         OCFile localFile;
@@ -527,9 +536,8 @@ public class RefreshFolderOperation extends RemoteOperation {
             // retrieve local data for the read file
             localFile = localFilesMap.remove(remoteFile.getRemotePath());
 
-            // TODO better implementation is needed
             if (localFile == null) {
-                localFile = mStorageManager.getFileByPath(updatedFile.getRemotePath());
+                localFile = otherLocalFiles.get(updatedFile.getRemotePath());
             }
 
             // add to updatedFile data about LOCAL STATE (not existing in server)
@@ -544,7 +552,10 @@ public class RefreshFolderOperation extends RemoteOperation {
             setLocalFileDataOnUpdatedFile(remoteFile, localFile, updatedFile, mRemoteFolderChanged);
 
             // check and fix, if needed, local storage path
-            FileStorageUtils.searchForLocalFileInDefaultPath(updatedFile, user.getAccountName());
+            FileStorageUtils.searchForLocalFileInDefaultPath(updatedFile,
+                                                             user.getAccountName(),
+                                                             localFolderPath,
+                                                             localFolderContent);
 
             // update file name for encrypted files
             if (e2EVersion == E2EVersion.V1_2) {
@@ -583,6 +594,21 @@ public class RefreshFolderOperation extends RemoteOperation {
         mChildren = updatedFiles;
     }
 
+    private Map<String, OCFile> getOtherLocalFiles(List<Object> folderAndFiles, Map<String, OCFile> localFilesMap) {
+        List<String> remotePaths = new ArrayList<>();
+        for (int i = 1; i < folderAndFiles.size(); i++) {
+            String remotePath = ((RemoteFile) folderAndFiles.get(i)).getRemotePath();
+            if (!localFilesMap.containsKey(remotePath)) {
+                remotePaths.add(remotePath);
+            }
+        }
+
+        if (remotePaths.isEmpty()) {
+            return new HashMap<>();
+        }
+        return mStorageManager.getFilesByEncryptedRemotePaths(remotePaths);
+    }
+
     @Nullable
     public static Object getDecryptedFolderMetadata(boolean encryptedAncestor,
                                                     OCFile localFolder,
@@ -591,7 +617,7 @@ public class RefreshFolderOperation extends RemoteOperation {
                                                     Context context) {
         Object metadata;
         if (encryptedAncestor) {
-            metadata = EncryptionUtils.downloadFolderMetadata(localFolder, client, context, user);
+            metadata = EncryptionUtils.getFolderMetadata(localFolder, client, context, user);
         } else {
             metadata = null;
         }
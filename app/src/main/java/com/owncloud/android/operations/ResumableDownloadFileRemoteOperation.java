@@ -0,0 +1,343 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.operations;
+
+import com.owncloud.android.lib.common.OwnCloudClient;
+import com.owncloud.android.lib.common.network.OnDatatransferProgressListener;
+import com.owncloud.android.lib.common.network.WebdavUtils;
+import com.owncloud.android.lib.common.operations.OperationCancelledException;
+import com.owncloud.android.lib.common.operations.RemoteOperation;
+import com.owncloud.android.lib.common.operations.RemoteOperationResult;
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.GetMethod;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Downloads a file like {@link com.owncloud.android.lib.resources.files.DownloadFileRemoteOperation}, but keeps the
+ * partial file of an interrupted download together with its ETag. The next download of the file only requests the
+ * missing bytes with a Range header. If-Range makes the server send the whole file instead, if it changed meanwhile.
+ */
+public class ResumableDownloadFileRemoteOperation extends RemoteOperation {
+    private static final String TAG = ResumableDownloadFileRemoteOperation.class.getSimpleName();
+
+    static final String ETAG_FILE_SUFFIX = ".etag";
+    private static final String HEADER_RANGE = "Range";
+    private static final String HEADER_IF_RANGE = "If-Range";
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_TRANSFER_ENCODING = "Transfer-Encoding";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final String remotePath;
+    private final File targetFile;
+    private final Set<OnDatatransferProgressListener> dataTransferListeners = new HashSet<>();
+    private final AtomicBoolean cancellationRequested = new AtomicBoolean(false);
+
+    private long modificationTimestamp;
+    private String etag = "";
+    private long resumedBytes;
+    private long discardedBytes;
+
+    public ResumableDownloadFileRemoteOperation(String remotePath, File targetFile) {
+        this.remotePath = remotePath;
+        this.targetFile = targetFile;
+    }
+
+    @Override
+    protected RemoteOperationResult run(OwnCloudClient client) {
+        return download(client, client.getFilesDavUri(remotePath));
+    }
+
+    @VisibleForTesting
+    RemoteOperationResult download(HttpClient client, String uri) {
+        File parent = targetFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            Log_OC.e(TAG, "Unable to create parent folder " + parent.getAbsolutePath());
+        }
+
+        long offset = 0;
+        String partialEtag = readPartialEtag();
+        if (partialEtag != null && targetFile.length() > 0) {
+            offset = targetFile.length();
+        }
+
+        RemoteOperationResult result = download(client, uri, offset, partialEtag);
+        if (result == null) {
+            // the server does not accept the range of the stored part
+            discardedBytes += offset;
+            discardPartialFile();
+            result = download(client, uri, 0, null);
+        }
+        return result;
+    }
+
+    /**
+     * @return null if the server did not accept the requested range
+     */
+    private RemoteOperationResult download(HttpClient client, String uri, long offset, String partialEtag) {
+        GetMethod getMethod = new GetMethod(uri);
+        boolean completed = false;
+        boolean cancelled = false;
+
+        try {
+            if (offset > 0) {
+                getMethod.addRequestHeader(HEADER_RANGE, "bytes=" + offset + "-");
+                getMethod.addRequestHeader(HEADER_IF_RANGE, partialEtag);
+            }
+
+            int status = client.executeMethod(getMethod);
+
+            if (offset > 0 && (status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE ||
+                status == HttpStatus.SC_PARTIAL_CONTENT && getRangeStart(getMethod) != offset)) {
+                getMethod.abort();
+                return null;
+            }
+
+            if (status != HttpStatus.SC_OK && status != HttpStatus.SC_PARTIAL_CONTENT) {
+                return new RemoteOperationResult(false, getMethod);
+            }
+
+            boolean append = status == HttpStatus.SC_PARTIAL_CONTENT;
+            if (append) {
+                resumedBytes = offset;
+                Log_OC.d(TAG, "Resuming download of " + remotePath + " at byte " + offset);
+            } else {
+                // whole content, because the file changed since the partial download or ranges are not supported
+                discardedBytes += offset;
+                offset = 0;
+            }
+
+            writePartialEtag(getMethod);
+
+            long totalToTransfer = offset + getContentLength(getMethod);
+            long transferred = transfer(getMethod, append, offset, totalToTransfer);
+
+            Header transferEncoding = getMethod.getResponseHeader(HEADER_TRANSFER_ENCODING);
+            boolean chunked = transferEncoding != null && "chunked".equals(transferEncoding.getValue());
+            if (transferred != totalToTransfer && !chunked) {
+                return new RemoteOperationResult(false, getMethod);
+            }
+
+            completed = true;
+            deletePartialEtag();
+
+            Header lastModified = getMethod.getResponseHeader(HEADER_LAST_MODIFIED);
+            if (lastModified != null) {
+                Date date = WebdavUtils.parseResponseDate(lastModified.getValue());
+                modificationTimestamp = date != null ? date.getTime() : 0;
+            } else {
+                Log_OC.e(TAG, "Could not read modification time from response downloading " + remotePath);
+            }
+
+            etag = WebdavUtils.getEtagFromResponse(getMethod);
+            if (etag == null || etag.isEmpty()) {
+                Log_OC.e(TAG, "Could not read eTag from response downloading " + remotePath);
+            }
+
+            return new RemoteOperationResult(true, getMethod);
+        } catch (OperationCancelledException e) {
+            cancelled = true;
+            return new RemoteOperationResult(e);
+        } catch (IOException e) {
+            Log_OC.e(TAG, "Download of " + remotePath + " interrupted: " + e.getMessage());
+            return new RemoteOperationResult(e);
+        } finally {
+            getMethod.releaseConnection();
+
+            // an incomplete file can only be resumed with its ETag
+            if (!completed && (cancelled || !getEtagFile().exists())) {
+                discardPartialFile();
+            }
+        }
+    }
+
+    private long transfer(GetMethod getMethod, boolean append, long offset, long totalToTransfer)
+        throws IOException, OperationCancelledException {
+        long transferred = offset;
+
+        try (InputStream inputStream = new BufferedInputStream(getMethod.getResponseBodyAsStream());
+             OutputStream outputStream = new FileOutputStream(targetFile, append)) {
+            byte[] bytes = new byte[BUFFER_SIZE];
+            int readResult;
+            while ((readResult = inputStream.read(bytes)) != -1) {
+                if (cancellationRequested.get()) {
+                    getMethod.abort();
+                    throw new OperationCancelledException();
+                }
+
+                outputStream.write(bytes, 0, readResult);
+                transferred += readResult;
+
+                synchronized (dataTransferListeners) {
+                    for (OnDatatransferProgressListener listener : dataTransferListeners) {
+                        listener.onTransferProgress(readResult, transferred, totalToTransfer, targetFile.getName());
+                    }
+                }
+            }
+        }
+
+        return transferred;
+    }
+
+    private static long getContentLength(GetMethod getMethod) {
+        Header contentLength = getMethod.getResponseHeader(HEADER_CONTENT_LENGTH);
+        if (contentLength == null || contentLength.getValue().length() == 0) {
+            return 0;
+        }
+        return Long.parseLong(contentLength.getValue());
+    }
+
+    /**
+     * @return first byte of a "Content-Range: bytes first-last/length" header, -1 if missing
+     */
+    private static long getRangeStart(GetMethod getMethod) {
+        Header contentRange = getMethod.getResponseHeader(HEADER_CONTENT_RANGE);
+        if (contentRange == null) {
+            return -1;
+        }
+
+        String value = contentRange.getValue().trim();
+        int start = value.indexOf(' ') + 1;
+        int end = value.indexOf('-', start);
+        try {
+            return end > start ? Long.parseLong(value.substring(start, end).trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @VisibleForTesting
+    File getEtagFile() {
+        return new File(targetFile.getAbsolutePath() + ETAG_FILE_SUFFIX);
+    }
+
+    private String readPartialEtag() {
+        File etagFile = getEtagFile();
+        if (!etagFile.isFile()) {
+            return null;
+        }
+
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(etagFile), StandardCharsets.UTF_8))) {
+            String value = reader.readLine();
+            return value == null || value.trim().isEmpty() ? null : value.trim();
+        } catch (IOException e) {
+            Log_OC.e(TAG, "Could not read ETag of partial download " + targetFile.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the ETag of the response next to the file before its content, only strong ETags can be used with
+     * If-Range
+     */
+    private void writePartialEtag(GetMethod getMethod) {
+        Header etagHeader = getMethod.getResponseHeader(HEADER_ETAG);
+        String value = etagHeader != null ? etagHeader.getValue() : null;
+        if (value == null || value.isEmpty() || value.startsWith(WEAK_ETAG_PREFIX)) {
+            deletePartialEtag();
+            return;
+        }
+
+        try (OutputStream outputStream = new FileOutputStream(getEtagFile())) {
+            outputStream.write(value.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log_OC.e(TAG, "Could not store ETag of download " + targetFile.getAbsolutePath(), e);
+            deletePartialEtag();
+        }
+    }
+
+    private void deletePartialEtag() {
+        File etagFile = getEtagFile();
+        if (etagFile.exists() && !etagFile.delete()) {
+            Log_OC.e(TAG, "Deletion of " + etagFile.getAbsolutePath() + " failed");
+        }
+    }
+
+    private void discardPartialFile() {
+        deletePartialEtag();
+        if (targetFile.exists()) {
+            if (!targetFile.delete()) {
+                Log_OC.e(TAG, "Deletion of " + targetFile.getAbsolutePath() + " failed");
+            }
+        }
+    }
+
+    public void cancel() {
+        cancellationRequested.set(true);
+    }
+
+    public void addDatatransferProgressListener(OnDatatransferProgressListener listener) {
+        synchronized (dataTransferListeners) {
+            dataTransferListeners.add(listener);
+        }
+    }
+
+    public void removeDatatransferProgressListener(OnDatatransferProgressListener listener) {
+        synchronized (dataTransferListeners) {
+            dataTransferListeners.remove(listener);
+        }
+    }
+
+    public long getModificationTimestamp() {
+        return modificationTimestamp;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return bytes of a partial download which were not downloaded again
+     */
+    public long getResumedBytes() {
+        return resumedBytes;
+    }
+
+    /**
+     * @return bytes of a partial download which had to be downloaded again, e.g. because the file changed
+     */
+    public long getDiscardedBytes() {
+        return discardedBytes;
+    }
+}
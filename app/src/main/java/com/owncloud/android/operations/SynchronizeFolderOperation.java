@@ -286,6 +286,9 @@ public class SynchronizeFolderOperation extends SyncOperation {
         // update richWorkspace
         mLocalFolder.setRichWorkspace(remoteFolder.getRichWorkspace());
 
+        // update eTag, so that cached metadata of the previous folder state is not used
+        mLocalFolder.setEtag(remoteFolder.getEtag());
+
         Object object = RefreshFolderOperation.getDecryptedFolderMetadata(encryptedAncestor,
                                                                                                  mLocalFolder,
                                                                                                  getClient(),
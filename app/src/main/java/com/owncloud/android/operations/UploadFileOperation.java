@@ -41,7 +41,6 @@ import com.owncloud.android.datamodel.e2e.v1.decrypted.Data;
 import com.owncloud.android.datamodel.e2e.v1.decrypted.DecryptedFile;
 import com.owncloud.android.datamodel.e2e.v1.decrypted.DecryptedFolderMetadataFileV1;
 import com.owncloud.android.datamodel.e2e.v1.decrypted.DecryptedMetadata;
-import com.owncloud.android.datamodel.e2e.v1.encrypted.EncryptedFile;
 import com.owncloud.android.datamodel.e2e.v1.encrypted.EncryptedFolderMetadataFileV1;
 import com.owncloud.android.datamodel.e2e.v2.decrypted.DecryptedFolderMetadataFile;
 import com.owncloud.android.db.OCUpload;
@@ -560,8 +559,6 @@ public class UploadFileOperation extends SyncOperation {
             // IV, always generate new one
             byte[] iv = EncryptionUtils.randomBytes(EncryptionUtils.ivLength);
 
-            EncryptedFile encryptedFile = EncryptionUtils.encryptFile(mFile, key, iv);
-
             // new random file name, check if it exists in metadata
             String encryptedFileName = EncryptionUtils.generateUid();
 
@@ -576,9 +573,8 @@ public class UploadFileOperation extends SyncOperation {
             }
 
             File encryptedTempFile = File.createTempFile("encFile", encryptedFileName);
-            FileOutputStream fileOutputStream = new FileOutputStream(encryptedTempFile);
-            fileOutputStream.write(encryptedFile.getEncryptedBytes());
-            fileOutputStream.close();
+            String authenticationTag = EncryptionUtils.encodeBytesToBase64String(
+                EncryptionUtils.encryptFile(new File(mFile.getStoragePath()), encryptedTempFile, key, iv));
 
             /***** E2E *****/
 
@@ -672,7 +668,7 @@ public class UploadFileOperation extends SyncOperation {
 
                     decryptedFile.setEncrypted(data);
                     decryptedFile.setInitializationVector(EncryptionUtils.encodeBytesToBase64String(iv));
-                    decryptedFile.setAuthenticationTag(encryptedFile.getAuthenticationTag());
+                    decryptedFile.setAuthenticationTag(authenticationTag);
 
                     metadata.getFiles().put(encryptedFileName, decryptedFile);
 
@@ -716,7 +712,7 @@ public class UploadFileOperation extends SyncOperation {
                         encryptedFileName,
                         mFile,
                         iv,
-                        encryptedFile.getAuthenticationTag(),
+                        authenticationTag,
                         key,
                         metadata,
                         getStorageManager());
@@ -32,11 +32,14 @@ import android.database.Cursor;
 import android.graphics.Point;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.CancellationSignal;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.ParcelFileDescriptor;
+import android.os.storage.StorageManager;
 import android.provider.DocumentsContract;
 import android.provider.DocumentsProvider;
 import android.widget.Toast;
@@ -89,10 +92,12 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Inject;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
 import androidx.annotation.VisibleForTesting;
 import dagger.android.AndroidInjection;
 
@@ -215,6 +220,10 @@ public class DocumentsStorageProvider extends DocumentsProvider {
             if (ocFile.getLocalModificationTimestamp() > ocFile.getLastSyncDateForData()) {
                 // TODO show a conflict notification with a pending intent that shows a ConflictResolveDialog
                 Log_OC.w(TAG, "Conflict found!");
+            } else if (accessMode == MODE_READ_ONLY && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O &&
+                !ocFile.isEncrypted()) {
+                // callers can start reading and seek right away instead of waiting for the whole download
+                return openStreamingDocument(document);
             } else {
                 // dirty threading workaround for client apps which call openDocument on the main thread, thus causing
                 // a NetworkOnMainThreadException
@@ -224,10 +233,7 @@ public class DocumentsStorageProvider extends DocumentsProvider {
                     RemoteOperationResult result = downloadFileOperation.execute(document.getClient());
                     if (!result.isSuccess()) {
                         if (ocFile.isDown()) {
-                            Handler handler = new Handler(Looper.getMainLooper());
-                            handler.post(() -> Toast.makeText(MainApp.getAppContext(),
-                                                              R.string.file_not_synced,
-                                                              Toast.LENGTH_SHORT).show());
+                            showFileNotSyncedToast();
                             downloadResult.set(true);
                         } else {
                             Log_OC.e(TAG, result.toString());
@@ -287,6 +293,67 @@ public class DocumentsStorageProvider extends DocumentsProvider {
         }
     }
 
+    /**
+     * Opens a remote file for reading without downloading it, reads are served with range requests.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private ParcelFileDescriptor openStreamingDocument(Document document) throws FileNotFoundException {
+        OCFile ocFile = document.getFile();
+
+        // same threading workaround as for downloads, reading the first block tells the length of the file
+        final AtomicReference<RemoteFileRangeReader> openedReader = new AtomicReference<>();
+        final Thread openThread = new Thread(() -> {
+            OwnCloudClient client = document.getClient();
+            if (client == null) {
+                return;
+            }
+            RemoteFileRangeReader reader = new RemoteFileRangeReader(client,
+                                                                     client.getFilesDavUri(ocFile.getRemotePath()));
+            try {
+                reader.open();
+                openedReader.set(reader);
+            } catch (IOException e) {
+                Log_OC.e(TAG, "Error streaming file " + ocFile.getFileName() + ": " + e.getMessage(), e);
+            }
+        });
+        openThread.start();
+
+        try {
+            openThread.join();
+        } catch (InterruptedException e) {
+            throw new FileNotFoundException("Error streaming file: " + ocFile.getFileName());
+        }
+        RemoteFileRangeReader reader = openedReader.get();
+        if (reader == null) {
+            if (ocFile.isDown()) {
+                // like a failed download, fall back to the local copy
+                showFileNotSyncedToast();
+                return ParcelFileDescriptor.open(new File(ocFile.getStoragePath()), MODE_READ_ONLY);
+            }
+            throw new FileNotFoundException("Error streaming file: " + ocFile.getFileName());
+        }
+
+        HandlerThread readThread = new HandlerThread(TAG + " " + ocFile.getFileName());
+        readThread.start();
+        StorageManager storageManager = getNonNullContext().getSystemService(StorageManager.class);
+        try {
+            return storageManager.openProxyFileDescriptor(MODE_READ_ONLY,
+                                                          new RemoteFileProxyCallback(reader, readThread),
+                                                          new Handler(readThread.getLooper()));
+        } catch (IOException e) {
+            reader.close();
+            readThread.quitSafely();
+            throw new FileNotFoundException("Failed to stream document " + ocFile.getFileName());
+        }
+    }
+
+    private void showFileNotSyncedToast() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        handler.post(() -> Toast.makeText(MainApp.getAppContext(),
+                                          R.string.file_not_synced,
+                                          Toast.LENGTH_SHORT).show());
+    }
+
     private boolean hasServerChange(Document document) throws FileNotFoundException {
         Context context = getNonNullContext();
         OCFile ocFile = document.getFile();
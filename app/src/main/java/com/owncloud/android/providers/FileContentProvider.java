@@ -43,7 +43,6 @@ import com.owncloud.android.R;
 import com.owncloud.android.db.ProviderMeta.ProviderTableMeta;
 import com.owncloud.android.lib.common.utils.Log_OC;
 import com.owncloud.android.lib.resources.shares.ShareType;
-import com.owncloud.android.utils.MimeType;
 
 import java.util.ArrayList;
 import java.util.Locale;
@@ -83,9 +82,13 @@ public class FileContentProvider extends ContentProvider {
     private static final int SINGLE_PATH_SEGMENT = 1;
     public static final int MINIMUM_PATH_SEGMENTS_SIZE = 1;
 
-    private static final String[] PROJECTION_CONTENT_TYPE = new String[]{
-        ProviderTableMeta._ID, ProviderTableMeta.FILE_CONTENT_TYPE
-    };
+    @VisibleForTesting
+    public static final String DESCENDANTS_QUERY = "WITH RECURSIVE descendants(id) AS ("
+        + "SELECT " + ProviderTableMeta._ID + " FROM " + ProviderTableMeta.FILE_TABLE_NAME
+        + " WHERE " + ProviderTableMeta.FILE_PARENT + " = ?"
+        + " UNION SELECT f." + ProviderTableMeta._ID + " FROM " + ProviderTableMeta.FILE_TABLE_NAME + " f"
+        + " JOIN descendants d ON f." + ProviderTableMeta.FILE_PARENT + " = d.id"
+        + ") SELECT id FROM descendants";
     private static final String[] PROJECTION_REMOTE_ID = new String[]{
         ProviderTableMeta._ID, ProviderTableMeta.FILE_REMOTE_ID
     };
@@ -171,35 +174,20 @@ public class FileContentProvider extends ContentProvider {
         return count;
     }
 
+    /**
+     * Deletes the directory and all of its descendants with a single statement, walking the tree with a recursive
+     * common table expression on the parent column instead of querying and deleting every child separately.
+     */
     private int deleteDirectory(SupportSQLiteDatabase db, Uri uri, String where, String... whereArgs) {
-        int count = 0;
-
-        Cursor children = query(uri, PROJECTION_CONTENT_TYPE, null, null, null);
-        if (children != null) {
-            if (children.moveToFirst()) {
-                long childId;
-                boolean isDir;
-                while (!children.isAfterLast()) {
-                    childId = children.getLong(children.getColumnIndexOrThrow(ProviderTableMeta._ID));
-                    isDir = MimeType.DIRECTORY.equals(children.getString(
-                        children.getColumnIndexOrThrow(ProviderTableMeta.FILE_CONTENT_TYPE)
-                    ));
-                    if (isDir) {
-                        count += delete(db, ContentUris.withAppendedId(ProviderTableMeta.CONTENT_URI_DIR, childId),
-                                        null, (String[]) null);
-                    } else {
-                        count += delete(db, ContentUris.withAppendedId(ProviderTableMeta.CONTENT_URI_FILE, childId),
-                                        null, (String[]) null);
-                    }
-                    children.moveToNext();
-                }
-            }
-            children.close();
+        if (uri.getPathSegments().size() <= MINIMUM_PATH_SEGMENTS_SIZE) {
+            // no directory id given: every file is a descendant
+            return db.delete(ProviderTableMeta.FILE_TABLE_NAME, null, null);
         }
 
-        if (uri.getPathSegments().size() > MINIMUM_PATH_SEGMENTS_SIZE) {
-            count += deleteWithUri(db, uri, where, whereArgs);
-        }
+        int count = db.delete(ProviderTableMeta.FILE_TABLE_NAME,
+                              ProviderTableMeta._ID + " IN (" + DESCENDANTS_QUERY + ")",
+                              VerificationUtils.prependUriFirstSegmentToSelectionArgs(null, uri));
+        count += deleteWithUri(db, uri, where, whereArgs);
 
         return count;
     }
@@ -0,0 +1,70 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers;
+
+import android.os.Build;
+import android.os.HandlerThread;
+import android.os.ProxyFileDescriptorCallback;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import java.io.IOException;
+
+import androidx.annotation.RequiresApi;
+
+/**
+ * Serves reads of a proxy file descriptor from a {@link RemoteFileRangeReader}. Calls arrive on the thread of the
+ * given {@link HandlerThread}, which is stopped when the descriptor is closed.
+ */
+@RequiresApi(api = Build.VERSION_CODES.O)
+class RemoteFileProxyCallback extends ProxyFileDescriptorCallback {
+    private static final String TAG = RemoteFileProxyCallback.class.getSimpleName();
+
+    private final RemoteFileRangeReader reader;
+    private final HandlerThread thread;
+
+    RemoteFileProxyCallback(RemoteFileRangeReader reader, HandlerThread thread) {
+        this.reader = reader;
+        this.thread = thread;
+    }
+
+    @Override
+    public long onGetSize() {
+        return reader.getLength();
+    }
+
+    @Override
+    public int onRead(long offset, int size, byte[] data) throws ErrnoException {
+        try {
+            return reader.read(offset, size, data);
+        } catch (IOException e) {
+            Log_OC.e(TAG, "Streaming read failed: " + e.getMessage(), e);
+            throw new ErrnoException("onRead", OsConstants.EIO);
+        }
+    }
+
+    @Override
+    public void onRelease() {
+        reader.close();
+        thread.quitSafely();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.providers;
+
+import com.owncloud.android.lib.common.network.WebdavUtils;
+import com.owncloud.android.lib.common.utils.Log_OC;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.GetMethod;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a remote file in blocks with HTTP range requests, so that it can be read at any position without downloading
+ * it first. Recently read blocks are kept in memory. The ETag of the first response is kept and reading fails if the
+ * file changes on the server meanwhile.
+ *
+ * Not thread safe, meant to be used from the thread of a proxy file descriptor.
+ */
+public class RemoteFileRangeReader implements Closeable {
+    private static final String TAG = RemoteFileRangeReader.class.getSimpleName();
+
+    static final int BLOCK_SIZE = 256 * 1024;
+    static final int MAX_CACHED_BLOCKS = 32;
+    private static final String HEADER_RANGE = "Range";
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+
+    private final HttpClient client;
+    private final String uri;
+    private final Map<Long, byte[]> blocks = new LinkedHashMap<Long, byte[]>(MAX_CACHED_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > MAX_CACHED_BLOCKS;
+        }
+    };
+
+    private long length = -1;
+    private String etag;
+    private boolean closed;
+
+    public RemoteFileRangeReader(HttpClient client, String uri) {
+        this.client = client;
+        this.uri = uri;
+    }
+
+    /**
+     * Reads the first block, which also tells the length and ETag of the file
+     */
+    public void open() throws IOException {
+        getBlock(0);
+    }
+
+    /**
+     * @return length of the file, -1 before {@link #open()}
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return number of bytes read into data, less than size only at the end of the file
+     */
+    public int read(long offset, int size, byte[] data) throws IOException {
+        if (closed) {
+            throw new IOException("Reading closed file " + uri);
+        }
+        if (length < 0) {
+            open();
+        }
+        if (offset < 0 || size < 0) {
+            throw new IOException("Invalid read of " + size + " bytes at " + offset);
+        }
+        if (offset >= length) {
+            return 0;
+        }
+
+        int toRead = (int) Math.min(size, length - offset);
+        int read = 0;
+        while (read < toRead) {
+            long position = offset + read;
+            long index = position / BLOCK_SIZE;
+            byte[] block = getBlock(index);
+
+            int blockOffset = (int) (position - index * BLOCK_SIZE);
+            int count = Math.min(toRead - read, block.length - blockOffset);
+            if (count <= 0) {
+                throw new IOException("Unexpected end of " + uri + " at " + position);
+            }
+            System.arraycopy(block, blockOffset, data, read, count);
+            read += count;
+        }
+        return read;
+    }
+
+    private byte[] getBlock(long index) throws IOException {
+        byte[] block = blocks.get(index);
+        if (block == null) {
+            block = fetchBlock(index);
+            blocks.put(index, block);
+        }
+        return block;
+    }
+
+    private byte[] fetchBlock(long index) throws IOException {
+        long start = index * BLOCK_SIZE;
+        GetMethod getMethod = new GetMethod(uri);
+
+        try {
+            getMethod.addRequestHeader(HEADER_RANGE, "bytes=" + start + "-" + (start + BLOCK_SIZE - 1));
+            int status = client.executeMethod(getMethod);
+
+            long total;
+            if (status == HttpStatus.SC_PARTIAL_CONTENT) {
+                long[] range = parseContentRange(getMethod);
+                if (range[0] != start) {
+                    throw new IOException("Server returned range starting at " + range[0] + " instead of " + start);
+                }
+                total = range[1];
+            } else if (status == HttpStatus.SC_OK && start == 0) {
+                // ranges are not supported, or the file fits into the first block
+                total = getContentLength(getMethod);
+            } else if (status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && start == 0) {
+                // empty file
+                total = 0;
+            } else {
+                throw new IOException("Unexpected status " + status + " reading " + uri + " at " + start);
+            }
+
+            checkEtag(WebdavUtils.getEtagFromResponse(getMethod));
+            if (length < 0) {
+                length = total;
+            } else if (length != total) {
+                throw new IOException(uri + " changed its length on the server");
+            }
+
+            byte[] block = new byte[(int) Math.max(0, Math.min(BLOCK_SIZE, length - start))];
+            if (block.length > 0) {
+                try (InputStream inputStream = getMethod.getResponseBodyAsStream()) {
+                    readFully(inputStream, block);
+                }
+            }
+            if (status == HttpStatus.SC_OK && length > BLOCK_SIZE) {
+                // don't read the rest of the whole file when releasing the connection
+                getMethod.abort();
+            }
+            return block;
+        } finally {
+            getMethod.releaseConnection();
+        }
+    }
+
+    private void checkEtag(String responseEtag) throws IOException {
+        if (etag == null) {
+            etag = responseEtag;
+        } else if (responseEtag != null && !responseEtag.isEmpty() && !responseEtag.equals(etag)) {
+            Log_OC.w(TAG, uri + " changed on the server while it was read");
+            throw new IOException(uri + " changed on the server");
+        }
+    }
+
+    private static void readFully(InputStream inputStream, byte[] block) throws IOException {
+        int read = 0;
+        while (read < block.length) {
+            int count = inputStream.read(block, read, block.length - read);
+            if (count == -1) {
+                throw new IOException("Response ended after " + read + " of " + block.length + " bytes");
+            }
+            read += count;
+        }
+    }
+
+    private static long getContentLength(GetMethod getMethod) throws IOException {
+        Header contentLength = getMethod.getResponseHeader(HEADER_CONTENT_LENGTH);
+        if (contentLength == null) {
+            throw new IOException("Missing Content-Length");
+        }
+        try {
+            return Long.parseLong(contentLength.getValue().trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid Content-Length " + contentLength.getValue(), e);
+        }
+    }
+
+    /**
+     * @return first byte and total length of a "Content-Range: bytes first-last/length" header
+     */
+    private static long[] parseContentRange(GetMethod getMethod) throws IOException {
+        Header contentRange = getMethod.getResponseHeader(HEADER_CONTENT_RANGE);
+        if (contentRange == null) {
+            throw new IOException("Missing Content-Range");
+        }
+
+        String value = contentRange.getValue().trim();
+        int start = value.indexOf(' ') + 1;
+        int dash = value.indexOf('-', start);
+        int slash = value.indexOf('/', dash);
+        try {
+            if (dash < start || slash < dash) {
+                throw new NumberFormatException(value);
+            }
+            return new long[]{
+                Long.parseLong(value.substring(start, dash).trim()),
+                Long.parseLong(value.substring(slash + 1).trim())
+            };
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid Content-Range " + value, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        blocks.clear();
+    }
+}
@@ -1294,14 +1294,17 @@ public class FileDisplayActivity extends FileActivity
                         OCFileListFragment ocFileListFragment = getListOfFilesFragment();
                         if (ocFileListFragment != null) {
                             ocFileListFragment.setLoading(mSyncInProgress);
-                            if (!mSyncInProgress && !ocFileListFragment.isLoading()) {
-                                // update scrolling when load finishes
-                                if (ocFileListFragment.isEmpty()) {
-                                    lockScrolling();
-                                } else {
-                                    resetScrolling(false);
+                            // the synced folder is listed in background
+                            ocFileListFragment.runWhenLoaded(() -> {
+                                if (!mSyncInProgress && !ocFileListFragment.isLoading()) {
+                                    // update scrolling when load finishes
+                                    if (ocFileListFragment.isEmpty()) {
+                                        lockScrolling();
+                                    } else {
+                                        resetScrolling(false);
+                                    }
                                 }
-                            }
+                            });
                         }
                         setBackgroundText();
                     }
@@ -128,6 +128,7 @@ public class SettingsActivity extends PreferenceActivity
     private static final int ACTION_SHOW_MNEMONIC = 11;
     private static final int ACTION_E2E = 12;
     private static final int TRUE_VALUE = 1;
+    private static final int[] MAX_CONCURRENT_UPLOADS_OPTIONS = {1, 2, 4, 8};
 
     private static final String DAV_PATH = "/remote.php/dav";
 
@@ -842,6 +843,27 @@ public class SettingsActivity extends PreferenceActivity
 
             return true;
         });
+
+        setupMaxConcurrentUploadsPreference();
+    }
+
+    private void setupMaxConcurrentUploadsPreference() {
+        ListPreference maxConcurrentUploadsPref = (ListPreference) findPreference("max_concurrent_uploads");
+
+        String[] values = new String[MAX_CONCURRENT_UPLOADS_OPTIONS.length];
+        for (int i = 0; i < MAX_CONCURRENT_UPLOADS_OPTIONS.length; i++) {
+            values[i] = String.valueOf(MAX_CONCURRENT_UPLOADS_OPTIONS[i]);
+        }
+
+        maxConcurrentUploadsPref.setEntries(values);
+        maxConcurrentUploadsPref.setEntryValues(values);
+        maxConcurrentUploadsPref.setValue(String.valueOf(preferences.getMaxConcurrentUploads()));
+
+        // the upload worker reads the value when it starts
+        maxConcurrentUploadsPref.setOnPreferenceChangeListener((preference, newValue) -> {
+            preferences.setMaxConcurrentUploads(Integer.parseInt((String) newValue));
+            return true;
+        });
     }
 
     private void setListBackground() {
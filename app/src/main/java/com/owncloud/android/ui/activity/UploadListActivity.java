@@ -63,8 +63,10 @@ import com.owncloud.android.utils.theme.ViewThemeUtils;
 
 import javax.inject.Inject;
 
+import androidx.annotation.NonNull;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 /**
@@ -175,6 +177,15 @@ public class UploadListActivity extends FileActivity {
         binding.list.addItemDecoration(new MediaGridItemDecoration(spacing));
         binding.list.setLayoutManager(lm);
         binding.list.setAdapter(uploadListAdapter);
+        binding.list.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                super.onScrolled(recyclerView, dx, dy);
+
+                // adapter must not be changed within a scroll callback
+                recyclerView.post(() -> uploadListAdapter.loadMoreIfNeeded(lm.findLastVisibleItemPosition()));
+            }
+        });
 
         viewThemeUtils.androidx.themeSwipeRefreshLayout(swipeListRefreshLayout);
         swipeListRefreshLayout.setOnRefreshListener(this::refresh);
@@ -194,7 +205,7 @@ public class UploadListActivity extends FileActivity {
     }
 
     private void refresh() {
-        backgroundJobManager.startImmediateFilesSyncJob(false, true);
+        backgroundJobManager.startImmediateFilesSyncJob(false, true, false);
 
         if(uploadsStorageManager.getFailedUploads().length > 0){
             // retry failed uploads
@@ -36,15 +36,31 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread safe bitmap cache on top of {@link DiskLruCache}. Callers do not need to synchronize reads or writes.
+ */
 public class DiskLruImageCache {
 
     private DiskLruCache mDiskCache;
     private CompressFormat mCompressFormat;
     private int mCompressQuality;
-    private static final int CACHE_VERSION = 1;
-    private static final int VALUE_COUNT = 1;
+    private final AtomicInteger mPendingWrites = new AtomicInteger();
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService mFlushExecutor = Executors.newSingleThreadScheduledExecutor();
+    private static final int CACHE_VERSION = 2;
+    private static final int VALUE_COUNT = 2;
+    private static final int BITMAP_INDEX = 0;
+    private static final int DIMENSIONS_INDEX = 1;
+    private static final String DIMENSIONS_SEPARATOR = "x";
     private static final int IO_BUFFER_SIZE = 8 * 1024;
+    private static final int FLUSH_WRITE_THRESHOLD = 64;
+    private static final long FLUSH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
     private static final String CACHE_TEST_DISK = "cache_test_DISK_";
 
     private static final String TAG = DiskLruImageCache.class.getSimpleName();
@@ -59,13 +75,19 @@ public class DiskLruImageCache {
     private boolean writeBitmapToFile(Bitmap bitmap, DiskLruCache.Editor editor) throws IOException {
         OutputStream out = null;
         try {
-            out = new BufferedOutputStream(editor.newOutputStream(0), IO_BUFFER_SIZE);
-            return bitmap.compress(mCompressFormat, mCompressQuality, out);
+            out = new BufferedOutputStream(editor.newOutputStream(BITMAP_INDEX), IO_BUFFER_SIZE);
+            if (!bitmap.compress(mCompressFormat, mCompressQuality, out)) {
+                return false;
+            }
         } finally {
             if (out != null) {
                 out.close();
             }
         }
+
+        // stored next to the image, so that scaled reads do not need to decode the bounds first
+        editor.set(DIMENSIONS_INDEX, bitmap.getWidth() + DIMENSIONS_SEPARATOR + bitmap.getHeight());
+        return true;
     }
 
     public void put(String key, Bitmap data) {
@@ -79,8 +101,8 @@ public class DiskLruImageCache {
             }
 
             if (writeBitmapToFile(data, editor)) {
-                mDiskCache.flush();
                 editor.commit();
+                flushIfNeeded();
                 if (BuildConfig.DEBUG) {
                     Log_OC.d(CACHE_TEST_DISK, "image put on disk cache " + validKey);
                 }
@@ -104,51 +126,85 @@ public class DiskLruImageCache {
         }
     }
 
+    /**
+     * Journal entries of commits are buffered until a flush, which also trims the cache to its maximum size. As that
+     * takes the cache wide lock it is done once per {@link #FLUSH_WRITE_THRESHOLD} writes, and
+     * {@link #FLUSH_INTERVAL_MILLIS} after the first unflushed write at the latest.
+     */
+    private void flushIfNeeded() {
+        if (mPendingWrites.incrementAndGet() >= FLUSH_WRITE_THRESHOLD) {
+            flush();
+        } else if (mFlushScheduled.compareAndSet(false, true)) {
+            mFlushExecutor.schedule(this::flush, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void flush() {
+        mPendingWrites.set(0);
+        mFlushScheduled.set(false);
+        try {
+            mDiskCache.flush();
+        } catch (IOException e) {
+            Log_OC.d(TAG, "Error flushing disk cache", e);
+        }
+    }
+
     public Bitmap getScaledBitmap(String key, int width, int height) {
         Bitmap bitmap = null;
         String validKey = convertToValidKey(key);
 
+        try {
+            bitmap = decodeScaledBitmap(validKey, width, height);
+        } catch (Exception e) {
+            Log_OC.e(TAG, e.getMessage(), e);
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log_OC.d(CACHE_TEST_DISK, bitmap == null ? "not found" : "image read from disk " + validKey);
+        }
+
+        return bitmap;
+    }
+
+    private Bitmap decodeScaledBitmap(String validKey, int width, int height) throws IOException {
         try (DiskLruCache.Snapshot snapshot = mDiskCache.get(validKey)) {
             if (snapshot == null) {
                 return null;
             }
 
-            InputStream inputStream = snapshot.getInputStream(0);
-            if (inputStream != null) {
-                // First decode with inJustDecodeBounds=true to check dimensions
-                final BitmapFactory.Options options = new BitmapFactory.Options();
-                try (BufferedInputStream buffIn = new BufferedInputStream(inputStream, IO_BUFFER_SIZE)) {
-                    options.inScaled = true;
-                    options.inPurgeable = true;
-                    options.inPreferQualityOverSpeed = false;
-                    options.inMutable = false;
-                    options.inJustDecodeBounds = true;
-
-                    BitmapFactory.decodeStream(buffIn, null, options);
-                }
-
-                try (DiskLruCache.Snapshot snapshot2 = mDiskCache.get(validKey)) {
-                    inputStream = snapshot2.getInputStream(0);
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inScaled = true;
+            options.inPreferQualityOverSpeed = false;
+            options.inMutable = false;
 
-                    try (BufferedInputStream buffIn = new BufferedInputStream(inputStream, IO_BUFFER_SIZE)) {
-                        // Calculate inSampleSize
-                        options.inSampleSize = BitmapUtils.calculateSampleFactor(options, width, height);
+            if (readDimensions(snapshot.getString(DIMENSIONS_INDEX), options)) {
+                options.inSampleSize = BitmapUtils.calculateSampleFactor(options, width, height);
+            }
 
-                        // Decode bitmap with inSampleSize set
-                        options.inJustDecodeBounds = false;
-                        bitmap = BitmapFactory.decodeStream(buffIn, null, options);
-                    }
-                }
+            try (BufferedInputStream buffIn = new BufferedInputStream(snapshot.getInputStream(BITMAP_INDEX),
+                                                                      IO_BUFFER_SIZE)) {
+                return BitmapFactory.decodeStream(buffIn, null, options);
             }
-        } catch (Exception e) {
-            Log_OC.e(TAG, e.getMessage(), e);
         }
+    }
 
-        if (BuildConfig.DEBUG) {
-            Log_OC.d(CACHE_TEST_DISK, bitmap == null ? "not found" : "image read from disk " + validKey);
+    private boolean readDimensions(String dimensions, BitmapFactory.Options options) {
+        if (dimensions == null) {
+            return false;
         }
 
-        return bitmap;
+        String[] values = dimensions.split(DIMENSIONS_SEPARATOR);
+        if (values.length != 2) {
+            return false;
+        }
+
+        try {
+            options.outWidth = Integer.parseInt(values[0]);
+            options.outHeight = Integer.parseInt(values[1]);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
     }
 
     public Bitmap getBitmap(String key) {
@@ -163,7 +219,7 @@ public class DiskLruImageCache {
             if (snapshot == null) {
                 return null;
             }
-            in = snapshot.getInputStream(0);
+            in = snapshot.getInputStream(BITMAP_INDEX);
             if (in != null) {
                 buffIn = new BufferedInputStream(in, IO_BUFFER_SIZE);
                 bitmap = BitmapFactory.decodeStream(buffIn);
@@ -362,14 +362,14 @@ public class LocalFileListAdapter extends RecyclerView.Adapter<RecyclerView.View
             }
 
             if (!fileList.isEmpty()) {
-                FileSortOrder sortOrder = preferences.getSortOrderByType(FileSortOrder.Type.localFileListView);
-                fileList = sortOrder.sortLocalFiles(fileList);
-
-                // Fetch preferences for showing hidden files
+                // Fetch preferences for showing hidden files, filter before sorting to sort less files
                 boolean showHiddenFiles = preferences.isShowHiddenFilesEnabled();
                 if (!showHiddenFiles) {
                     fileList = filterHiddenFiles(fileList);
                 }
+
+                FileSortOrder sortOrder = preferences.getSortOrderByType(FileSortOrder.Type.localFileListView);
+                fileList = sortOrder.sortLocalFiles(fileList);
             }
             final List<File> newFiles = fileList;
 
@@ -30,7 +30,6 @@ import android.accounts.AuthenticatorException;
 import android.accounts.OperationCanceledException;
 import android.annotation.SuppressLint;
 import android.app.Activity;
-import android.content.ContentValues;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
@@ -61,7 +60,7 @@ import com.owncloud.android.datamodel.ThumbnailsCacheManager;
 import com.owncloud.android.datamodel.VirtualFolderType;
 import com.owncloud.android.datamodel.e2e.v1.decrypted.DecryptedFolderMetadataFileV1;
 import com.owncloud.android.datamodel.e2e.v2.decrypted.DecryptedFolderMetadataFile;
-import com.owncloud.android.db.ProviderMeta;
+import com.owncloud.android.lib.common.OwnCloudClient;
 import com.owncloud.android.lib.common.OwnCloudClientFactory;
 import com.owncloud.android.lib.common.accounts.AccountUtils;
 import com.owncloud.android.lib.common.operations.RemoteOperation;
@@ -71,12 +70,12 @@ import com.owncloud.android.lib.resources.shares.OCShare;
 import com.owncloud.android.lib.resources.shares.ShareType;
 import com.owncloud.android.lib.resources.shares.ShareeUser;
 import com.owncloud.android.operations.RefreshFolderOperation;
-import com.owncloud.android.operations.RemoteOperationFailedException;
 import com.owncloud.android.ui.activity.ComponentsGetter;
 import com.owncloud.android.ui.fragment.SearchType;
 import com.owncloud.android.ui.interfaces.OCFileListFragmentInterface;
 import com.owncloud.android.ui.preview.PreviewTextFragment;
 import com.owncloud.android.utils.DisplayUtils;
+import com.owncloud.android.utils.EncryptionUtils;
 import com.owncloud.android.utils.FileSortOrder;
 import com.owncloud.android.utils.FileStorageUtils;
 import com.owncloud.android.utils.MimeTypeUtil;
@@ -89,14 +88,24 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import me.zhanghai.android.fastscroll.PopupTextProvider;
@@ -129,6 +138,7 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
     private static final int VIEWTYPE_ITEM = 1;
     private static final int VIEWTYPE_IMAGE = 2;
     private static final int VIEWTYPE_HEADER = 3;
+    private static final long LOAD_THREAD_KEEP_ALIVE_SECONDS = 30;
 
     private boolean onlyOnDevice;
     private final OCFileListDelegate ocFileListDelegate;
@@ -141,6 +151,14 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
     private final long footerId = UUID.randomUUID().getLeastSignificantBits();
     private final long headerId = UUID.randomUUID().getLeastSignificantBits();
 
+    private final ExecutorService loadExecutor = createLoadExecutor();
+    private final ExecutorService folderRefreshExecutor = createLoadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Increased whenever the shown files are replaced, so that a folder load finishing later does not replace them
+     */
+    private final AtomicInteger loadGeneration = new AtomicInteger();
+
     public OCFileListAdapter(
         Activity activity,
         @NonNull User user,
@@ -487,33 +505,6 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         }
     }
 
-    private void mergeOCFilesForLivePhoto() {
-        List<OCFile> filesToRemove = new ArrayList<>();
-
-        for (int i = 0; i < mFiles.size(); i++) {
-            OCFile file = mFiles.get(i);
-
-            for (int j = i + 1; j < mFiles.size(); j++) {
-                OCFile nextFile = mFiles.get(j);
-                String fileLocalId = String.valueOf(file.getLocalId());
-                String nextFileLinkedLocalId = nextFile.getLinkedFileIdForLivePhoto();
-
-                if (fileLocalId.equals(nextFileLinkedLocalId)) {
-                    if (MimeTypeUtil.isVideo(file.getMimeType())) {
-                        nextFile.livePhotoVideo = file;
-                        filesToRemove.add(file);
-                    } else if (MimeTypeUtil.isVideo(nextFile.getMimeType())) {
-                        file.livePhotoVideo = nextFile;
-                        filesToRemove.add(nextFile);
-                    }
-                }
-            }
-        }
-
-        mFiles.removeAll(filesToRemove);
-        filesToRemove.clear();
-    }
-
     private void updateLivePhotoIndicators(ListGridImageViewHolder holder, OCFile file) {
         boolean isLivePhoto = file.getLinkedFileIdForLivePhoto() != null;
 
@@ -724,13 +715,29 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
      * @param updatedStorageManager Optional updated storage manager; used to replace
      * @param limitToMimeType       show only files of this mimeType
      */
-    @SuppressLint("NotifyDataSetChanged")
     public void swapDirectory(
         @NonNull User account,
         @NonNull OCFile directory,
         @NonNull FileDataStorageManager updatedStorageManager,
         boolean onlyOnDevice,
         @NonNull String limitToMimeType) {
+        swapDirectory(account, directory, updatedStorageManager, onlyOnDevice, limitToMimeType, null);
+    }
+
+    /**
+     * Change the adapted directory for a new one. Content is loaded, filtered and sorted in background; a refresh of
+     * the shown directory only updates changed rows.
+     *
+     * @param onLoaded called on the main thread once the content of the directory is shown
+     */
+    @SuppressLint("NotifyDataSetChanged")
+    public void swapDirectory(
+        @NonNull User account,
+        @NonNull OCFile directory,
+        @NonNull FileDataStorageManager updatedStorageManager,
+        boolean onlyOnDevice,
+        @NonNull String limitToMimeType,
+        @Nullable Runnable onLoaded) {
         this.onlyOnDevice = onlyOnDevice;
 
         if (!updatedStorageManager.equals(mStorageManager)) {
@@ -738,29 +745,89 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
             ocFileListDelegate.setShowShareAvatar(CapabilityUtils.getCapability(account, activity).getVersion().isShareesOnDavSupported());
             this.user = account;
         }
-        if (mStorageManager != null) {
-            mFiles = mStorageManager.getFolderContent(directory, onlyOnDevice);
-            if (!preferences.isShowHiddenFilesEnabled()) {
-                mFiles = filterHiddenFiles(mFiles);
-            }
-            if (!limitToMimeType.isEmpty()) {
-                mFiles = filterByMimeType(mFiles, limitToMimeType);
-            }
-            sortOrder = preferences.getSortOrderByFolder(directory);
-            mFiles = sortOrder.sortCloudFiles(mFiles);
-            prepareListOfHiddenFiles();
-            mergeOCFilesForLivePhoto();
-            mFilesAll.clear();
-            mFilesAll.addAll(mFiles);
-            currentDirectory = directory;
-        } else {
+
+        searchType = null;
+        final int generation = loadGeneration.incrementAndGet();
+
+        if (mStorageManager == null) {
             mFiles.clear();
             mFilesAll.clear();
+            notifyDataSetChanged();
+            return;
         }
 
-        searchType = null;
+        final FileDataStorageManager storageManager = mStorageManager;
+        final boolean showHiddenFiles = preferences.isShowHiddenFilesEnabled();
+        final List<OCFile> shownFiles = mFiles;
+        final int shownFilesCount = mFiles.size();
+        // only a refresh of the same directory is worth a diff, other directories replace all rows
+        final List<OCFile> oldFiles = directory.equals(currentDirectory) ? new ArrayList<>(mFiles) : null;
 
-        notifyDataSetChanged();
+        loadExecutor.execute(() -> {
+            if (generation != loadGeneration.get()) {
+                return;
+            }
+
+            List<OCFile> files = storageManager.getFolderContent(directory, onlyOnDevice);
+            if (!showHiddenFiles) {
+                files = filterHiddenFiles(files);
+            }
+            if (!limitToMimeType.isEmpty()) {
+                files = filterByMimeType(files, limitToMimeType);
+            }
+            FileSortOrder newSortOrder = preferences.getSortOrderByFolder(directory);
+            files = newSortOrder.sortCloudFiles(files);
+            List<String> hiddenFileNames = getHiddenFileNames(files);
+            FileStorageUtils.mergeLivePhotos(files);
+
+            DiffUtil.DiffResult diffResult = null;
+            if (oldFiles != null) {
+                diffResult = DiffUtil.calculateDiff(new OCFileDiffCallback(oldFiles, files));
+            }
+
+            final List<OCFile> newFiles = files;
+            final DiffUtil.DiffResult newDiffResult = diffResult;
+            mainHandler.post(() -> {
+                if (generation != loadGeneration.get()) {
+                    return;
+                }
+
+                boolean showedHeader = shouldShowHeader();
+                // rows might have changed meanwhile, then the diff does not fit to them anymore
+                boolean rowsUnchanged = mFiles == shownFiles && mFiles.size() == shownFilesCount;
+
+                mFiles = newFiles;
+                mFilesAll.clear();
+                mFilesAll.addAll(mFiles);
+                listOfHiddenFiles.clear();
+                listOfHiddenFiles.addAll(hiddenFileNames);
+                sortOrder = newSortOrder;
+                currentDirectory = directory;
+
+                if (newDiffResult == null || !rowsUnchanged || showedHeader != shouldShowHeader()) {
+                    notifyDataSetChanged();
+                } else {
+                    int offset = showedHeader ? 1 : 0;
+                    newDiffResult.dispatchUpdatesTo(new OffsetListUpdateCallback(offset));
+                    if (showedHeader) {
+                        notifyItemChanged(0);
+                    }
+                    notifyItemChanged(mFiles.size() + offset);
+                }
+
+                if (onLoaded != null) {
+                    onLoaded.run();
+                }
+            });
+        });
+    }
+
+    /**
+     * Runs the given action on the main thread once the folder loads started before are shown, for callers reading
+     * the shown files after {@link #swapDirectory}
+     */
+    public void runWhenLoaded(Runnable action) {
+        loadExecutor.execute(() -> mainHandler.post(action));
     }
 
     public void setData(List<Object> objects,
@@ -768,6 +835,8 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
                         FileDataStorageManager storageManager,
                         @Nullable OCFile folder,
                         boolean clear) {
+        loadGeneration.incrementAndGet();
+
         if (storageManager != null && mStorageManager == null) {
             mStorageManager = storageManager;
             ocFileListDelegate.setShowShareAvatar(mStorageManager
@@ -882,72 +951,32 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
                 break;
         }
 
-        List<ContentValues> contentValues = new ArrayList<>();
-
+        // search results can contain a file more than once
+        List<OCFile> files = new ArrayList<>(objects.size());
+        Set<String> remotePaths = new HashSet<>(objects.size());
         for (Object remoteFile : objects) {
             OCFile ocFile = FileStorageUtils.fillOCFile((RemoteFile) remoteFile);
-            FileStorageUtils.searchForLocalFileInDefaultPath(ocFile, user.getAccountName());
-
-            try {
-                ocFile = mStorageManager.saveFileWithParent(ocFile, activity);
-
-                OCFile parentFolder = mStorageManager.getFileById(ocFile.getParentId());
-                if (parentFolder != null && (ocFile.isEncrypted() || parentFolder.isEncrypted())) {
-                    Object object = RefreshFolderOperation.getDecryptedFolderMetadata(
-                        true,
-                        parentFolder,
-                        OwnCloudClientFactory.createOwnCloudClient(user.toPlatformAccount(), activity),
-                        user,
-                        activity);
-
-                    if (object == null) {
-                        throw new IllegalStateException("metadata is null!");
-                    }
-
-                    if (object instanceof DecryptedFolderMetadataFileV1) {
-                        // update ocFile
-                        RefreshFolderOperation.updateFileNameForEncryptedFileV1(mStorageManager,
-                                                                                (DecryptedFolderMetadataFileV1) object,
-                                                                                ocFile);
-                    } else {
-                        // update ocFile
-                        RefreshFolderOperation.updateFileNameForEncryptedFile(mStorageManager,
-                                                                              (DecryptedFolderMetadataFile) object,
-                                                                              ocFile);
-                    }
-
-                    ocFile = mStorageManager.saveFileWithParent(ocFile, activity);
-                }
+            if (remotePaths.add(ocFile.getRemotePath())) {
+                FileStorageUtils.searchForLocalFileInDefaultPath(ocFile, user.getAccountName());
+                files.add(ocFile);
+            }
+        }
 
-                if (SearchType.GALLERY_SEARCH != searchType) {
-                    // also sync folder content
-                    if (ocFile.isFolder()) {
-                        long currentSyncTime = System.currentTimeMillis();
-                        RemoteOperation refreshFolderOperation = new RefreshFolderOperation(ocFile,
-                                                                                            currentSyncTime,
-                                                                                            true,
-                                                                                            false,
-                                                                                            mStorageManager,
-                                                                                            user,
-                                                                                            activity);
-                        refreshFolderOperation.execute(user, activity);
-                    }
-                }
+        Map<Long, OCFile> parentFolders = mStorageManager.saveParentFolders(files, activity);
+        List<OCFile> savedFiles = new ArrayList<>(files.size());
+        for (OCFile ocFile : files) {
+            OCFile parentFolder = parentFolders.get(ocFile.getParentId());
+            if (parentFolder == null) {
+                Log_OC.e(TAG, "Error saving file with parent " + ocFile.getRemotePath());
+                continue;
+            }
 
-                if (!onlyMedia || MimeTypeUtil.isImage(ocFile) || MimeTypeUtil.isVideo(ocFile)) {
-                    //handling duplicates for favorites section
-                    if (mFiles.isEmpty() || !mFiles.contains(ocFile)) {
-                        mFiles.add(ocFile);
-                    }
+            try {
+                if (ocFile.isEncrypted() || parentFolder.isEncrypted()) {
+                    updateEncryptedFileName(ocFile, parentFolder);
                 }
-
-                ContentValues cv = new ContentValues();
-                cv.put(ProviderMeta.ProviderTableMeta.VIRTUAL_TYPE, type.toString());
-                cv.put(ProviderMeta.ProviderTableMeta.VIRTUAL_OCFILE_ID, ocFile.getFileId());
-
-                contentValues.add(cv);
+                savedFiles.add(ocFile);
             } catch (
-                RemoteOperationFailedException |
                 OperationCanceledException |
                 AuthenticatorException |
                 IOException |
@@ -957,11 +986,79 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
             }
         }
 
+        mStorageManager.saveVirtualFolderContent(savedFiles, type);
+
+        //handling duplicates for favorites section
+        Set<OCFile> shownFiles = new HashSet<>(mFiles);
+        List<OCFile> folders = new ArrayList<>();
+        for (OCFile ocFile : savedFiles) {
+            boolean shown = !onlyMedia || MimeTypeUtil.isImage(ocFile) || MimeTypeUtil.isVideo(ocFile);
+            if (shown && shownFiles.add(ocFile)) {
+                mFiles.add(ocFile);
+            }
+            if (ocFile.isFolder()) {
+                folders.add(ocFile);
+            }
+        }
+
+        if (SearchType.GALLERY_SEARCH != searchType) {
+            refreshFoldersLater(folders);
+        }
+
         preferences.setPhotoSearchTimestamp(System.currentTimeMillis());
-        mStorageManager.saveVirtuals(contentValues);
+    }
+
+    /**
+     * Sets the decrypted name of a file in an encrypted folder, the metadata of the folder is cached after its first
+     * file
+     */
+    private void updateEncryptedFileName(OCFile ocFile, OCFile parentFolder)
+        throws OperationCanceledException, AuthenticatorException, IOException,
+        AccountUtils.AccountNotFoundException {
+        OwnCloudClient client = OwnCloudClientFactory.createOwnCloudClient(user.toPlatformAccount(), activity);
+        // the search may find files unknown to the app, whose parent folder has an outdated ETag
+        Object object = EncryptionUtils.getFolderMetadata(parentFolder, client, activity, user, ocFile.getFileName());
+
+        if (object == null) {
+            throw new IllegalStateException("metadata is null!");
+        }
+
+        if (object instanceof DecryptedFolderMetadataFileV1) {
+            RefreshFolderOperation.updateFileNameForEncryptedFileV1(mStorageManager,
+                                                                    (DecryptedFolderMetadataFileV1) object,
+                                                                    ocFile);
+        } else {
+            RefreshFolderOperation.updateFileNameForEncryptedFile(mStorageManager,
+                                                                  (DecryptedFolderMetadataFile) object,
+                                                                  ocFile);
+        }
+    }
+
+    /**
+     * Syncs the content of found folders after the search results are shown, one folder after the other. Pending
+     * syncs are dropped when other files are shown.
+     */
+    private void refreshFoldersLater(List<OCFile> folders) {
+        final int generation = loadGeneration.get();
+        for (OCFile folder : folders) {
+            folderRefreshExecutor.execute(() -> {
+                if (generation != loadGeneration.get()) {
+                    return;
+                }
+                RemoteOperation refreshFolderOperation = new RefreshFolderOperation(folder,
+                                                                                    System.currentTimeMillis(),
+                                                                                    true,
+                                                                                    false,
+                                                                                    mStorageManager,
+                                                                                    user,
+                                                                                    activity);
+                refreshFolderOperation.execute(user, activity);
+            });
+        }
     }
 
     public void showVirtuals(VirtualFolderType type, boolean onlyImages, FileDataStorageManager storageManager) {
+        loadGeneration.incrementAndGet();
         mFiles = storageManager.getVirtualFolderContent(type, onlyImages);
 
         if (VirtualFolderType.GALLERY == type) {
@@ -996,6 +1093,7 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
     }
 
     public void setFiles(List<OCFile> files) {
+        loadGeneration.incrementAndGet();
         mFiles = files;
     }
 
@@ -1003,14 +1101,16 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
         return mFiles;
     }
 
-    private void prepareListOfHiddenFiles() {
-        listOfHiddenFiles.clear();
+    private List<String> getHiddenFileNames(List<OCFile> files) {
+        List<String> hiddenFileNames = new ArrayList<>();
 
-        mFiles.forEach(file -> {
+        files.forEach(file -> {
             if (file.shouldHide()) {
-                listOfHiddenFiles.add(file.getFileName());
+                hiddenFileNames.add(file.getFileName());
             }
         });
+
+        return hiddenFileNames;
     }
 
     public void resetLastTimestamp() {
@@ -1051,9 +1151,10 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
      */
     private List<OCFile> filterHiddenFiles(List<OCFile> files) {
         List<OCFile> ret = new ArrayList<>();
+        Set<OCFile> added = new HashSet<>();
 
         for (OCFile file : files) {
-            if (!file.isHidden() && !ret.contains(file)) {
+            if (!file.isHidden() && added.add(file)) {
                 ret.add(file);
             }
         }
@@ -1137,4 +1238,95 @@ public class OCFileListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHol
     public void notifyItemChanged(@NonNull OCFile file) {
         notifyItemChanged(getItemPosition(file));
     }
+
+    /**
+     * Loads or refreshes folders one after the other, its thread ends when idle
+     */
+    private static ExecutorService createLoadExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, LOAD_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static class OCFileDiffCallback extends DiffUtil.Callback {
+        private final List<OCFile> oldFiles;
+        private final List<OCFile> newFiles;
+
+        OCFileDiffCallback(List<OCFile> oldFiles, List<OCFile> newFiles) {
+            this.oldFiles = oldFiles;
+            this.newFiles = newFiles;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldFiles.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newFiles.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldFiles.get(oldItemPosition).getFileId() == newFiles.get(newItemPosition).getFileId();
+        }
+
+        /**
+         * Compares the ETag and the local state shown in a row, which changes without a new ETag
+         */
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            OCFile oldFile = oldFiles.get(oldItemPosition);
+            OCFile newFile = newFiles.get(newItemPosition);
+
+            return Objects.equals(oldFile.getEtag(), newFile.getEtag()) &&
+                Objects.equals(oldFile.getDecryptedFileName(), newFile.getDecryptedFileName()) &&
+                Objects.equals(oldFile.getStoragePath(), newFile.getStoragePath()) &&
+                Objects.equals(oldFile.getEtagInConflict(), newFile.getEtagInConflict()) &&
+                oldFile.getFileLength() == newFile.getFileLength() &&
+                oldFile.getModificationTimestamp() == newFile.getModificationTimestamp() &&
+                oldFile.isFavorite() == newFile.isFavorite() &&
+                oldFile.isSharedViaLink() == newFile.isSharedViaLink() &&
+                oldFile.isSharedWithSharee() == newFile.isSharedWithSharee() &&
+                Objects.equals(oldFile.getSharees(), newFile.getSharees()) &&
+                oldFile.isLocked() == newFile.isLocked() &&
+                oldFile.isEncrypted() == newFile.isEncrypted() &&
+                oldFile.getUnreadCommentsCount() == newFile.getUnreadCommentsCount() &&
+                Objects.equals(oldFile.getTags(), newFile.getTags()) &&
+                (oldFile.livePhotoVideo == null) == (newFile.livePhotoVideo == null);
+        }
+    }
+
+    /**
+     * Dispatches updates of the files, whose first one is shown at the given position
+     */
+    private class OffsetListUpdateCallback implements ListUpdateCallback {
+        private final int offset;
+
+        OffsetListUpdateCallback(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(offset + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(offset + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(offset + fromPosition, offset + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            notifyItemRangeChanged(offset + position, count, payload);
+        }
+    }
 }
@@ -37,6 +37,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.PopupMenu;
 
+import com.afollestad.sectionedrecyclerview.ItemCoord;
 import com.afollestad.sectionedrecyclerview.SectionedRecyclerViewAdapter;
 import com.afollestad.sectionedrecyclerview.SectionedViewHolder;
 import com.nextcloud.client.account.User;
@@ -72,15 +73,23 @@ import com.owncloud.android.utils.MimeTypeUtil;
 import com.owncloud.android.utils.theme.ViewThemeUtils;
 
 import java.io.File;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
 
 /**
  * This Adapter populates a ListView with following types of uploads: pending, active, completed. Filtering possible.
  */
 public class UploadListAdapter extends SectionedRecyclerViewAdapter<SectionedViewHolder> {
     private static final String TAG = UploadListAdapter.class.getSimpleName();
+    private static final int LOAD_MORE_THRESHOLD = 20;
 
     private ProgressListener progressListener;
     private final FileActivity parentActivity;
@@ -102,7 +111,7 @@ public class UploadListAdapter extends SectionedRecyclerViewAdapter<SectionedVie
 
     @Override
     public int getItemCount(int section) {
-        return uploadGroups[section].getItems().length;
+        return uploadGroups[section].getItems().size();
     }
 
     @Override
@@ -128,7 +137,8 @@ public class UploadListAdapter extends SectionedRecyclerViewAdapter<SectionedVie
                 case CURRENT -> {
                     FileUploader.FileUploaderBinder uploaderBinder = parentActivity.getFileUploaderBinder();
                     if (uploaderBinder != null) {
-                        for (OCUpload upload : group.getItems()) {
+                        // only a part of the uploads is loaded
+                        for (OCUpload upload : uploadsStorageManager.getCurrentAndPendingUploadsForCurrentAccount()) {
                             uploaderBinder.cancel(upload);
                         }
                     }
@@ -180,24 +190,39 @@ public class UploadListAdapter extends SectionedRecyclerViewAdapter<SectionedVie
         uploadGroups[0] = new UploadGroup(Type.CURRENT,
                                           parentActivity.getString(R.string.uploads_view_group_current_uploads)) {
             @Override
-            public void refresh() {
-                fixAndSortItems(uploadsStorageManager.getCurrentAndPendingUploadsForCurrentAccount());
+            List<OCUpload> getPage(String accountName, @Nullable OCUpload after) {
+                return uploadsStorageManager.getCurrentAndPendingUploadsForAccountPage(after, accountName);
+            }
+
+            @Override
+            int getCount(String accountName) {
+                return uploadsStorageManager.getCurrentAndPendingUploadsForAccountCount(accountName);
             }
         };
 
         uploadGroups[1] = new UploadGroup(Type.FAILED,
                                           parentActivity.getString(R.string.uploads_view_group_failed_uploads)) {
             @Override
-            public void refresh() {
-                fixAndSortItems(uploadsStorageManager.getFailedButNotDelayedUploadsForCurrentAccount());
+            List<OCUpload> getPage(String accountName, @Nullable OCUpload after) {
+                return uploadsStorageManager.getFailedButNotDelayedUploadsForAccountPage(after, accountName);
+            }
+
+            @Override
+            int getCount(String accountName) {
+                return uploadsStorageManager.getFailedButNotDelayedUploadsForAccountCount(accountName);
             }
         };
 
         uploadGroups[2] = new UploadGroup(Type.FINISHED,
                                           parentActivity.getString(R.string.uploads_view_group_finished_uploads)) {
             @Override
-            public void refresh() {
-                fixAndSortItems(uploadsStorageManager.getFinishedUploadsForCurrentAccount());
+            List<OCUpload> getPage(String accountName, @Nullable OCUpload after) {
+                return uploadsStorageManager.getFinishedUploadsForAccountPage(after, accountName);
+            }
+
+            @Override
+            int getCount(String accountName) {
+                return uploadsStorageManager.getFinishedUploadsForAccountCount(accountName);
             }
         };
 
@@ -741,15 +766,88 @@ public class UploadListAdapter extends SectionedRecyclerViewAdapter<SectionedVie
 
     /**
      * Load upload items from {@link UploadsStorageManager}.
+     * <p>
+     * Only the pages loaded so far are read again, and only changed rows are rebound.
      */
     public final void loadUploadItemsFromDb() {
         Log_OC.d(TAG, "loadUploadItemsFromDb");
 
-        for (UploadGroup group : uploadGroups) {
+        List<List<OCUpload>> oldItems = new ArrayList<>(uploadGroups.length);
+        int[] oldCounts = new int[uploadGroups.length];
+        boolean sectionsChanged = false;
+        for (int i = 0; i < uploadGroups.length; i++) {
+            UploadGroup group = uploadGroups[i];
+            oldItems.add(group.getItems());
+            oldCounts[i] = group.getGroupItemCount();
+
             group.refresh();
+
+            // headers are only shown for groups with uploads
+            sectionsChanged |= oldItems.get(i).isEmpty() != group.getItems().isEmpty();
         }
 
-        notifyDataSetChanged();
+        if (sectionsChanged) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        for (int i = 0; i < uploadGroups.length; i++) {
+            dispatchGroupUpdate(i, oldItems.get(i), oldCounts[i]);
+        }
+    }
+
+    /**
+     * Loads the next page of the group shown at the given position, once its last loaded uploads are close.
+     *
+     * @param lastVisiblePosition absolute adapter position of the last visible row
+     */
+    public void loadMoreIfNeeded(int lastVisiblePosition) {
+        if (lastVisiblePosition == RecyclerView.NO_POSITION || lastVisiblePosition >= getItemCount()) {
+            return;
+        }
+
+        ItemCoord coord = getRelativePosition(lastVisiblePosition);
+        UploadGroup group = uploadGroups[coord.section()];
+        if (!group.hasMore() || coord.relativePos() < group.getItems().size() - LOAD_MORE_THRESHOLD) {
+            return;
+        }
+
+        List<OCUpload> oldItems = group.getItems();
+        int oldCount = group.getGroupItemCount();
+        group.loadNextPage();
+        dispatchGroupUpdate(coord.section(), oldItems, oldCount);
+    }
+
+    private void dispatchGroupUpdate(int section, List<OCUpload> oldItems, int oldCount) {
+        UploadGroup group = uploadGroups[section];
+        List<OCUpload> newItems = group.getItems();
+        if (newItems.isEmpty()) {
+            return;
+        }
+
+        int headerPosition = getHeaderPosition(section);
+        if (oldCount != group.getGroupItemCount()) {
+            notifyItemChanged(headerPosition);
+        }
+
+        if (isSectionExpanded(section)) {
+            DiffUtil.calculateDiff(new UploadDiffCallback(oldItems, newItems))
+                .dispatchUpdatesTo(new SectionListUpdateCallback(headerPosition + 1));
+        }
+    }
+
+    /**
+     * Absolute position of the header of a group with uploads, empty groups have no header
+     */
+    private int getHeaderPosition(int section) {
+        int position = 0;
+        for (int i = 0; i < section; i++) {
+            int count = uploadGroups[i].getItems().size();
+            if (count > 0) {
+                position += 1 + (isSectionExpanded(i) ? count : 0);
+            }
+        }
+        return position;
     }
 
     /**
@@ -826,54 +924,175 @@ public class UploadListAdapter extends SectionedRecyclerViewAdapter<SectionedVie
         }
     }
 
-    interface Refresh {
-        void refresh();
-    }
-
     enum Type {
         CURRENT, FINISHED, FAILED
     }
 
-    abstract class UploadGroup implements Refresh {
-        private Type type;
-        private OCUpload[] items;
-        private String name;
+    /**
+     * Uploads of a group are loaded in pages in the order of the list. A refresh reads as many uploads as were loaded
+     * before again, so that the cost of a refresh does not depend on the number of stored uploads.
+     */
+    abstract class UploadGroup {
+        private final Type type;
+        private final String name;
+        private List<OCUpload> items = Collections.emptyList();
+        private int totalCount;
+        private String loadedAccountName;
+        @Nullable private OCUpload lastLoaded;
 
         UploadGroup(Type type, String groupName) {
             this.type = type;
             this.name = groupName;
-            items = new OCUpload[0];
         }
 
+        abstract List<OCUpload> getPage(String accountName, @Nullable OCUpload after);
+
+        abstract int getCount(String accountName);
+
         private String getGroupName() {
             return name;
         }
 
-        public OCUpload[] getItems() {
+        public List<OCUpload> getItems() {
             return items;
         }
 
         public OCUpload getItem(int position) {
-            return items[position];
+            return items.get(position);
+        }
+
+        boolean hasMore() {
+            return items.size() < totalCount;
+        }
+
+        void refresh() {
+            String accountName = accountManager.getUser().getAccountName();
+            int loadedCount = items.size();
+            if (!accountName.equals(loadedAccountName)) {
+                loadedAccountName = accountName;
+                loadedCount = 0;
+            }
+
+            totalCount = getCount(accountName);
+
+            List<OCUpload> uploads = new ArrayList<>();
+            OCUpload after = null;
+            do {
+                List<OCUpload> page = getPage(accountName, after);
+                if (page.isEmpty()) {
+                    break;
+                }
+                uploads.addAll(page);
+                after = page.get(page.size() - 1);
+            } while (uploads.size() < loadedCount);
+
+            lastLoaded = after;
+            fixAndSortItems(uploads);
         }
 
-        public void setItems(OCUpload... items) {
-            this.items = items;
+        void loadNextPage() {
+            if (loadedAccountName == null || lastLoaded == null) {
+                return;
+            }
+
+            List<OCUpload> page = getPage(loadedAccountName, lastLoaded);
+            if (page.isEmpty()) {
+                // uploads were removed in the meantime
+                totalCount = items.size();
+                return;
+            }
+            lastLoaded = page.get(page.size() - 1);
+
+            List<OCUpload> uploads = new ArrayList<>(items.size() + page.size());
+            uploads.addAll(items);
+            uploads.addAll(page);
+            fixAndSortItems(uploads);
         }
 
-        void fixAndSortItems(OCUpload... array) {
+        void fixAndSortItems(List<OCUpload> uploads) {
             FileUploader.FileUploaderBinder binder = parentActivity.getFileUploaderBinder();
 
-            for (OCUpload upload : array) {
+            for (OCUpload upload : uploads) {
                 upload.setDataFixed(binder);
             }
-            Arrays.sort(array, new OCUploadComparator());
+            Collections.sort(uploads, new OCUploadComparator());
 
-            setItems(array);
+            items = uploads;
         }
 
         private int getGroupItemCount() {
-            return items == null ? 0 : items.length;
+            return totalCount;
+        }
+    }
+
+    private static class UploadDiffCallback extends DiffUtil.Callback {
+        private final List<OCUpload> oldItems;
+        private final List<OCUpload> newItems;
+
+        UploadDiffCallback(List<OCUpload> oldItems, List<OCUpload> newItems) {
+            this.oldItems = oldItems;
+            this.newItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldItems.get(oldItemPosition).getUploadId() == newItems.get(newItemPosition).getUploadId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            OCUpload oldItem = oldItems.get(oldItemPosition);
+            OCUpload newItem = newItems.get(newItemPosition);
+
+            return oldItem.getUploadStatus() == newItem.getUploadStatus() &&
+                oldItem.getLastResult() == newItem.getLastResult() &&
+                oldItem.isFixedUploadingNow() == newItem.isFixedUploadingNow() &&
+                oldItem.getFileSize() == newItem.getFileSize() &&
+                oldItem.getUploadEndTimestamp() == newItem.getUploadEndTimestamp() &&
+                Objects.equals(oldItem.getLocalPath(), newItem.getLocalPath()) &&
+                Objects.equals(oldItem.getRemotePath(), newItem.getRemotePath()) &&
+                Objects.equals(oldItem.getAccountName(), newItem.getAccountName());
+        }
+    }
+
+    /**
+     * Dispatches updates of a single group, whose first upload is shown at the given absolute position
+     */
+    private class SectionListUpdateCallback implements ListUpdateCallback {
+        private final int offset;
+
+        SectionListUpdateCallback(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(offset + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(offset + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(offset + fromPosition, offset + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            notifyItemRangeChanged(offset + position, count, payload);
         }
     }
 
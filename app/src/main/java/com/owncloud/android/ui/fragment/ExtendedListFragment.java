@@ -459,6 +459,18 @@ public class ExtendedListFragment extends Fragment implements
      * Restore index and position
      */
     protected void restoreIndexAndTopPosition() {
+        int firstPosition = removeIndexAndTopPosition();
+        if (firstPosition != -1) {
+            scrollToPosition(firstPosition);
+        }
+    }
+
+    /**
+     * Removes the positions saved by the last browse down, for lists whose content is loaded later
+     *
+     * @return first visible position to restore, -1 if there was no browse down before
+     */
+    protected int removeIndexAndTopPosition() {
         if (mIndexes.size() > 0) {
             // needs to be checked; not every browse-up had a browse-down before
 
@@ -469,11 +481,12 @@ public class ExtendedListFragment extends Fragment implements
             Log_OC.v(TAG, "Setting selection to position: " + firstPosition + "; top: "
                 + top + "; index: " + index);
 
-            scrollToPosition(firstPosition);
+            return firstPosition;
         }
+        return -1;
     }
 
-    private void scrollToPosition(int position) {
+    protected void scrollToPosition(int position) {
         LinearLayoutManager linearLayoutManager = (LinearLayoutManager) mRecyclerView.getLayoutManager();
 
         if (linearLayoutManager != null) {
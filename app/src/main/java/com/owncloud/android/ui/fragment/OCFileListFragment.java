@@ -927,8 +927,11 @@ public class OCFileListFragment extends ExtendedListFragment implements
 
             onRefresh(false);
 
-            // restore index and top position
-            restoreIndexAndTopPosition();
+            // restore index and top position once the parent folder is shown
+            final int firstPosition = removeIndexAndTopPosition();
+            if (firstPosition != -1) {
+                runWhenLoaded(() -> scrollToPosition(firstPosition));
+            }
 
         }   // else - should never happen now
 
@@ -1336,29 +1339,36 @@ public class OCFileListFragment extends ExtendedListFragment implements
                     }
                 }
 
+                OCFile previousDirectory = mFile;
+                final OCFile listedDirectory = directory;
+
                 mAdapter.swapDirectory(
                     accountManager.getUser(),
                     directory,
                     storageManager,
                     onlyOnDevice,
-                    mLimitToMimeType
-                                      );
+                    mLimitToMimeType,
+                    () -> {
+                        // content is loaded in background
+                        if (!isAdded()) {
+                            return;
+                        }
+
+                        if (file != null) {
+                            mAdapter.setHighlightedItem(file);
+                            int position = mAdapter.getItemPosition(file);
+                            if (position != -1) {
+                                getRecyclerView().scrollToPosition(position);
+                            }
+                        } else if (previousDirectory == null || !previousDirectory.equals(listedDirectory)) {
+                            getRecyclerView().scrollToPosition(0);
+                        }
+                    });
 
-                OCFile previousDirectory = mFile;
                 mFile = directory;
 
                 updateLayout();
 
-                if (file != null) {
-                    mAdapter.setHighlightedItem(file);
-                    int position = mAdapter.getItemPosition(file);
-                    if (position != -1) {
-                        getRecyclerView().scrollToPosition(position);
-                    }
-                } else if (previousDirectory == null || !previousDirectory.equals(directory)) {
-                    getRecyclerView().scrollToPosition(0);
-                }
-
             }
         } else if (isSearchEventSet(searchEvent)) {
             handleSearchEvent(searchEvent);
@@ -2038,4 +2048,20 @@ public class OCFileListFragment extends ExtendedListFragment implements
     public boolean isEmpty() {
         return mAdapter == null || mAdapter.isEmpty();
     }
+
+    /**
+     * Runs the given action once the directories listed before are shown, as {@link #listDirectory} loads them in
+     * background
+     */
+    public void runWhenLoaded(Runnable action) {
+        if (mAdapter == null) {
+            action.run();
+        } else {
+            mAdapter.runWhenLoaded(() -> {
+                if (isAdded()) {
+                    action.run();
+                }
+            });
+        }
+    }
 }
@@ -116,6 +116,9 @@ public class PreviewImageFragment extends FileFragment implements Injectable {
     private static final String MIME_TYPE_SVG = "image/svg+xml";
 
     private Boolean showResizedImage;
+    /**
+     * Bitmap decoded by this fragment, released in {@link #onDestroy()}; never one of the thumbnail memory cache
+     */
     private Bitmap bitmap;
 
     private static final String TAG = PreviewImageFragment.class.getSimpleName();
@@ -279,7 +282,8 @@ public class PreviewImageFragment extends FileFragment implements Injectable {
                 binding.shimmer.setVisibility(View.VISIBLE);
                 binding.shimmerThumbnail.setImageBitmap(thumbnail);
                 binding.image.setVisibility(View.GONE);
-                bitmap = thumbnail;
+                // the thumbnail is owned by the memory cache and may be shown in the file list, so it is not kept
+                // for recycling
             } else {
                 thumbnail = ThumbnailsCacheManager.mDefaultImg;
             }
@@ -37,6 +37,7 @@ import com.owncloud.android.datamodel.ArbitraryDataProviderImpl;
 import com.owncloud.android.datamodel.EncryptedFiledrop;
 import com.owncloud.android.datamodel.FileDataStorageManager;
 import com.owncloud.android.datamodel.OCFile;
+import com.owncloud.android.datamodel.e2e.FolderMetadataCache;
 import com.owncloud.android.datamodel.e2e.v1.decrypted.DecryptedFile;
 import com.owncloud.android.datamodel.e2e.v1.decrypted.DecryptedFolderMetadataFileV1;
 import com.owncloud.android.datamodel.e2e.v1.decrypted.DecryptedMetadata;
@@ -68,13 +69,22 @@ import com.owncloud.android.operations.UploadException;
 import com.owncloud.android.utils.theme.CapabilityUtils;
 
 import org.apache.commons.httpclient.HttpStatus;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.modes.GCMModeCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
@@ -105,6 +115,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
@@ -139,6 +150,8 @@ public final class EncryptionUtils {
     private static final int iterationCount = 1024;
     private static final int keyStrength = 256;
     private static final String AES_CIPHER = "AES/GCM/NoPadding";
+    private static final int GCM_TAG_LENGTH = 128 / 8;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
     private static final String AES = "AES";
     public static final String RSA_CIPHER = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
     public static final String RSA = "RSA";
@@ -482,6 +495,64 @@ public final class EncryptionUtils {
         return null;
     }
 
+    /**
+     * Like {@link #downloadFolderMetadata(OCFile, OwnCloudClient, Context, User)}, but metadata already decrypted for
+     * the current ETag and counter of the folder is taken from {@link FolderMetadataCache}. Only for reading, the
+     * returned metadata is shared and must not be changed.
+     *
+     * @return decrypted v1 or v2 metadata or null
+     */
+    public static @Nullable Object getFolderMetadata(OCFile folder,
+                                                     OwnCloudClient client,
+                                                     Context context,
+                                                     User user) {
+        Object metadata = FolderMetadataCache.get(user.getAccountName(), folder);
+        if (metadata == null) {
+            Log_OC.d(TAG, "Metadata of " + folder.getRemotePath() + " not cached, hits: " +
+                FolderMetadataCache.getHitCount() + ", misses: " + FolderMetadataCache.getMissCount());
+            metadata = downloadFolderMetadata(folder, client, context, user);
+
+            if (metadata != null) {
+                FolderMetadataCache.put(user.getAccountName(), folder, metadata);
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Like {@link #getFolderMetadata(OCFile, OwnCloudClient, Context, User)}, but cached metadata not knowing the
+     * required entry is dropped and fetched again once. The stored ETag of a folder is outdated if files were added
+     * without a refresh of the folder, e.g. by a search or an upload of another client.
+     *
+     * @param requiredName encrypted name of a file or folder that must be part of the metadata
+     * @return decrypted v1 or v2 metadata or null
+     */
+    public static @Nullable Object getFolderMetadata(OCFile folder,
+                                                     OwnCloudClient client,
+                                                     Context context,
+                                                     User user,
+                                                     String requiredName) {
+        Object metadata = getFolderMetadata(folder, client, context, user);
+
+        if (metadata != null && !containsEntry(metadata, requiredName)) {
+            Log_OC.d(TAG, "Cached metadata of " + folder.getRemotePath() + " is outdated");
+            FolderMetadataCache.invalidate(folder.getLocalId());
+            metadata = getFolderMetadata(folder, client, context, user);
+        }
+        return metadata;
+    }
+
+    private static boolean containsEntry(Object metadata, String encryptedName) {
+        if (metadata instanceof DecryptedFolderMetadataFile) {
+            com.owncloud.android.datamodel.e2e.v2.decrypted.DecryptedMetadata decryptedMetadata =
+                ((DecryptedFolderMetadataFile) metadata).getMetadata();
+            return decryptedMetadata.getFiles().containsKey(encryptedName) ||
+                decryptedMetadata.getFolders().containsKey(encryptedName);
+        } else {
+            return ((DecryptedFolderMetadataFileV1) metadata).getFiles().containsKey(encryptedName);
+        }
+    }
+
     public static E2EVersion determinateVersion(String metadata) {
         try {
             EncryptedFolderMetadataFileV1 v1 = EncryptionUtils.deserializeJSON(
@@ -645,6 +716,125 @@ public final class EncryptionUtils {
         return cipher.doFinal(fileBytes);
     }
 
+    /**
+     * Encrypts a file in chunks of {@link #STREAM_BUFFER_SIZE} bytes, so memory usage does not depend on file size.
+     *
+     * @param inputFile          plain file to crypt
+     * @param outputFile         target for encrypted content, authentication tag is appended at the end
+     * @param encryptionKeyBytes key, either from metadata or {@link EncryptionUtils#generateKey()}
+     * @param iv                 initialization vector, either from metadata or
+     *                           {@link EncryptionUtils#randomBytes(int)}
+     * @return authenticationTag
+     */
+    public static byte[] encryptFile(File inputFile, File outputFile, byte[] encryptionKeyBytes, byte[] iv)
+        throws IOException, BadPaddingException {
+        GCMModeCipher cipher = initStreamCipher(true, encryptionKeyBytes, iv);
+
+        try {
+            processStream(cipher, inputFile, outputFile);
+        } catch (InvalidCipherTextException e) {
+            throw new BadPaddingException(e.getMessage());
+        }
+
+        return cipher.getMac();
+    }
+
+    /**
+     * Decrypts a file in chunks of {@link #STREAM_BUFFER_SIZE} bytes, so memory usage does not depend on file size.
+     * Output is deleted if the authentication tag does not match.
+     *
+     * @param inputFile          encrypted file
+     * @param outputFile         target for decrypted content
+     * @param encryptionKeyBytes key from metadata
+     * @param iv                 initialization vector from metadata
+     * @param authenticationTag  authenticationTag from metadata
+     */
+    /**
+     * Compares the authentication tag at the end of an encrypted file, without decrypting it
+     *
+     * @return true if the file ends with the given authentication tag
+     */
+    public static boolean hasAuthenticationTag(File inputFile, byte[] authenticationTag) throws IOException {
+        byte[] extractedAuthenticationTag = new byte[GCM_TAG_LENGTH];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(inputFile, "r")) {
+            if (randomAccessFile.length() < GCM_TAG_LENGTH) {
+                return false;
+            }
+            randomAccessFile.seek(randomAccessFile.length() - GCM_TAG_LENGTH);
+            randomAccessFile.readFully(extractedAuthenticationTag);
+        }
+        return Arrays.equals(extractedAuthenticationTag, authenticationTag);
+    }
+
+    public static void decryptFile(File inputFile,
+                                   File outputFile,
+                                   byte[] encryptionKeyBytes,
+                                   byte[] iv,
+                                   byte[] authenticationTag,
+                                   ArbitraryDataProvider arbitraryDataProvider,
+                                   User user)
+        throws IOException, BadPaddingException {
+        // check authentication tag
+        byte[] extractedAuthenticationTag = new byte[GCM_TAG_LENGTH];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(inputFile, "r")) {
+            if (randomAccessFile.length() < GCM_TAG_LENGTH) {
+                throw new BadPaddingException("File too short");
+            }
+            randomAccessFile.seek(randomAccessFile.length() - GCM_TAG_LENGTH);
+            randomAccessFile.readFully(extractedAuthenticationTag);
+        }
+
+        if (!Arrays.equals(extractedAuthenticationTag, authenticationTag)) {
+            reportE2eError(arbitraryDataProvider, user);
+            throw new SecurityException("Tag not correct");
+        }
+
+        GCMModeCipher cipher = initStreamCipher(false, encryptionKeyBytes, iv);
+        boolean success = false;
+
+        try {
+            processStream(cipher, inputFile, outputFile);
+            success = true;
+        } catch (InvalidCipherTextException e) {
+            reportE2eError(arbitraryDataProvider, user);
+            throw new AEADBadTagException(e.getMessage());
+        } finally {
+            if (!success && outputFile.exists() && !outputFile.delete()) {
+                Log_OC.e(TAG, "Deletion of " + outputFile.getAbsolutePath() + " failed!");
+            }
+        }
+    }
+
+    private static void processStream(GCMModeCipher cipher, File inputFile, File outputFile)
+        throws IOException, InvalidCipherTextException {
+        try (InputStream inputStream = new FileInputStream(inputFile);
+             OutputStream outputStream = new FileOutputStream(outputFile)) {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            // cipher may hold back up to one block plus tag from previous chunk
+            byte[] output = new byte[STREAM_BUFFER_SIZE + 2 * GCM_TAG_LENGTH];
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1) {
+                int written = cipher.processBytes(buffer, 0, read, output, 0);
+                outputStream.write(output, 0, written);
+            }
+
+            int written = cipher.doFinal(output, 0);
+            outputStream.write(output, 0, written);
+        }
+    }
+
+    /**
+     * Lightweight GCM cipher, as it processes data incrementally in both directions. JCE providers (e.g. Conscrypt)
+     * buffer the whole input for AEAD modes until doFinal.
+     */
+    private static GCMModeCipher initStreamCipher(boolean forEncryption, byte[] encryptionKeyBytes, byte[] iv) {
+        GCMModeCipher cipher = GCMBlockCipher.newInstance(AESEngine.newInstance());
+        cipher.init(forEncryption, new AEADParameters(new KeyParameter(encryptionKeyBytes), GCM_TAG_LENGTH * 8, iv));
+
+        return cipher;
+    }
+
     /**
      * Encrypt string with RSA algorithm, ECB mode, OAEPWithSHA-256AndMGF1 padding Asymmetric encryption, with private
      * and public key
@@ -1335,6 +1525,9 @@ public static String decryptStringSymmetricAsString(String string,
     }
 
     public static String lockFolder(ServerFileInterface parentFile, OwnCloudClient client, long counter) throws UploadException {
+        // metadata is going to change, do not serve it from cache anymore
+        FolderMetadataCache.invalidate(parentFile.getLocalId());
+
         // Lock folder
         LockFileRemoteOperation lockFileOperation = new LockFileRemoteOperation(parentFile.getLocalId(),
                                                                                 counter);
@@ -1481,6 +1674,7 @@ public static String decryptStringSymmetricAsString(String string,
                                       ArbitraryDataProvider arbitraryDataProvider,
                                       User user) throws UploadException {
         RemoteOperationResult<String> uploadMetadataOperationResult;
+        FolderMetadataCache.invalidate(parentFile.getLocalId());
         if (metadataExists) {
             // update metadata
             if (version == E2EVersion.V2_0) {
@@ -31,6 +31,7 @@ import com.owncloud.android.datamodel.ArbitraryDataProvider
 import com.owncloud.android.datamodel.ArbitraryDataProviderImpl
 import com.owncloud.android.datamodel.FileDataStorageManager
 import com.owncloud.android.datamodel.OCFile
+import com.owncloud.android.datamodel.e2e.FolderMetadataCache
 import com.owncloud.android.datamodel.e2e.v1.decrypted.DecryptedFolderMetadataFileV1
 import com.owncloud.android.datamodel.e2e.v1.encrypted.EncryptedFolderMetadataFileV1
 import com.owncloud.android.datamodel.e2e.v2.decrypted.DecryptedFile
@@ -936,6 +937,7 @@ class EncryptionUtilsV2 {
         val privateKey = EncryptionUtils.PEMtoPrivateKey(privateKeyString)
 
         val signature = getMessageSignature(cert, privateKey, encryptedFolderMetadata)
+        FolderMetadataCache.invalidate(folder.localId)
         val uploadMetadataOperationResult = if (metadataExists) {
             // update metadata
             UpdateMetadataV2RemoteOperation(
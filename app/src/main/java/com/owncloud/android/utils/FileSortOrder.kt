@@ -102,6 +102,23 @@ open class FileSortOrder(@JvmField var name: String, var isAscending: Boolean) {
         }
     }
 
+    /**
+     * Reads the sort key of every file once, e.g. attributes of local files which would need a file system call on
+     * every comparison otherwise, sorts by these keys and writes the result back to [files]
+     */
+    protected fun <T, K> sortByKeys(
+        files: MutableList<T>,
+        getKey: (T) -> K,
+        comparator: Comparator<K>
+    ): MutableList<T> {
+        val keys = files.map { SortEntry(it, getKey(it)) }
+        val sortedKeys = keys.sortedWith { o1, o2 -> comparator.compare(o1.key, o2.key) }
+        sortedKeys.forEachIndexed { index, entry -> files[index] = entry.file }
+        return files
+    }
+
+    private class SortEntry<T, K>(val file: T, val key: K)
+
     open fun sortCloudFiles(files: MutableList<OCFile>): List<OCFile> {
         return sortCloudFilesByFavourite(files)
     }
@@ -61,9 +61,8 @@ class FileSortOrderByDate(name: String, ascending: Boolean) : FileSortOrder(name
      */
     override fun sortLocalFiles(files: MutableList<File>): List<File> {
         val multiplier = if (isAscending) 1 else -1
-        files.sortWith { o1: File, o2: File ->
-            multiplier * o1.lastModified().compareTo(o2.lastModified())
+        return sortByKeys(files, { it.lastModified() }) { o1: Long, o2: Long ->
+            multiplier * o1.compareTo(o2)
         }
-        return files
     }
 }
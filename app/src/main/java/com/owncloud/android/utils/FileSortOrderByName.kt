@@ -24,8 +24,9 @@ import com.owncloud.android.datamodel.OCFile
 import com.owncloud.android.lib.resources.files.model.ServerFileInterface
 import com.owncloud.android.lib.resources.trashbin.model.TrashbinFile
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
-import third_parties.daveKoeller.AlphanumComparator
+import third_parties.daveKoeller.AlphanumSortKey
 import java.io.File
+import java.text.Collator
 import java.util.Locale
 
 /**
@@ -55,15 +56,8 @@ class FileSortOrderByName internal constructor(name: String?, ascending: Boolean
     }
 
     private fun <T : ServerFileInterface> sortServerFiles(files: MutableList<T>): MutableList<T> {
-        files.sortWith { o1: ServerFileInterface, o2: ServerFileInterface ->
-            when {
-                o1.isFolder && o2.isFolder -> sortMultiplier * AlphanumComparator.compare(o1, o2)
-                o1.isFolder -> -1
-                o2.isFolder -> 1
-                else -> sortMultiplier * AlphanumComparator.compare(o1, o2)
-            }
-        }
-        return files
+        val collator = Collator.getInstance()
+        return sortByKeys(files, { NameKey(it.isFolder, AlphanumSortKey(it.fileName, collator)) }, nameComparator(true))
     }
 
     /**
@@ -72,18 +66,29 @@ class FileSortOrderByName internal constructor(name: String?, ascending: Boolean
      * @param files files to sort
      */
     override fun sortLocalFiles(files: MutableList<File>): List<File> {
-        files.sortWith { o1: File, o2: File ->
-            when {
-                o1.isDirectory && o2.isDirectory -> sortMultiplier * o1.path.lowercase(Locale.getDefault())
-                    .compareTo(o2.path.lowercase(Locale.getDefault()))
-                o1.isDirectory -> -1
-                o2.isDirectory -> 1
-                else -> sortMultiplier * AlphanumComparator.compare(
-                    o1.path.lowercase(Locale.getDefault()),
-                    o2.path.lowercase(Locale.getDefault())
-                )
-            }
+        val collator = Collator.getInstance()
+        return sortByKeys(
+            files,
+            { NameKey(it.isDirectory, AlphanumSortKey(it.path.lowercase(Locale.getDefault()), collator)) },
+            nameComparator(false)
+        )
+    }
+
+    /**
+     * Folders first
+     *
+     * @param naturalFolderOrder false to sort folders by plain string order
+     */
+    private fun nameComparator(naturalFolderOrder: Boolean) = Comparator<NameKey> { o1, o2 ->
+        when {
+            o1.isFolder && o2.isFolder && !naturalFolderOrder ->
+                sortMultiplier * o1.sortKey.string.compareTo(o2.sortKey.string)
+            o1.isFolder && o2.isFolder -> sortMultiplier * o1.sortKey.compareTo(o2.sortKey)
+            o1.isFolder -> -1
+            o2.isFolder -> 1
+            else -> sortMultiplier * o1.sortKey.compareTo(o2.sortKey)
         }
-        return files
     }
+
+    private class NameKey(val isFolder: Boolean, val sortKey: AlphanumSortKey)
 }
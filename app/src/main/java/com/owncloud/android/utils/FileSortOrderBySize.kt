@@ -53,15 +53,21 @@ class FileSortOrderBySize internal constructor(name: String?, ascending: Boolean
     }
 
     override fun sortLocalFiles(files: MutableList<File>): List<File> {
-        files.sortWith { o1: File, o2: File ->
+        return sortByKeys(files, { file ->
+            if (file.isDirectory) {
+                SizeKey(true, FileStorageUtils.getFolderSize(file))
+            } else {
+                SizeKey(false, file.length())
+            }
+        }) { o1: SizeKey, o2: SizeKey ->
             when {
-                o1.isDirectory && o2.isDirectory -> sortMultiplier * FileStorageUtils.getFolderSize(o1)
-                    .compareTo(FileStorageUtils.getFolderSize(o2))
-                o1.isDirectory -> -1
-                o2.isDirectory -> 1
-                else -> sortMultiplier * o1.length().compareTo(o2.length())
+                o1.isFolder && o2.isFolder -> sortMultiplier * o1.size.compareTo(o2.size)
+                o1.isFolder -> -1
+                o2.isFolder -> 1
+                else -> sortMultiplier * o1.size.compareTo(o2.size)
             }
         }
-        return files
     }
+
+    private class SizeKey(val isFolder: Boolean, val size: Long)
 }
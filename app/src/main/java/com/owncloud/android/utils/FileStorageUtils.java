@@ -51,9 +51,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 import javax.annotation.Nullable;
@@ -293,6 +296,58 @@ public final class FileStorageUtils {
         return files;
     }
 
+    /**
+     * Attaches the video of each live photo to its image and removes the video from the list. Pairs are found via an
+     * index of the linked file ids, instead of comparing every file with every other file.
+     *
+     * @param files files of a folder, changed in place
+     */
+    public static void mergeLivePhotos(List<OCFile> files) {
+        Map<String, List<Integer>> positionsByLinkedId = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            String linkedId = files.get(i).getLinkedFileIdForLivePhoto();
+            if (linkedId != null) {
+                positionsByLinkedId.computeIfAbsent(linkedId, id -> new ArrayList<>()).add(i);
+            }
+        }
+
+        if (positionsByLinkedId.isEmpty()) {
+            return;
+        }
+
+        boolean[] merged = new boolean[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            OCFile file = files.get(i);
+            List<Integer> linkedPositions = positionsByLinkedId.get(String.valueOf(file.getLocalId()));
+            if (linkedPositions == null) {
+                continue;
+            }
+
+            for (int j : linkedPositions) {
+                if (j <= i) {
+                    continue;
+                }
+
+                OCFile nextFile = files.get(j);
+                if (MimeTypeUtil.isVideo(file.getMimeType())) {
+                    nextFile.livePhotoVideo = file;
+                    merged[i] = true;
+                } else if (MimeTypeUtil.isVideo(nextFile.getMimeType())) {
+                    file.livePhotoVideo = nextFile;
+                    merged[j] = true;
+                }
+            }
+        }
+
+        int kept = 0;
+        for (int i = 0; i < merged.length; i++) {
+            if (!merged[i]) {
+                files.set(kept++, files.get(i));
+            }
+        }
+        files.subList(kept, files.size()).clear();
+    }
+
     public static List<OCFile> sortOcFolderDescDateModified(List<OCFile> files) {
         files = sortOcFolderDescDateModifiedWithoutFavoritesFirst(files);
 
@@ -369,6 +424,49 @@ public final class FileStorageUtils {
         }
     }
 
+    /**
+     * Same as {@link #searchForLocalFileInDefaultPath(OCFile, String)} for the children of one folder: existence of
+     * files inside the listed folder is checked against a single listing instead of a stat per file.
+     *
+     * @param file          File to associate a possible 'lost' local file.
+     * @param accountName   File owner account name.
+     * @param folder        Default save path of the parent folder.
+     * @param folderContent Names of the files in folder, see {@link #getFileNames(File)}.
+     */
+    public static void searchForLocalFileInDefaultPath(OCFile file,
+                                                       String accountName,
+                                                       File folder,
+                                                       Set<String> folderContent) {
+        if (file.isFolder() ||
+            file.getStoragePath() != null && exists(new File(file.getStoragePath()), folder, folderContent)) {
+            return;
+        }
+
+        File f = new File(FileStorageUtils.getDefaultSavePathFor(accountName, file));
+        if (exists(f, folder, folderContent)) {
+            file.setStoragePath(f.getAbsolutePath());
+            file.setLastSyncDateForData(f.lastModified());
+        }
+    }
+
+    private static boolean exists(File file, File folder, Set<String> folderContent) {
+        if (folder.equals(file.getParentFile())) {
+            return folderContent.contains(file.getName());
+        }
+        return file.exists();
+    }
+
+    /**
+     * @return names of all files and folders inside folder, empty if it does not exist
+     */
+    public static Set<String> getFileNames(File folder) {
+        String[] names = folder.list();
+        if (names == null) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(Arrays.asList(names));
+    }
+
     @SuppressFBWarnings(value="OBL_UNSATISFIED_OBLIGATION_EXCEPTION_EDGE",
             justification="False-positive on the output stream")
     public static boolean copyFile(File src, File target) {
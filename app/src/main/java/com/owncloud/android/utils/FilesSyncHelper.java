@@ -34,8 +34,11 @@ import com.nextcloud.client.account.UserAccountManager;
 import com.nextcloud.client.device.BatteryStatus;
 import com.nextcloud.client.device.PowerManagementService;
 import com.nextcloud.client.jobs.BackgroundJobManager;
+import com.nextcloud.client.jobs.MediaStoreScanner;
 import com.nextcloud.client.network.ConnectivityService;
 import com.owncloud.android.MainApp;
+import com.owncloud.android.datamodel.ArbitraryDataProvider;
+import com.owncloud.android.datamodel.ArbitraryDataProviderImpl;
 import com.owncloud.android.datamodel.FilesystemDataProvider;
 import com.owncloud.android.datamodel.MediaFolderType;
 import com.owncloud.android.datamodel.SyncedFolder;
@@ -78,30 +81,37 @@ public final class FilesSyncHelper {
         final long enabledTimestampMs = syncedFolder.getEnabledTimestampMs();
 
         if (syncedFolder.isEnabled() && (syncedFolder.isExisting() || enabledTimestampMs >= 0)) {
+            final FilesystemDataProvider.Batch batch =
+                new FilesystemDataProvider(contentResolver).startBatch(syncedFolder);
+
             MediaFolderType mediaType = syncedFolder.getType();
             if (mediaType == MediaFolderType.IMAGE) {
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Images.Media.INTERNAL_CONTENT_URI
-                    , syncedFolder);
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                                                    syncedFolder);
+                long dateAdded = FilesSyncHelper.insertContentIntoDB(MediaStore.Images.Media.INTERNAL_CONTENT_URI
+                    , syncedFolder, batch);
+                dateAdded = Math.max(dateAdded,
+                                     FilesSyncHelper.insertContentIntoDB(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                                                                         syncedFolder, batch));
+                batch.apply();
+                storeMediaWatermark(context, syncedFolder, dateAdded);
             } else if (mediaType == MediaFolderType.VIDEO) {
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Video.Media.INTERNAL_CONTENT_URI,
-                                                    syncedFolder);
-                FilesSyncHelper.insertContentIntoDB(MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-                                                    syncedFolder);
+                long dateAdded = FilesSyncHelper.insertContentIntoDB(MediaStore.Video.Media.INTERNAL_CONTENT_URI,
+                                                                     syncedFolder, batch);
+                dateAdded = Math.max(dateAdded,
+                                     FilesSyncHelper.insertContentIntoDB(MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
+                                                                         syncedFolder, batch));
+                batch.apply();
+                storeMediaWatermark(context, syncedFolder, dateAdded);
             } else {
                 try {
-                    FilesystemDataProvider filesystemDataProvider = new FilesystemDataProvider(contentResolver);
                     Path path = Paths.get(syncedFolder.getLocalPath());
 
                     Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
                         @Override
                         public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
-                            File file = path.toFile();
                             if (syncedFolder.isExisting() || attrs.lastModifiedTime().toMillis() >= enabledTimestampMs) {
-                                filesystemDataProvider.storeOrUpdateFileValue(path.toAbsolutePath().toString(),
-                                                                              attrs.lastModifiedTime().toMillis(),
-                                                                              file.isDirectory(), syncedFolder);
+                                batch.storeOrUpdateFileValue(path.toAbsolutePath().toString(),
+                                                             attrs.lastModifiedTime().toMillis(),
+                                                             attrs.isDirectory());
                             }
 
                             return FileVisitResult.CONTINUE;
@@ -115,33 +125,64 @@ public final class FilesSyncHelper {
                 } catch (IOException e) {
                     Log_OC.e(TAG, "Something went wrong while indexing files for auto upload", e);
                 }
+                batch.apply();
             }
         }
     }
 
+    /**
+     * Remembers the newest MediaStore entry seen by a full scan, so that {@link MediaStoreScanner} only has to read
+     * entries added afterwards.
+     */
+    private static void storeMediaWatermark(Context context, SyncedFolder syncedFolder, long dateAdded) {
+        if (dateAdded < 0) {
+            return;
+        }
+
+        ArbitraryDataProvider arbitraryDataProvider = new ArbitraryDataProviderImpl(context);
+        String key = MediaStoreScanner.getWatermarkKey(syncedFolder);
+        if (dateAdded > arbitraryDataProvider.getLongValue(syncedFolder.getAccount(), key)) {
+            arbitraryDataProvider.storeOrUpdateKeyValue(syncedFolder.getAccount(), key, dateAdded);
+        }
+    }
+
+    /**
+     * @param skipMedia true to skip image and video folders, e.g. because {@link MediaStoreScanner} already indexed
+     *                  their changes
+     */
     public static void insertAllDBEntries(boolean skipCustom,
+                                          boolean skipMedia,
                                           SyncedFolderProvider syncedFolderProvider) {
         for (SyncedFolder syncedFolder : syncedFolderProvider.getSyncedFolders()) {
-            if (syncedFolder.isEnabled() && (!skipCustom || syncedFolder.getType() != MediaFolderType.CUSTOM)) {
+            if (syncedFolder.isEnabled() &&
+                (!skipCustom || syncedFolder.getType() != MediaFolderType.CUSTOM) &&
+                (!skipMedia || !MediaStoreScanner.isMediaFolder(syncedFolder))) {
                 insertAllDBEntriesForSyncedFolder(syncedFolder);
             }
         }
     }
 
-    private static void insertContentIntoDB(Uri uri, SyncedFolder syncedFolder) {
+    /**
+     * @return newest {@link MediaStore.MediaColumns#DATE_ADDED} of the folder content, -1 if there is none
+     */
+    private static long insertContentIntoDB(Uri uri, SyncedFolder syncedFolder, FilesystemDataProvider.Batch batch) {
         final Context context = MainApp.getAppContext();
-        final ContentResolver contentResolver = context.getContentResolver();
 
         Cursor cursor;
         int column_index_data;
         int column_index_date_modified;
 
-        final FilesystemDataProvider filesystemDataProvider = new FilesystemDataProvider(contentResolver);
-
         String contentPath;
         boolean isFolder;
 
-        String[] projection = {MediaStore.MediaColumns.DATA, MediaStore.MediaColumns.DATE_MODIFIED};
+        int column_index_date_added;
+        long maxDateAdded = -1;
+
+        String[] projection = {
+            MediaStore.MediaColumns.DATA,
+            MediaStore.MediaColumns.DATE_MODIFIED,
+            MediaStore.MediaColumns.DATE_ADDED
+        };
 
         String path = syncedFolder.getLocalPath();
         if (!path.endsWith(PATH_SEPARATOR)) {
@@ -157,17 +198,19 @@ public final class FilesSyncHelper {
         if (cursor != null) {
             column_index_data = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATA);
             column_index_date_modified = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_MODIFIED);
+            column_index_date_added = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_ADDED);
             while (cursor.moveToNext()) {
                 contentPath = cursor.getString(column_index_data);
+                maxDateAdded = Math.max(maxDateAdded, cursor.getLong(column_index_date_added));
                 isFolder = new File(contentPath).isDirectory();
                 if (syncedFolder.isExisting() || cursor.getLong(column_index_date_modified) >= enabledTimestampMs / 1000.0) {
-                    filesystemDataProvider.storeOrUpdateFileValue(contentPath,
-                                                                  cursor.getLong(column_index_date_modified), isFolder,
-                                                                  syncedFolder);
+                    batch.storeOrUpdateFileValue(contentPath, cursor.getLong(column_index_date_modified), isFolder);
                 }
             }
             cursor.close();
         }
+
+        return maxDateAdded;
     }
 
     public static void restartJobsIfNeeded(final UploadsStorageManager uploadsStorageManager,
@@ -28,9 +28,9 @@ import com.owncloud.android.lib.resources.files.model.ServerFileInterface;
 
 import java.io.File;
 import java.io.Serializable;
-import java.math.BigInteger;
 import java.text.Collator;
 import java.util.Comparator;
+import java.util.Locale;
 
 /*
  * This is an updated version with enhancements made by Daniel Migowski, Andre Bogus, and David Koelle
@@ -49,29 +49,26 @@ import java.util.Comparator;
  * by Tobias Kaminsky
  */
 public class AlphanumComparator<T> implements Comparator<T>, Serializable {
-    private static boolean isDigit(char ch) {
+    private static final ThreadLocal<LocaleCollator> COLLATOR = new ThreadLocal<>();
+
+    static boolean isDigit(char ch) {
         return ch >= 48 && ch <= 57;
     }
 
-    private static boolean isSpecialChar(char ch) {
+    static boolean isSpecialChar(char ch) {
         return ch <= 47 || ch >= 58 && ch <= 64 || ch >= 91 && ch <= 96 || ch >= 123 && ch <= 126;
     }
 
     /**
      * Length of string is passed in for improved efficiency (only need to calculate it once)
+     *
+     * @return end (exclusive) of the chunk starting at marker
      **/
-    private static String getChunk(String string, int stringLength, int marker) {
-        StringBuilder chunk = new StringBuilder();
+    static int getChunkEnd(String string, int stringLength, int marker) {
         char c = string.charAt(marker);
-        chunk.append(c);
         marker++;
         if (isDigit(c)) {
-            while (marker < stringLength) {
-                c = string.charAt(marker);
-                if (!isDigit(c)) {
-                    break;
-                }
-                chunk.append(c);
+            while (marker < stringLength && isDigit(string.charAt(marker))) {
                 marker++;
             }
         } else if (!isSpecialChar(c)) {
@@ -80,11 +77,71 @@ public class AlphanumComparator<T> implements Comparator<T>, Serializable {
                 if (isDigit(c) || isSpecialChar(c)) {
                     break;
                 }
-                chunk.append(c);
                 marker++;
             }
         }
-        return chunk.toString();
+        return marker;
+    }
+
+    /**
+     * Compares two chunks of digits by value, if equal by their count of leading zeros; works on numbers of any
+     * length without parsing them
+     */
+    static int compareNumbers(String s1, int start1, int end1, String s2, int start2, int end2) {
+        int zeros1 = countLeadingZeros(s1, start1, end1);
+        int zeros2 = countLeadingZeros(s2, start2, end2);
+        int digits1 = end1 - start1 - zeros1;
+        int digits2 = end2 - start2 - zeros2;
+
+        if (digits1 != digits2) {
+            return digits1 < digits2 ? -1 : 1;
+        }
+
+        for (int i = 0; i < digits1; i++) {
+            char c1 = s1.charAt(start1 + zeros1 + i);
+            char c2 = s2.charAt(start2 + zeros2 + i);
+            if (c1 != c2) {
+                return c1 < c2 ? -1 : 1;
+            }
+        }
+
+        // value is equal, compare leading zeros
+        return Integer.compare(zeros1, zeros2);
+    }
+
+    private static int countLeadingZeros(String string, int start, int end) {
+        int zeros = 0;
+        while (start + zeros < end && string.charAt(start + zeros) == '0') {
+            zeros++;
+        }
+        return zeros;
+    }
+
+    /**
+     * Special chars are single char chunks, a dot comes first
+     */
+    static int compareSpecialChars(char c1, char c2) {
+        if (c1 == '.' && c2 != '.') {
+            return -1;
+        } else if (c2 == '.' && c1 != '.') {
+            return 1;
+        } else {
+            return c1 - c2;
+        }
+    }
+
+    /**
+     * Collator of the current locale, created once per thread as creating one is expensive and instances are not
+     * safe to share between threads
+     */
+    private static Collator getCollator() {
+        Locale locale = Locale.getDefault();
+        LocaleCollator localeCollator = COLLATOR.get();
+        if (localeCollator == null || !localeCollator.locale.equals(locale)) {
+            localeCollator = new LocaleCollator(locale, Collator.getInstance(locale));
+            COLLATOR.set(localeCollator);
+        }
+        return localeCollator.collator;
     }
 
     public static int compare(ServerFileInterface o1, ServerFileInterface o2) {
@@ -105,6 +162,10 @@ public class AlphanumComparator<T> implements Comparator<T>, Serializable {
         return compare(t1.toString(), t2.toString());
     }
 
+    /**
+     * Compares chunks in place, without copying them. For sorting many strings, {@link AlphanumSortKey} also avoids
+     * splitting and collating the same string again on every comparison.
+     */
     public static int compare(String s1, String s2) {
         int thisMarker = 0;
         int thatMarker = 0;
@@ -112,86 +173,46 @@ public class AlphanumComparator<T> implements Comparator<T>, Serializable {
         int s2Length = s2.length();
 
         while (thisMarker < s1Length && thatMarker < s2Length) {
-            String thisChunk = getChunk(s1, s1Length, thisMarker);
-            thisMarker += thisChunk.length();
-
-            String thatChunk = getChunk(s2, s2Length, thatMarker);
-            thatMarker += thatChunk.length();
+            int thisEnd = getChunkEnd(s1, s1Length, thisMarker);
+            int thatEnd = getChunkEnd(s2, s2Length, thatMarker);
+            char thisChar = s1.charAt(thisMarker);
+            char thatChar = s2.charAt(thatMarker);
 
+            int result;
             // If both chunks contain numeric characters, sort them numerically
-            int result = 0;
-            if (isDigit(thisChunk.charAt(0)) && isDigit(thatChunk.charAt(0))) {
-                // extract digits
-                int thisChunkZeroCount = 0;
-                boolean zero = true;
-                int countThis = 0;
-                while (countThis < (thisChunk.length()) && isDigit(thisChunk.charAt(countThis))) {
-                    if (zero) {
-                        if (Character.getNumericValue(thisChunk.charAt(countThis)) == 0) {
-                            thisChunkZeroCount++;
-                        } else {
-                            zero = false;
-                        }
-                    }
-                    countThis++;
-                }
-
-
-                int thatChunkZeroCount = 0;
-                int countThat = 0;
-                zero = true;
-                while (countThat < (thatChunk.length()) && isDigit(thatChunk.charAt(countThat))) {
-                    if (zero) {
-                        if (Character.getNumericValue(thatChunk.charAt(countThat)) == 0) {
-                            thatChunkZeroCount++;
-                        } else {
-                            zero = false;
-                        }
-                    }
-                    countThat++;
-                }
-
-                BigInteger thisChunkValue = new BigInteger(thisChunk.substring(0, countThis));
-                BigInteger thatChunkValue = new BigInteger(thatChunk.substring(0, countThat));
-
-                result = thisChunkValue.compareTo(thatChunkValue);
-
-                if (result == 0) {
-                    // value is equal, compare leading zeros
-                    result = Integer.compare(thisChunkZeroCount, thatChunkZeroCount);
-
-                    if (result != 0) {
-                        return result;
-                    }
-                } else {
-                    return result;
-                }
-            } else if (isSpecialChar(thisChunk.charAt(0)) && isSpecialChar(thatChunk.charAt(0))) {
-                for (int i = 0; i < thisChunk.length(); i++) {
-                    if (thisChunk.charAt(i) == '.' && thatChunk.charAt(i) != '.') {
-                        return -1;
-                    } else if (thatChunk.charAt(i) == '.' && thisChunk.charAt(i) != '.') {
-                        return 1;
-                    } else {
-                        result = thisChunk.charAt(i) - thatChunk.charAt(i);
-                        if (result != 0) {
-                            return result;
-                        }
-                    }
-                }
-            } else if (isSpecialChar(thisChunk.charAt(0)) && !isSpecialChar(thatChunk.charAt(0))) {
+            if (isDigit(thisChar) && isDigit(thatChar)) {
+                result = compareNumbers(s1, thisMarker, thisEnd, s2, thatMarker, thatEnd);
+            } else if (isSpecialChar(thisChar) && isSpecialChar(thatChar)) {
+                result = compareSpecialChars(thisChar, thatChar);
+            } else if (isSpecialChar(thisChar)) {
                 return -1;
-            } else if (!isSpecialChar(thisChunk.charAt(0)) && isSpecialChar(thatChunk.charAt(0))) {
+            } else if (isSpecialChar(thatChar)) {
                 return 1;
+            } else if (thisEnd - thisMarker == thatEnd - thatMarker &&
+                s1.regionMatches(thisMarker, s2, thatMarker, thisEnd - thisMarker)) {
+                result = 0;
             } else {
-                result = Collator.getInstance().compare(thisChunk, thatChunk);
+                result = getCollator().compare(s1.substring(thisMarker, thisEnd), s2.substring(thatMarker, thatEnd));
             }
 
             if (result != 0) {
                 return result;
             }
+
+            thisMarker = thisEnd;
+            thatMarker = thatEnd;
         }
 
         return s1Length - s2Length;
     }
+
+    private static final class LocaleCollator {
+        private final Locale locale;
+        private final Collator collator;
+
+        private LocaleCollator(Locale locale, Collator collator) {
+            this.locale = locale;
+            this.collator = collator;
+        }
+    }
 }
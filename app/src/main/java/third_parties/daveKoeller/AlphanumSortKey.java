@@ -0,0 +1,129 @@
+/*
+ * The Alphanum Algorithm is an improved sorting algorithm for strings
+ * containing numbers.  Instead of sorting numbers in ASCII order like
+ * a standard sort, this algorithm sorts numbers in numeric order.
+ *
+ * The Alphanum Algorithm is discussed at http://www.DaveKoelle.com
+ *
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package third_parties.daveKoeller;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+
+/*
+ * Precomputed form of a string for sorting it like AlphanumComparator does.
+ *
+ * The string is split into chunks once, and text chunks are compared by their CollationKey, computed once when the
+ * chunk is compared for the first time. Sorting n strings then does not split and collate each of them again on all
+ * of its log n comparisons.
+ *
+ * Keys are only comparable with keys created for the same Collator, and like it they must not be shared between
+ * threads.
+ */
+public final class AlphanumSortKey implements Comparable<AlphanumSortKey> {
+    private final String string;
+    private final Collator collator;
+
+    /**
+     * start of each chunk, followed by the length of the string
+     */
+    private final int[] chunkBounds;
+    private CollationKey[] collationKeys;
+
+    public AlphanumSortKey(String string, Collator collator) {
+        this.string = string;
+        this.collator = collator;
+
+        int length = string.length();
+        int[] bounds = new int[Math.min(length, 16) + 1];
+        int count = 0;
+        int marker = 0;
+        while (marker < length) {
+            if (count + 1 == bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[count++] = marker;
+            marker = AlphanumComparator.getChunkEnd(string, length, marker);
+        }
+        bounds[count] = length;
+
+        chunkBounds = count + 1 == bounds.length ? bounds : Arrays.copyOf(bounds, count + 1);
+    }
+
+    public String getString() {
+        return string;
+    }
+
+    private int getChunkCount() {
+        return chunkBounds.length - 1;
+    }
+
+    private CollationKey getCollationKey(int chunk) {
+        if (collationKeys == null) {
+            collationKeys = new CollationKey[getChunkCount()];
+        }
+
+        CollationKey collationKey = collationKeys[chunk];
+        if (collationKey == null) {
+            collationKey = collator.getCollationKey(string.substring(chunkBounds[chunk], chunkBounds[chunk + 1]));
+            collationKeys[chunk] = collationKey;
+        }
+        return collationKey;
+    }
+
+    @Override
+    public int compareTo(AlphanumSortKey other) {
+        String s1 = string;
+        String s2 = other.string;
+        int chunkCount = Math.min(getChunkCount(), other.getChunkCount());
+
+        for (int i = 0; i < chunkCount; i++) {
+            int thisStart = chunkBounds[i];
+            int thisEnd = chunkBounds[i + 1];
+            int thatStart = other.chunkBounds[i];
+            int thatEnd = other.chunkBounds[i + 1];
+            char thisChar = s1.charAt(thisStart);
+            char thatChar = s2.charAt(thatStart);
+
+            int result;
+            if (AlphanumComparator.isDigit(thisChar) && AlphanumComparator.isDigit(thatChar)) {
+                result = AlphanumComparator.compareNumbers(s1, thisStart, thisEnd, s2, thatStart, thatEnd);
+            } else if (AlphanumComparator.isSpecialChar(thisChar) && AlphanumComparator.isSpecialChar(thatChar)) {
+                result = AlphanumComparator.compareSpecialChars(thisChar, thatChar);
+            } else if (AlphanumComparator.isSpecialChar(thisChar)) {
+                return -1;
+            } else if (AlphanumComparator.isSpecialChar(thatChar)) {
+                return 1;
+            } else if (thisEnd - thisStart == thatEnd - thatStart &&
+                s1.regionMatches(thisStart, s2, thatStart, thisEnd - thisStart)) {
+                result = 0;
+            } else {
+                result = getCollationKey(i).compareTo(other.getCollationKey(i));
+            }
+
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        return s1.length() - s2.length();
+    }
+}
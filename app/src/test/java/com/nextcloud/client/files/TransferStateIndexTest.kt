@@ -0,0 +1,88 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.files
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class TransferStateIndexTest {
+
+    companion object {
+        private const val ACCOUNT = "user@https://nextcloud.localhost/sub"
+        private const val OTHER_ACCOUNT = "other@https://nextcloud.localhost/sub"
+    }
+
+    private val index = TransferStateIndex<Long>()
+
+    @Test
+    fun exactPathIsFound() {
+        index.put(1, ACCOUNT, "/Photos/a.jpg")
+
+        assertTrue(index.contains(ACCOUNT, "/Photos/a.jpg"))
+        assertFalse(index.contains(ACCOUNT, "/Photos/b.jpg"))
+        assertFalse(index.contains(OTHER_ACCOUNT, "/Photos/a.jpg"))
+    }
+
+    @Test
+    fun removeOnlyDropsOwnTransfer() {
+        index.put(1, ACCOUNT, "/Photos/a.jpg")
+        index.put(2, ACCOUNT, "/Photos/b.jpg")
+        index.put(3, ACCOUNT, "/Photos/a.jpg")
+
+        index.remove(1)
+        assertTrue(index.contains(ACCOUNT, "/Photos/a.jpg"))
+
+        index.remove(3)
+        assertFalse(index.contains(ACCOUNT, "/Photos/a.jpg"))
+        assertTrue(index.contains(ACCOUNT, "/Photos/b.jpg"))
+    }
+
+    @Test
+    fun movedTransferIsOnlyFoundAtNewPath() {
+        index.put(1, ACCOUNT, "/Photos/a.jpg")
+        index.put(1, ACCOUNT, "/Documents/a (2).jpg")
+
+        assertFalse(index.contains(ACCOUNT, "/Photos/a.jpg"))
+        assertTrue(index.contains(ACCOUNT, "/Documents/a (2).jpg"))
+        assertEquals(1, index.size)
+    }
+
+    @Test
+    fun removeAllOfAccount() {
+        index.put(1, ACCOUNT, "/a.jpg")
+        index.put(2, OTHER_ACCOUNT, "/a.jpg")
+
+        index.removeAll(ACCOUNT)
+
+        assertFalse(index.contains(ACCOUNT, "/a.jpg"))
+        assertTrue(index.contains(OTHER_ACCOUNT, "/a.jpg"))
+    }
+
+    @Test
+    fun resetReplacesAllTransfers() {
+        index.put(1, ACCOUNT, "/a.jpg")
+
+        index.reset(mapOf(2L to Pair(ACCOUNT, "/b.jpg")))
+
+        assertFalse(index.contains(ACCOUNT, "/a.jpg"))
+        assertTrue(index.contains(ACCOUNT, "/b.jpg"))
+    }
+}
@@ -53,6 +53,9 @@ class ContentObserverWorkTest {
     @Mock
     lateinit var backgroundJobManager: BackgroundJobManager
 
+    @Mock
+    lateinit var mediaStoreScanner: MediaStoreScanner
+
     @Before
     fun setUp() {
         MockitoAnnotations.initMocks(this)
@@ -61,7 +64,8 @@ class ContentObserverWorkTest {
             params = params,
             syncerFolderProvider = folderProvider,
             powerManagementService = powerManagementService,
-            backgroundJobManager = backgroundJobManager
+            backgroundJobManager = backgroundJobManager,
+            mediaStoreScanner = mediaStoreScanner
         )
         val uri: Uri = Mockito.mock(Uri::class.java)
         whenever(params.triggeredContentUris).thenReturn(listOf(uri))
@@ -72,6 +76,7 @@ class ContentObserverWorkTest {
         // GIVEN
         //      nothing to sync
         whenever(params.triggeredContentUris).thenReturn(emptyList())
+        whenever(params.triggeredContentAuthorities).thenReturn(emptyList())
 
         // WHEN
         //      worker is called
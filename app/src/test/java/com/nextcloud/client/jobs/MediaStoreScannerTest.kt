@@ -0,0 +1,243 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.client.jobs
+
+import android.content.ContentResolver
+import android.database.Cursor
+import android.net.Uri
+import android.provider.MediaStore
+import com.owncloud.android.datamodel.ArbitraryDataProvider
+import com.owncloud.android.datamodel.FilesystemDataProvider
+import com.owncloud.android.datamodel.MediaFolderType
+import com.owncloud.android.datamodel.SyncedFolder
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.anyOrNull
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+
+class MediaStoreScannerTest {
+
+    companion object {
+        private const val ACCOUNT = "test@https://nextcloud.localhost"
+        private const val FOLDER = "/storage/emulated/0/DCIM"
+        private const val MEDIA_COUNT = 80_000L
+        private const val NEW_MEDIA = 10L
+
+        // android stubs return null for the MediaStore collection uris, so internal and external are both queried
+        private const val COLLECTIONS = 2
+    }
+
+    private class MediaRow(val id: Long, val path: String, val dateAdded: Long, val mimeType: String)
+
+    private lateinit var contentResolver: ContentResolver
+    private lateinit var filesystemDataProvider: FilesystemDataProvider
+    private lateinit var arbitraryDataProvider: ArbitraryDataProvider
+    private lateinit var syncedFolder: SyncedFolder
+    private lateinit var scanner: MediaStoreScanner
+
+    private val storedPaths = mutableListOf<String>()
+    private val watermarks = mutableMapOf<String, Long>()
+    private var rowsRead = 0
+
+    /**
+     * Large fake MediaStore: every other entry is an image of the synced folder, the rest lives elsewhere
+     */
+    private val mediaStore = (1..MEDIA_COUNT).map { id ->
+        if (id % 2 == 0L) {
+            MediaRow(id, "$FOLDER/IMG_$id.jpg", id, "image/jpeg")
+        } else {
+            MediaRow(id, "/storage/emulated/0/Download/file_$id.pdf", id, "application/pdf")
+        }
+    }
+
+    @Before
+    fun setUp() {
+        contentResolver = mock()
+        filesystemDataProvider = mock()
+        arbitraryDataProvider = mock()
+
+        syncedFolder = mock()
+        whenever(syncedFolder.id).thenReturn(1)
+        whenever(syncedFolder.account).thenReturn(ACCOUNT)
+        whenever(syncedFolder.localPath).thenReturn(FOLDER)
+        whenever(syncedFolder.type).thenReturn(MediaFolderType.IMAGE)
+        whenever(syncedFolder.isEnabled).thenReturn(true)
+        whenever(syncedFolder.isExisting).thenReturn(true)
+
+        whenever(contentResolver.query(anyOrNull(), anyOrNull(), anyOrNull(), anyOrNull(), anyOrNull())).doAnswer {
+            val uri: Uri? = it.getArgument(0)
+            val selectionArgs: Array<String>? = it.getArgument(3)
+            createCursor(query(uri, selectionArgs))
+        }
+
+        doAnswer {
+            storedPaths.add(it.getArgument(0))
+        }.whenever(filesystemDataProvider).storeOrUpdateFileValue(any(), any(), any(), any())
+
+        whenever(arbitraryDataProvider.getLongValue(eq(ACCOUNT), any())).doAnswer {
+            watermarks[it.getArgument(1)] ?: -1L
+        }
+        doAnswer {
+            watermarks[it.getArgument(1)] = it.getArgument<Long>(2)
+        }.whenever(arbitraryDataProvider).storeOrUpdateKeyValue(eq(ACCOUNT), any(), any<Long>())
+
+        scanner = MediaStoreScanner(contentResolver, filesystemDataProvider, arbitraryDataProvider)
+    }
+
+    @Test
+    fun singleNewPhotoIsReadByItsUri() {
+        setWatermark(MEDIA_COUNT - 2)
+
+        scanner.scan(listOf(itemUri(MEDIA_COUNT)), listOf(syncedFolder))
+
+        assertEquals(1, rowsRead)
+        assertEquals(listOf("$FOLDER/IMG_$MEDIA_COUNT.jpg"), storedPaths)
+        assertEquals(MEDIA_COUNT, getWatermark())
+    }
+
+    @Test
+    fun itemOutsideOfFolderIsIgnored() {
+        setWatermark(MEDIA_COUNT - 2)
+
+        scanner.scan(listOf(itemUri(MEDIA_COUNT - 1)), listOf(syncedFolder))
+
+        assertEquals(1, rowsRead)
+        verify(filesystemDataProvider, never()).storeOrUpdateFileValue(any(), any(), any(), any())
+        assertEquals(MEDIA_COUNT - 2, getWatermark())
+    }
+
+    @Test
+    fun itemDoesNotSetMissingWatermark() {
+        scanner.scan(listOf(itemUri(MEDIA_COUNT)), listOf(syncedFolder))
+
+        assertEquals(1, storedPaths.size)
+        verify(arbitraryDataProvider, never()).storeOrUpdateKeyValue(any(), any(), any<Long>())
+    }
+
+    @Test
+    fun changedCollectionReadsOnlyEntriesSinceWatermark() {
+        setWatermark(MEDIA_COUNT - NEW_MEDIA)
+
+        scanner.scan(listOf(collectionUri()), listOf(syncedFolder))
+
+        // entries at the watermark are read again, their date added may be shared by not yet scanned entries
+        val newPhotos = NEW_MEDIA / 2 + 1
+        assertTrue("Read $rowsRead rows", rowsRead <= COLLECTIONS * newPhotos)
+        assertEquals(newPhotos, storedPaths.toSet().size.toLong())
+        assertEquals(MEDIA_COUNT, getWatermark())
+    }
+
+    @Test
+    fun missingWatermarkFallsBackToFullScan() {
+        scanner.scan(emptyList(), listOf(syncedFolder))
+
+        assertEquals(MEDIA_COUNT / 2, storedPaths.toSet().size.toLong())
+        assertEquals(MEDIA_COUNT, getWatermark())
+    }
+
+    @Test
+    fun disabledAndCustomFoldersAreNotScanned() {
+        val customFolder: SyncedFolder = mock()
+        whenever(customFolder.type).thenReturn(MediaFolderType.CUSTOM)
+        whenever(customFolder.isEnabled).thenReturn(true)
+        whenever(syncedFolder.isEnabled).thenReturn(false)
+
+        scanner.scan(listOf(itemUri(MEDIA_COUNT)), listOf(syncedFolder, customFolder))
+
+        verify(contentResolver, times(0)).query(anyOrNull(), anyOrNull(), anyOrNull(), anyOrNull(), anyOrNull())
+    }
+
+    private fun setWatermark(value: Long) {
+        watermarks[MediaStoreScanner.getWatermarkKey(syncedFolder)] = value
+    }
+
+    private fun getWatermark(): Long? = watermarks[MediaStoreScanner.getWatermarkKey(syncedFolder)]
+
+    private fun itemUri(id: Long): Uri {
+        val uri: Uri = mock()
+        whenever(uri.lastPathSegment).thenReturn(id.toString())
+        return uri
+    }
+
+    private fun collectionUri(): Uri {
+        val uri: Uri = mock()
+        whenever(uri.lastPathSegment).thenReturn("media")
+        return uri
+    }
+
+    /**
+     * Evaluates the selection like MediaStore would, using an index on id and date added
+     */
+    private fun query(uri: Uri?, selectionArgs: Array<String>?): List<MediaRow> {
+        val id = uri?.lastPathSegment?.toLongOrNull()
+        if (id != null) {
+            return listOfNotNull(mediaStore.getOrNull((id - 1).toInt()))
+        }
+
+        val prefix = selectionArgs!![0].removeSuffix("%")
+        val since = selectionArgs.getOrNull(1)?.toLong() ?: 0
+        val first = mediaStore.binarySearch { it.dateAdded.compareTo(since) }.let { if (it < 0) -it - 1 else it }
+        return mediaStore.subList(first, mediaStore.size).filter { it.path.startsWith(prefix) }
+    }
+
+    private fun createCursor(rows: List<MediaRow>): Cursor {
+        val columns = listOf(
+            MediaStore.MediaColumns.DATA,
+            MediaStore.MediaColumns.DATE_MODIFIED,
+            MediaStore.MediaColumns.DATE_ADDED,
+            MediaStore.MediaColumns.MIME_TYPE
+        )
+        var position = -1
+
+        val cursor: Cursor = mock()
+        whenever(cursor.getColumnIndexOrThrow(any())).doAnswer { columns.indexOf(it.getArgument(0)) }
+        whenever(cursor.moveToNext()).doAnswer {
+            position++
+            val hasNext = position < rows.size
+            if (hasNext) {
+                rowsRead++
+            }
+            hasNext
+        }
+        whenever(cursor.getString(any())).doAnswer {
+            when (it.getArgument<Int>(0)) {
+                0 -> rows[position].path
+                3 -> rows[position].mimeType
+                else -> null
+            }
+        }
+        whenever(cursor.getLong(any())).doAnswer {
+            when (it.getArgument<Int>(0)) {
+                1, 2 -> rows[position].dateAdded
+                else -> 0L
+            }
+        }
+        return cursor
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import third_parties.daveKoeller.AlphanumComparator
+import third_parties.daveKoeller.AlphanumSortKey
+import java.text.Collator
+import kotlin.random.Random
+import kotlin.system.measureTimeMillis
+
+class AlphanumSortKeyTest {
+
+    companion object {
+        private const val NAMES = 10_000
+        private const val COMPARISONS = 100_000
+        private val BENCHMARK_SIZES = listOf(1_000, 10_000, 100_000)
+        private val PARTS = listOf(
+            "IMG", "img", "Photo", "äh", "Äh", "一", "十", " ", "_", "-", ".", "(", ")", "[", "0", "00", "007", "1",
+            "2", "10", "12345678901234567890123", ".jpg", ".txt", ""
+        )
+    }
+
+    private val random = Random(42)
+
+    @Test
+    fun sortKeyOrderMatchesComparator() {
+        val names = List(NAMES) { generateName() }
+        val collator = Collator.getInstance()
+
+        val sortedByComparator = names.sortedWith { o1, o2 -> AlphanumComparator.compare(o1, o2) }
+        val sortedByKey = names.map { AlphanumSortKey(it, collator) }.sorted().map { it.string }
+
+        assertEquals(sortedByComparator, sortedByKey)
+    }
+
+    @Test
+    fun sortKeyComparisonMatchesComparator() {
+        val names = List(NAMES) { generateName() }
+        val collator = Collator.getInstance()
+
+        repeat(COMPARISONS) {
+            val name1 = names.random(random)
+            val name2 = names.random(random)
+
+            assertEquals(
+                "$name1 <> $name2",
+                Integer.signum(AlphanumComparator.compare(name1, name2)),
+                Integer.signum(AlphanumSortKey(name1, collator).compareTo(AlphanumSortKey(name2, collator)))
+            )
+        }
+    }
+
+    /**
+     * Benchmark: sorting names with the comparator against sorting them by precomputed keys
+     */
+    @Test
+    fun testSortDuration() {
+        // warm up, so that the first size does not measure class loading and JIT
+        sortByComparator(List(NAMES) { generateName() })
+        sortByKey(List(NAMES) { generateName() })
+
+        for (size in BENCHMARK_SIZES) {
+            val names = List(size) { generateName() }
+            lateinit var sortedByComparator: List<String>
+            lateinit var sortedByKey: List<String>
+
+            val comparatorDuration = measureTimeMillis { sortedByComparator = sortByComparator(names) }
+            val keyDuration = measureTimeMillis { sortedByKey = sortByKey(names) }
+
+            println("$size names, comparator: $comparatorDuration ms, sort keys: $keyDuration ms")
+            assertEquals(sortedByComparator, sortedByKey)
+        }
+    }
+
+    private fun sortByComparator(names: List<String>): List<String> =
+        names.sortedWith { o1, o2 -> AlphanumComparator.compare(o1, o2) }
+
+    private fun sortByKey(names: List<String>): List<String> {
+        val collator = Collator.getInstance()
+        return names.map { AlphanumSortKey(it, collator) }.sorted().map { it.string }
+    }
+
+    private fun generateName(): String = (0..random.nextInt(1, 6)).joinToString("") { PARTS.random(random) }
+}
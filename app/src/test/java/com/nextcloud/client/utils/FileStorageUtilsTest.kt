@@ -22,13 +22,84 @@
 package com.nextcloud.client.utils
 
 import com.nextcloud.client.preferences.SubFolderRule
+import com.owncloud.android.datamodel.OCFile
 import com.owncloud.android.utils.FileStorageUtils
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Rule
 import org.junit.Test
+import org.junit.rules.TemporaryFolder
 import java.io.File
 import java.util.Locale
 
 class FileStorageUtilsTest {
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    @Test
+    fun testGetFileNames() {
+        val folder = temporaryFolder.newFolder("folder")
+        File(folder, "file.txt").createNewFile()
+        File(folder, "subfolder").mkdir()
+
+        assertEquals(setOf("file.txt", "subfolder"), FileStorageUtils.getFileNames(folder))
+        assertTrue(FileStorageUtils.getFileNames(File(folder, "missing")).isEmpty())
+    }
+
+    @Test
+    fun testSearchForLocalFileInDefaultPathUsesFolderListing() {
+        val folder = temporaryFolder.newFolder("folder")
+        val storagePath = File(folder, "file.txt").absolutePath
+        val file = OCFile("/folder/file.txt").apply { setStoragePath(storagePath) }
+
+        // not existing on disk, but part of the listing: listing wins, no stat per file
+        FileStorageUtils.searchForLocalFileInDefaultPath(file, "account", folder, setOf("file.txt"))
+
+        assertEquals(storagePath, file.storagePath)
+    }
+
+    @Test
+    fun testMergeLivePhotos() {
+        val image = livePhotoFile(1, "image/jpeg", "2")
+        val video = livePhotoFile(2, "video/quicktime", "1")
+        val otherVideo = livePhotoFile(3, "video/quicktime", "4")
+        val otherImage = livePhotoFile(4, "image/heic", "3")
+        val file = livePhotoFile(5, "text/plain", null)
+        val files = mutableListOf(image, otherVideo, file, video, otherImage)
+
+        FileStorageUtils.mergeLivePhotos(files)
+
+        assertEquals(listOf(image, file, otherImage), files)
+        assertSame(video, image.livePhotoVideo)
+        assertSame(otherVideo, otherImage.livePhotoVideo)
+        assertNull(file.livePhotoVideo)
+    }
+
+    @Test
+    fun testMergeLivePhotosOfLargeFolder() {
+        val pairs = 10_000
+        val files = (1..pairs).flatMap { id ->
+            listOf(
+                livePhotoFile(id * 2L, "image/jpeg", (id * 2 + 1).toString()),
+                livePhotoFile(id * 2L + 1, "video/quicktime", (id * 2).toString())
+            )
+        }.toMutableList()
+
+        FileStorageUtils.mergeLivePhotos(files)
+
+        assertEquals(pairs, files.size)
+        assertTrue(files.all { it.livePhotoVideo?.localId == it.localId + 1 })
+    }
+
+    private fun livePhotoFile(localId: Long, mimeType: String, linkedId: String?): OCFile =
+        OCFile("/Photos/$localId").apply {
+            this.localId = localId
+            this.mimeType = mimeType
+            setLivePhoto(linkedId)
+        }
+
     @Test
     fun testInstantUploadPathSubfolder() {
         val file = File("/sdcard/DCIM/subfolder/file.jpg")
@@ -0,0 +1,144 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.client.utils
+
+import com.owncloud.android.utils.FileSortOrder
+import com.owncloud.android.utils.FileStorageUtils
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import kotlin.system.measureTimeMillis
+
+class LocalFileSortTest {
+
+    companion object {
+        private const val BENCHMARK_ENTRIES = 50_000
+        private const val BENCHMARK_FOLDERS = 500
+    }
+
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private lateinit var files: List<File>
+
+    @Before
+    fun setUp() {
+        val root = temporaryFolder.root
+        files = listOf(
+            createFile(root.resolve("b 10.txt"), 30, 1_000),
+            createFile(root.resolve("b 9.txt"), 10, 3_000),
+            createFile(root.resolve("a.txt"), 20, 2_000),
+            createFolder(root.resolve("folder b"), 5),
+            createFolder(root.resolve("folder a"), 50)
+        )
+    }
+
+    @Test
+    fun sortByName() {
+        assertEquals(
+            listOf("folder a", "folder b", "a.txt", "b 9.txt", "b 10.txt"),
+            sort(FileSortOrder.sort_a_to_z)
+        )
+        assertEquals(
+            listOf("folder b", "folder a", "b 10.txt", "b 9.txt", "a.txt"),
+            sort(FileSortOrder.sort_z_to_a)
+        )
+    }
+
+    @Test
+    fun sortBySize() {
+        assertEquals(
+            listOf("folder b", "folder a", "b 9.txt", "a.txt", "b 10.txt"),
+            sort(FileSortOrder.sort_small_to_big)
+        )
+    }
+
+    @Test
+    fun sortByDate() {
+        assertEquals(
+            listOf("b 9.txt", "a.txt", "b 10.txt"),
+            sort(FileSortOrder.sort_new_to_old).filter { it.endsWith(".txt") }
+        )
+    }
+
+    /**
+     * Benchmark: sorting a folder of [BENCHMARK_ENTRIES] entries with attributes read once per file, against reading
+     * them on every comparison
+     */
+    @Test
+    fun testSortDuration() {
+        val root = temporaryFolder.newFolder("large")
+        val entries = (0 until BENCHMARK_ENTRIES).map {
+            if (it % (BENCHMARK_ENTRIES / BENCHMARK_FOLDERS) == 0) {
+                createFolder(root.resolve("folder $it"), it % 100)
+            } else {
+                createFile(root.resolve("file $it.txt"), it % 1_000, it * 1_000L % 1_000_000)
+            }
+        }
+
+        lateinit var sortedBySizeKeys: List<File>
+        lateinit var sortedBySize: List<File>
+        val sizeKeysDuration = measureTimeMillis {
+            sortedBySizeKeys = FileSortOrder.sort_small_to_big.sortLocalFiles(entries.toMutableList())
+        }
+        val sizeDuration = measureTimeMillis { sortedBySize = sortBySizePerComparison(entries) }
+        println("${entries.size} entries, size sort with keys: $sizeKeysDuration ms, per comparison: $sizeDuration ms")
+        assertEquals(sortedBySize, sortedBySizeKeys)
+
+        lateinit var sortedByDateKeys: List<File>
+        lateinit var sortedByDate: List<File>
+        val dateKeysDuration = measureTimeMillis {
+            sortedByDateKeys = FileSortOrder.sort_old_to_new.sortLocalFiles(entries.toMutableList())
+        }
+        val dateDuration = measureTimeMillis { sortedByDate = entries.sortedBy { it.lastModified() } }
+        println("${entries.size} entries, date sort with keys: $dateKeysDuration ms, per comparison: $dateDuration ms")
+        assertEquals(sortedByDate, sortedByDateKeys)
+    }
+
+    /**
+     * Size sort reading the attributes in the comparator, as it was done before sorting by keys
+     */
+    private fun sortBySizePerComparison(files: List<File>): List<File> = files.sortedWith { o1, o2 ->
+        when {
+            o1.isDirectory && o2.isDirectory ->
+                FileStorageUtils.getFolderSize(o1).compareTo(FileStorageUtils.getFolderSize(o2))
+            o1.isDirectory -> -1
+            o2.isDirectory -> 1
+            else -> o1.length().compareTo(o2.length())
+        }
+    }
+
+    private fun sort(sortOrder: FileSortOrder): List<String> =
+        sortOrder.sortLocalFiles(files.shuffled().toMutableList()).map { it.name }
+
+    private fun createFile(file: File, size: Int, lastModified: Long): File {
+        file.writeBytes(ByteArray(size))
+        file.setLastModified(lastModified)
+        return file
+    }
+
+    private fun createFolder(folder: File, contentSize: Int): File {
+        folder.mkdirs()
+        folder.resolve("content").writeBytes(ByteArray(contentSize))
+        return folder
+    }
+}
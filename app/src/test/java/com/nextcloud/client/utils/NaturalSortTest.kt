@@ -32,6 +32,8 @@ import org.junit.Test
 import org.junit.runner.RunWith
 import org.junit.runners.Parameterized
 import third_parties.daveKoeller.AlphanumComparator
+import third_parties.daveKoeller.AlphanumSortKey
+import java.text.Collator
 
 /**
  * Adapted on 2022/02/04 from https://github.com/nextcloud/server/blob/caff1023ea72bb2ea94130e18a2a6e2ccf819e5f/tests/lib/NaturalSortTest.php
@@ -106,4 +108,12 @@ class NaturalSortTest {
         val sorted = shuffled.sortedWith(sut).toTypedArray()
         Assert.assertArrayEquals("Wrong sort", expected, sorted)
     }
+
+    @Test
+    fun testSortKeys() {
+        val collator = Collator.getInstance()
+        val shuffled = expected.clone().apply { shuffle() }
+        val sorted = shuffled.map { AlphanumSortKey(it, collator) }.sorted().map { it.string }.toTypedArray()
+        Assert.assertArrayEquals("Wrong sort", expected, sorted)
+    }
 }
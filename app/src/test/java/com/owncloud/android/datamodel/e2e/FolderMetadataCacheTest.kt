@@ -0,0 +1,101 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.datamodel.e2e
+
+import com.owncloud.android.datamodel.OCFile
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Test
+
+class FolderMetadataCacheTest {
+
+    companion object {
+        private const val ACCOUNT = "user@https://nextcloud.localhost/sub"
+        private const val OTHER_ACCOUNT = "other@https://nextcloud.localhost/sub"
+    }
+
+    private val metadata = Any()
+
+    @Before
+    fun setUp() {
+        FolderMetadataCache.clear()
+    }
+
+    @After
+    fun tearDown() {
+        FolderMetadataCache.clear()
+    }
+
+    @Test
+    fun metadataOfUnchangedFolderIsCached() {
+        FolderMetadataCache.put(ACCOUNT, folder(1), metadata)
+
+        assertSame(metadata, FolderMetadataCache.get(ACCOUNT, folder(1)))
+        assertNull(FolderMetadataCache.get(OTHER_ACCOUNT, folder(1)))
+        assertNull(FolderMetadataCache.get(ACCOUNT, folder(2)))
+        assertEquals(1, FolderMetadataCache.hitCount)
+        assertEquals(2, FolderMetadataCache.missCount)
+    }
+
+    @Test
+    fun changedFolderIsNotServedFromCache() {
+        FolderMetadataCache.put(ACCOUNT, folder(1), metadata)
+        assertNull(FolderMetadataCache.get(ACCOUNT, folder(1, etag = "etag2")))
+
+        FolderMetadataCache.put(ACCOUNT, folder(1), metadata)
+        assertNull(FolderMetadataCache.get(ACCOUNT, folder(1, counter = 2)))
+
+        assertEquals(0, FolderMetadataCache.size)
+    }
+
+    @Test
+    fun invalidateDropsFolderOfAllAccounts() {
+        FolderMetadataCache.put(ACCOUNT, folder(1), metadata)
+        FolderMetadataCache.put(OTHER_ACCOUNT, folder(1), metadata)
+        FolderMetadataCache.put(ACCOUNT, folder(2), metadata)
+
+        FolderMetadataCache.invalidate(1)
+
+        assertNull(FolderMetadataCache.get(ACCOUNT, folder(1)))
+        assertNull(FolderMetadataCache.get(OTHER_ACCOUNT, folder(1)))
+        assertSame(metadata, FolderMetadataCache.get(ACCOUNT, folder(2)))
+    }
+
+    @Test
+    fun leastRecentlyUsedFolderIsEvicted() {
+        for (id in 1L..100L) {
+            FolderMetadataCache.put(ACCOUNT, folder(id), metadata)
+            FolderMetadataCache.get(ACCOUNT, folder(1))
+        }
+
+        assertEquals(32, FolderMetadataCache.size)
+        assertSame(metadata, FolderMetadataCache.get(ACCOUNT, folder(1)))
+        assertNull(FolderMetadataCache.get(ACCOUNT, folder(2)))
+    }
+
+    private fun folder(localId: Long, etag: String = "etag1", counter: Long = 1): OCFile =
+        OCFile("/folder$localId/").apply {
+            this.localId = localId
+            this.etag = etag
+            setE2eCounter(counter)
+        }
+}
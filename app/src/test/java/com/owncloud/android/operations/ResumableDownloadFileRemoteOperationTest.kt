@@ -0,0 +1,164 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.operations
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.apache.commons.httpclient.HttpClient
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.IOException
+import java.net.InetSocketAddress
+
+/**
+ * Runs downloads against a local HTTP server, which can drop the connection in the middle of a response
+ */
+class ResumableDownloadFileRemoteOperationTest {
+
+    companion object {
+        private const val FILE_SIZE = 256 * 1024
+        private const val INTERRUPT_AFTER = 100 * 1024
+        private const val PATH = "/remote.php/dav/files/user/video.mp4"
+    }
+
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private lateinit var server: HttpServer
+    private lateinit var uri: String
+
+    private var content = ByteArray(FILE_SIZE) { it.toByte() }
+    private var etag = "\"v1\""
+    private var interruptAfter: Int? = null
+    private val requestedRanges = mutableListOf<String?>()
+    private val requestedIfRanges = mutableListOf<String?>()
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext(PATH) { exchange -> respond(exchange) }
+        server.start()
+        uri = "http://127.0.0.1:${server.address.port}$PATH"
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun interruptedDownloadIsResumed() {
+        val targetFile = temporaryFolder.root.resolve("tmp/video.mp4")
+
+        interruptAfter = INTERRUPT_AFTER
+        val interrupted = ResumableDownloadFileRemoteOperation(PATH, targetFile)
+        assertFalse(interrupted.download(HttpClient(), uri).isSuccess)
+        assertEquals(INTERRUPT_AFTER.toLong(), targetFile.length())
+        assertTrue(interrupted.etagFile.exists())
+
+        interruptAfter = null
+        val resumed = ResumableDownloadFileRemoteOperation(PATH, targetFile)
+        assertTrue(resumed.download(HttpClient(), uri).isSuccess)
+
+        assertArrayEquals(content, targetFile.readBytes())
+        assertEquals(listOf(null, "bytes=$INTERRUPT_AFTER-"), requestedRanges)
+        assertEquals(etag, requestedIfRanges.last())
+        assertEquals(INTERRUPT_AFTER.toLong(), resumed.resumedBytes)
+        assertEquals(0, resumed.discardedBytes)
+        assertFalse(resumed.etagFile.exists())
+    }
+
+    @Test
+    fun changedFileIsDownloadedAgain() {
+        val targetFile = temporaryFolder.root.resolve("video.mp4")
+
+        interruptAfter = INTERRUPT_AFTER
+        ResumableDownloadFileRemoteOperation(PATH, targetFile).download(HttpClient(), uri)
+
+        interruptAfter = null
+        content = ByteArray(FILE_SIZE) { (it * 7).toByte() }
+        etag = "\"v2\""
+        val restarted = ResumableDownloadFileRemoteOperation(PATH, targetFile)
+        assertTrue(restarted.download(HttpClient(), uri).isSuccess)
+
+        assertArrayEquals(content, targetFile.readBytes())
+        assertEquals(0, restarted.resumedBytes)
+        assertEquals(INTERRUPT_AFTER.toLong(), restarted.discardedBytes)
+    }
+
+    @Test
+    fun downloadWithoutStrongEtagIsNotKept() {
+        val targetFile = temporaryFolder.root.resolve("video.mp4")
+
+        etag = "W/\"v1\""
+        interruptAfter = INTERRUPT_AFTER
+        val interrupted = ResumableDownloadFileRemoteOperation(PATH, targetFile)
+        assertFalse(interrupted.download(HttpClient(), uri).isSuccess)
+
+        assertFalse(targetFile.exists())
+        assertFalse(interrupted.etagFile.exists())
+
+        interruptAfter = null
+        ResumableDownloadFileRemoteOperation(PATH, targetFile).download(HttpClient(), uri)
+        assertNull(requestedRanges.last())
+    }
+
+    /**
+     * Serves a range only if If-Range matches the current ETag, like a WebDAV server does
+     */
+    private fun respond(exchange: HttpExchange) {
+        val range = exchange.requestHeaders.getFirst("Range")
+        val ifRange = exchange.requestHeaders.getFirst("If-Range")
+        requestedRanges.add(range)
+        requestedIfRanges.add(ifRange)
+
+        val start = if (range != null && ifRange == etag) {
+            range.removePrefix("bytes=").removeSuffix("-").toInt()
+        } else {
+            0
+        }
+
+        exchange.responseHeaders.add("ETag", etag)
+        exchange.responseHeaders.add("Last-Modified", "Mon, 02 Oct 2023 10:00:00 GMT")
+        if (start > 0) {
+            exchange.responseHeaders.add("Content-Range", "bytes $start-${content.size - 1}/${content.size}")
+            exchange.sendResponseHeaders(206, (content.size - start).toLong())
+        } else {
+            exchange.sendResponseHeaders(200, content.size.toLong())
+        }
+
+        try {
+            exchange.responseBody.use { body ->
+                val end = interruptAfter?.let { minOf(start + it, content.size) } ?: content.size
+                body.write(content, start, end - start)
+            }
+        } catch (e: IOException) {
+            // closing a response with missing bytes drops the connection
+        }
+        exchange.close()
+    }
+}
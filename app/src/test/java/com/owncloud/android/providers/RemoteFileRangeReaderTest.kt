@@ -0,0 +1,136 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.owncloud.android.providers
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.apache.commons.httpclient.HttpClient
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import java.net.InetSocketAddress
+import kotlin.random.Random
+
+/**
+ * Reads a file from a local HTTP server, which serves byte ranges like a WebDAV server does
+ */
+class RemoteFileRangeReaderTest {
+
+    companion object {
+        private const val BLOCK_SIZE = RemoteFileRangeReader.BLOCK_SIZE
+        private const val FILE_SIZE = 3 * BLOCK_SIZE + 1234
+        private const val PATH = "/remote.php/dav/files/user/video.mp4"
+    }
+
+    private lateinit var server: HttpServer
+    private lateinit var uri: String
+
+    private var content = Random(1).nextBytes(FILE_SIZE)
+    private var etag = "\"v1\""
+    private val requestedRanges = mutableListOf<String?>()
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext(PATH) { exchange -> respond(exchange) }
+        server.start()
+        uri = "http://127.0.0.1:${server.address.port}$PATH"
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun openReadsOnlyFirstBlock() {
+        val reader = RemoteFileRangeReader(HttpClient(), uri)
+        reader.open()
+
+        assertEquals(FILE_SIZE.toLong(), reader.length)
+        assertEquals(listOf("bytes=0-${BLOCK_SIZE - 1}"), requestedRanges)
+    }
+
+    @Test
+    fun readsAtAnyPosition() {
+        val reader = RemoteFileRangeReader(HttpClient(), uri)
+        reader.open()
+
+        val random = Random(2)
+        val data = ByteArray(100_000)
+        repeat(100) {
+            val offset = random.nextInt(FILE_SIZE)
+            val read = reader.read(offset.toLong(), data.size, data)
+
+            val expected = content.copyOfRange(offset, minOf(offset + data.size, FILE_SIZE))
+            assertEquals(expected.size, read)
+            assertArrayEquals(expected, data.copyOf(read))
+        }
+    }
+
+    @Test
+    fun sequentialReadsOfBlockUseCache() {
+        val reader = RemoteFileRangeReader(HttpClient(), uri)
+        reader.open()
+
+        val data = ByteArray(4096)
+        for (offset in BLOCK_SIZE until 2 * BLOCK_SIZE step data.size) {
+            reader.read(offset.toLong(), data.size, data)
+        }
+
+        assertEquals(listOf("bytes=0-${BLOCK_SIZE - 1}", "bytes=$BLOCK_SIZE-${2 * BLOCK_SIZE - 1}"), requestedRanges)
+    }
+
+    @Test
+    fun readAtEndOfFile() {
+        val reader = RemoteFileRangeReader(HttpClient(), uri)
+        reader.open()
+
+        val data = ByteArray(4096)
+        assertEquals(10, reader.read(FILE_SIZE - 10L, data.size, data))
+        assertEquals(0, reader.read(FILE_SIZE.toLong(), data.size, data))
+    }
+
+    @Test(expected = IOException::class)
+    fun changedFileFailsReading() {
+        val reader = RemoteFileRangeReader(HttpClient(), uri)
+        reader.open()
+
+        content = Random(3).nextBytes(FILE_SIZE)
+        etag = "\"v2\""
+        reader.read(2L * BLOCK_SIZE, 10, ByteArray(10))
+    }
+
+    private fun respond(exchange: HttpExchange) {
+        val range = exchange.requestHeaders.getFirst("Range")
+        requestedRanges.add(range)
+
+        val (first, last) = range.removePrefix("bytes=").split("-").map { it.toInt() }
+        val end = minOf(last, content.size - 1)
+
+        exchange.responseHeaders.add("ETag", etag)
+        exchange.responseHeaders.add("Content-Range", "bytes $first-$end/${content.size}")
+        exchange.sendResponseHeaders(206, (end - first + 1).toLong())
+        exchange.responseBody.use { it.write(content, first, end - first + 1) }
+        exchange.close()
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Nextcloud Android client application
+ *
+ * Copyright (C) 2023 Nextcloud GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.owncloud.android.utils
+
+import com.nextcloud.client.account.User
+import com.owncloud.android.datamodel.ArbitraryDataProvider
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.mockito.kotlin.mock
+import java.io.File
+import java.io.RandomAccessFile
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryType
+import java.util.Random
+import javax.crypto.AEADBadTagException
+import javax.crypto.Cipher
+import javax.crypto.spec.GCMParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+class EncryptionUtilsStreamingTest {
+
+    companion object {
+        private const val MB = 1024L * 1024L
+        private const val TAG_LENGTH = 16
+
+        /**
+         * Whole file buffering would allocate at least the file size outside of the young generation
+         */
+        private const val MAX_RETAINED_BYTES = 8 * MB
+    }
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val random = Random(42)
+    private val key = ByteArray(16).also { random.nextBytes(it) }
+    private val iv = ByteArray(EncryptionUtils.ivLength).also { random.nextBytes(it) }
+
+    private lateinit var arbitraryDataProvider: ArbitraryDataProvider
+    private lateinit var user: User
+    private var baseline = 0L
+
+    @Before
+    fun setUp() {
+        arbitraryDataProvider = mock()
+        user = mock()
+    }
+
+    @Test
+    fun encryptedFileIsCompatibleWithJce() {
+        for (size in listOf(0, 1, 15, 16, 17, 64 * 1024, 64 * 1024 + 1, 300_000)) {
+            val plain = ByteArray(size).also { random.nextBytes(it) }
+            val input = folder.newFile().apply { writeBytes(plain) }
+            val encrypted = folder.newFile()
+
+            val tag = EncryptionUtils.encryptFile(input, encrypted, key, iv)
+
+            val cipher = Cipher.getInstance("AES/GCM/NoPadding")
+            cipher.init(Cipher.DECRYPT_MODE, SecretKeySpec(key, "AES"), GCMParameterSpec(TAG_LENGTH * 8, iv))
+            val encryptedBytes = encrypted.readBytes()
+
+            assertArrayEquals(plain, cipher.doFinal(encryptedBytes))
+            assertArrayEquals(encryptedBytes.copyOfRange(encryptedBytes.size - TAG_LENGTH, encryptedBytes.size), tag)
+        }
+    }
+
+    @Test
+    fun decryptRoundTrip() {
+        val plain = ByteArray(1_000_000).also { random.nextBytes(it) }
+        val input = folder.newFile().apply { writeBytes(plain) }
+        val encrypted = folder.newFile()
+        val decrypted = folder.newFile()
+
+        val tag = EncryptionUtils.encryptFile(input, encrypted, key, iv)
+        EncryptionUtils.decryptFile(encrypted, decrypted, key, iv, tag, arbitraryDataProvider, user)
+
+        assertArrayEquals(plain, decrypted.readBytes())
+    }
+
+    @Test(expected = SecurityException::class)
+    fun decryptWithWrongTagFails() {
+        val input = folder.newFile().apply { writeBytes(ByteArray(1000)) }
+        val encrypted = folder.newFile()
+        val decrypted = folder.newFile()
+
+        val tag = EncryptionUtils.encryptFile(input, encrypted, key, iv)
+        tag[0] = (tag[0] + 1).toByte()
+
+        EncryptionUtils.decryptFile(encrypted, decrypted, key, iv, tag, arbitraryDataProvider, user)
+    }
+
+    @Test
+    fun decryptTamperedContentFailsAndRemovesOutput() {
+        val input = folder.newFile().apply { writeBytes(ByteArray(100_000)) }
+        val encrypted = folder.newFile()
+        val decrypted = folder.newFile()
+
+        val tag = EncryptionUtils.encryptFile(input, encrypted, key, iv)
+        RandomAccessFile(encrypted, "rw").use {
+            it.seek(10)
+            it.write(0xff)
+        }
+
+        try {
+            EncryptionUtils.decryptFile(encrypted, decrypted, key, iv, tag, arbitraryDataProvider, user)
+            throw AssertionError("Tampered content must not decrypt")
+        } catch (e: AEADBadTagException) {
+            assertFalse(decrypted.exists())
+        }
+    }
+
+    /**
+     * Benchmark: retained heap must stay constant regardless of file size
+     */
+    @Test
+    fun memoryDoesNotDependOnFileSize() {
+        for (size in listOf(1 * MB, 16 * MB, 64 * MB)) {
+            val input = createSparseFile(size)
+            val encrypted = folder.newFile()
+            val decrypted = folder.newFile()
+
+            resetPeakUsage()
+            val start = System.nanoTime()
+            val tag = EncryptionUtils.encryptFile(input, encrypted, key, iv)
+            EncryptionUtils.decryptFile(encrypted, decrypted, key, iv, tag, arbitraryDataProvider, user)
+            val durationMs = (System.nanoTime() - start) / 1_000_000
+            val retained = retainedPeakUsage()
+
+            println("size: ${size / MB} MB, retained peak: ${retained / 1024} kB, encrypt + decrypt: $durationMs ms")
+            assertTrue("Retained $retained bytes for file of $size bytes", retained < MAX_RETAINED_BYTES)
+            assertEquals(size, decrypted.length())
+
+            input.delete()
+            encrypted.delete()
+            decrypted.delete()
+        }
+    }
+
+    private fun createSparseFile(size: Long): File {
+        val file = folder.newFile()
+        RandomAccessFile(file, "rw").use { it.setLength(size) }
+        return file
+    }
+
+    private fun tenuredPools() = ManagementFactory.getMemoryPoolMXBeans().filter {
+        it.type == MemoryType.HEAP && !it.name.contains("Eden") && !it.name.contains("Survivor")
+    }
+
+    @Suppress("ExplicitGarbageCollectionCall")
+    private fun resetPeakUsage() {
+        System.gc()
+        ManagementFactory.getMemoryPoolMXBeans().forEach { it.resetPeakUsage() }
+        baseline = tenuredPools().sumOf { it.usage.used }
+    }
+
+    private fun retainedPeakUsage(): Long = tenuredPools().sumOf { it.peakUsage.used } - baseline
+}